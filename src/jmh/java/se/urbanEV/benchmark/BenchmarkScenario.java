@@ -0,0 +1,172 @@
+package se.urbanEV.benchmark;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.network.NetworkUtils;
+import se.urbanEV.charging.ChargeUpToMaxSocStrategy;
+import se.urbanEV.charging.ChargingLogic;
+import se.urbanEV.charging.ChargingLogicImpl;
+import se.urbanEV.charging.VariableSpeedCharging;
+import se.urbanEV.discharging.SimpleDriveEnergyConsumption;
+import se.urbanEV.fleet.ElectricFleet;
+import se.urbanEV.fleet.ElectricFleetReader;
+import se.urbanEV.fleet.ElectricFleetSpecification;
+import se.urbanEV.fleet.ElectricFleetSpecificationImpl;
+import se.urbanEV.fleet.ElectricFleets;
+import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.fleet.ElectricVehicleSpecification;
+import se.urbanEV.fleet.ElectricVehicleType;
+import se.urbanEV.fleet.ElectricVehicleTypesReader;
+import se.urbanEV.fleet.ImmutableElectricVehicleSpecification;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargerImpl;
+import se.urbanEV.infrastructure.ChargerReader;
+import se.urbanEV.infrastructure.ChargerSpecification;
+import se.urbanEV.infrastructure.ChargingInfrastructure;
+import se.urbanEV.infrastructure.ChargingInfrastructureSpecification;
+import se.urbanEV.infrastructure.ChargingInfrastructureSpecificationImpl;
+import se.urbanEV.infrastructure.ImmutableChargerSpecification;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Chargers, vehicles and links for the benchmarks, drawn from the Sweden scenario (chargers.xml, vehicletypes.xml and
+ * 10pct/evehicles10pct.xml on got_network.xml.gz) and scaled to the benchmark size. Chargers and vehicles are drawn
+ * with replacement and get new ids; chargers beyond the first copy of the original ones are moved by a random
+ * offset, so the charger density grows with the size as it would with a denser infrastructure.
+ * <p>
+ * The scenario directory is read from -D{@value #SCENARIO_DIR_PROPERTY} (default: scenarios/sweden, i.e. the
+ * benchmarks are run from the repository root).
+ */
+public class BenchmarkScenario {
+	public static final String SCENARIO_DIR_PROPERTY = "urbanEV.scenarioDir";
+	public static final long SEED = 4711;
+
+	private static final double CHARGER_OFFSET_SIGMA = 500;// [m]
+
+	private final Network network;
+	private final List<ChargerSpecification> chargerTemplates;
+	private final List<ElectricVehicleSpecification> vehicleTemplates;
+	private final Map<Id<Charger>, Link> chargerLinks = new HashMap<>();
+	private final Random random = new Random(SEED);
+
+	public BenchmarkScenario() {
+		Path dir = Paths.get(System.getProperty(SCENARIO_DIR_PROPERTY, "scenarios/sweden"));
+		network = NetworkUtils.readNetwork(dir.resolve("got_network.xml.gz").toString());
+
+		ChargingInfrastructureSpecification chargers = new ChargingInfrastructureSpecificationImpl();
+		new ChargerReader(chargers).readFile(dir.resolve("chargers.xml").toString());
+		chargerTemplates = new ArrayList<>(chargers.getChargerSpecifications().values());
+
+		Map<Id<ElectricVehicleType>, ElectricVehicleType> types = new HashMap<>();
+		new ElectricVehicleTypesReader(types).readFile(dir.resolve("vehicletypes.xml").toString());
+		ElectricFleetSpecification fleet = new ElectricFleetSpecificationImpl();
+		new ElectricFleetReader(fleet, types).readFile(dir.resolve("10pct/evehicles10pct.xml").toString());
+		vehicleTemplates = new ArrayList<>(fleet.getVehicleSpecifications().values());
+	}
+
+	public Network getNetwork() {
+		return network;
+	}
+
+	public Random getRandom() {
+		return random;
+	}
+
+	public ChargingInfrastructureSpecification createChargerSpecifications(int count) {
+		ChargingInfrastructureSpecification specifications = new ChargingInfrastructureSpecificationImpl();
+		for (int i = 0; i < count; i++) {
+			ChargerSpecification template;
+			Coord coord;
+			if (i < chargerTemplates.size()) {
+				template = chargerTemplates.get(i);
+				coord = template.getCoord();
+			} else {
+				template = chargerTemplates.get(random.nextInt(chargerTemplates.size()));
+				coord = new Coord(template.getCoord().getX() + random.nextGaussian() * CHARGER_OFFSET_SIGMA,
+						template.getCoord().getY() + random.nextGaussian() * CHARGER_OFFSET_SIGMA);
+			}
+			specifications.addChargerSpecification(ImmutableChargerSpecification.newBuilder(template)
+					.id(Id.create("bench_" + i, Charger.class))
+					.coord(coord)
+					.build());
+		}
+		return specifications;
+	}
+
+	/**
+	 * The nearest links are looked up once per charger, so the infrastructure can be recreated cheaply (e.g. in each
+	 * benchmark iteration).
+	 */
+	public ChargingInfrastructure createInfrastructure(ChargingInfrastructureSpecification specifications,
+			ChargingLogic.Factory logicFactory) {
+		Map<Id<Charger>, Charger> chargers = new LinkedHashMap<>();
+		for (ChargerSpecification specification : specifications.getChargerSpecifications().values()) {
+			Link link = chargerLinks.computeIfAbsent(specification.getId(),
+					id -> NetworkUtils.getNearestLink(network, specification.getCoord()));
+			chargers.put(specification.getId(), ChargerImpl.create(specification, link, logicFactory));
+		}
+		return () -> chargers;
+	}
+
+	public static ChargingLogic.Factory createChargingLogicFactory(EventsManager eventsManager) {
+		return charger -> new ChargingLogicImpl(charger, new ChargeUpToMaxSocStrategy(charger, 1.), eventsManager);
+	}
+
+	public ElectricFleetSpecification createFleetSpecification(int count) {
+		ElectricFleetSpecification specifications = new ElectricFleetSpecificationImpl();
+		for (int i = 0; i < count; i++) {
+			ElectricVehicleSpecification template = i < vehicleTemplates.size() ?
+					vehicleTemplates.get(i) :
+					vehicleTemplates.get(random.nextInt(vehicleTemplates.size()));
+			specifications.addVehicleSpecification(ImmutableElectricVehicleSpecification.newBuilder(template)
+					.id(Id.create("bench_" + i, ElectricVehicle.class))
+					.build());
+		}
+		return specifications;
+	}
+
+	/**
+	 * Same consumption and charging models as the default modules, without aux consumption.
+	 */
+	public static ElectricFleet createFleet(ElectricFleetSpecification specifications) {
+		return ElectricFleets.createDefaultFleet(specifications, SimpleDriveEnergyConsumption::new,
+				ev -> (beginTime, duration, linkId) -> 0, VariableSpeedCharging::createForMaxChargingRate);
+	}
+
+	/**
+	 * @return random locations within the given distance of the chargers, e.g. activity locations
+	 */
+	public Coord[] createStopCoords(ChargingInfrastructureSpecification specifications, int count,
+			double maxDistance) {
+		List<ChargerSpecification> chargers = new ArrayList<>(specifications.getChargerSpecifications().values());
+		Coord[] coords = new Coord[count];
+		for (int i = 0; i < count; i++) {
+			Coord chargerCoord = chargers.get(random.nextInt(chargers.size())).getCoord();
+			double distance = random.nextDouble() * maxDistance;
+			double angle = random.nextDouble() * 2 * Math.PI;
+			coords[i] = new Coord(chargerCoord.getX() + distance * Math.cos(angle),
+					chargerCoord.getY() + distance * Math.sin(angle));
+		}
+		return coords;
+	}
+
+	public Link[] sampleLinks(int count) {
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+		Link[] sample = new Link[count];
+		for (int i = 0; i < count; i++) {
+			sample[i] = links.get(random.nextInt(links.size()));
+		}
+		return sample;
+	}
+}
@@ -0,0 +1,88 @@
+package se.urbanEV.charging;
+
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.urbanEV.benchmark.BenchmarkScenario;
+import se.urbanEV.fleet.ElectricFleetSpecification;
+import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargingInfrastructure;
+import se.urbanEV.infrastructure.ChargingInfrastructureSpecification;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One charging step as done by {@link ChargingHandler}: {@link ChargingLogicImpl#chargeVehicles(double, double)} on
+ * all size chargers, with size vehicles plugged (vehicle i at charger i, starting at the SoCs of the Sweden fleet).
+ * <p>
+ * The work of a step does not depend on its length, so a very short step is used: it keeps the SoCs, and thus the
+ * set of charging vehicles, nearly constant over an iteration. Fleet and chargers are recreated before each
+ * iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ChargingStepBenchmark {
+	private static final double CHARGE_PERIOD = 1e-3;// [s]
+
+	@Param({ "1000", "10000", "100000" })
+	private int size;
+
+	private BenchmarkScenario scenario;
+	private EventsManager eventsManager;
+	private ChargingInfrastructureSpecification chargerSpecifications;
+	private ElectricFleetSpecification fleetSpecification;
+
+	private ChargingLogic[] logics;
+	private double now;
+
+	@Setup(Level.Trial)
+	public void setupTrial() {
+		scenario = new BenchmarkScenario();
+		eventsManager = EventsUtils.createEventsManager();
+		chargerSpecifications = scenario.createChargerSpecifications(size);
+		fleetSpecification = scenario.createFleetSpecification(size);
+	}
+
+	@Setup(Level.Iteration)
+	public void setupIteration() {
+		ChargingInfrastructure infrastructure = scenario.createInfrastructure(chargerSpecifications,
+				BenchmarkScenario.createChargingLogicFactory(eventsManager));
+		Charger[] chargers = infrastructure.getChargers().values().toArray(new Charger[0]);
+		ElectricVehicle[] vehicles = BenchmarkScenario.createFleet(fleetSpecification)
+				.getElectricVehicles()
+				.values()
+				.toArray(new ElectricVehicle[0]);
+		for (int i = 0; i < vehicles.length; i++) {
+			chargers[i % chargers.length].getLogic().addVehicle(vehicles[i], 0);
+		}
+		logics = new ChargingLogic[chargers.length];
+		for (int i = 0; i < chargers.length; i++) {
+			logics[i] = chargers[i].getLogic();
+		}
+		now = 0;
+	}
+
+	@Benchmark
+	public void chargeVehicles() {
+		now += CHARGE_PERIOD;
+		for (ChargingLogic logic : logics) {
+			logic.chargeVehicles(CHARGE_PERIOD, now);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package se.urbanEV.charging;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.urbanEV.MobsimScopeEventHandling;
+import se.urbanEV.benchmark.BenchmarkScenario;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.fleet.ElectricFleet;
+import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargingInfrastructure;
+import se.urbanEV.infrastructure.ChargingInfrastructureSpecification;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link VehicleChargingHandler#findBestCharger(Coord, ElectricVehicle)} for a stop near a charger (within the
+ * parking search radius) with size chargers and vehicles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class FindBestChargerBenchmark {
+	private static final int QUERIES = 1 << 12;
+
+	@Param({ "1000", "10000", "100000" })
+	private int size;
+
+	private VehicleChargingHandler handler;
+	private Coord[] stopCoords;
+	private ElectricVehicle[] vehicles;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkScenario scenario = new BenchmarkScenario();
+		EventsManager eventsManager = EventsUtils.createEventsManager();
+		ChargingInfrastructureSpecification chargerSpecifications = scenario.createChargerSpecifications(size);
+		ChargingInfrastructure infrastructure = scenario.createInfrastructure(chargerSpecifications,
+				BenchmarkScenario.createChargingLogicFactory(eventsManager));
+		ElectricFleet fleet = BenchmarkScenario.createFleet(scenario.createFleetSpecification(size));
+		UrbanEVConfigGroup urbanEVCfg = new UrbanEVConfigGroup();
+		handler = new VehicleChargingHandler(infrastructure, scenario.getNetwork(), fleet,
+				PopulationUtils.createPopulation(ConfigUtils.createConfig()), eventsManager,
+				new MobsimScopeEventHandling(eventsManager), urbanEVCfg);
+
+		stopCoords = scenario.createStopCoords(chargerSpecifications, QUERIES,
+				urbanEVCfg.getParkingSearchRadius() / 2.);
+		ElectricVehicle[] allVehicles = fleet.getElectricVehicles().values().toArray(new ElectricVehicle[0]);
+		vehicles = new ElectricVehicle[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			vehicles[i] = allVehicles[scenario.getRandom().nextInt(allVehicles.length)];
+		}
+	}
+
+	@Benchmark
+	public Charger findBestCharger() {
+		int query = next++ & (QUERIES - 1);
+		return handler.findBestCharger(stopCoords[query], vehicles[query]);
+	}
+}
@@ -0,0 +1,109 @@
+package se.urbanEV.charging;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.population.PopulationUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.urbanEV.MobsimScopeEventHandling;
+import se.urbanEV.benchmark.BenchmarkScenario;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.fleet.ElectricFleet;
+import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargingInfrastructure;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smart charging decisions for size vehicles and chargers:
+ * <ul>
+ * <li>{@link SmartChargingTouHelper#computeOptimalStartTime} for size evening home charging sessions (arrival
+ * 16:00-21:00, departure 06:00-09:00 on the next day, 1-6 h of charging)</li>
+ * <li>{@link SmartChargingScheduler#processDueTasks(double)} with size deferred sessions of which none is due yet,
+ * i.e. the check done on every sim step</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SmartChargingBenchmark {
+	private static final double HOUR = 3600;
+
+	@Param({ "1000", "10000", "100000" })
+	private int size;
+
+	private UrbanEVConfigGroup urbanEVCfg;
+	private double[] arrivalTimes;
+	private double[] departureTimes;
+	private double[] chargingDurations;
+	private Charger[] chargers;
+	private ElectricVehicle[] vehicles;
+
+	private SmartChargingScheduler scheduler;
+	private double now;
+
+	@Setup
+	public void setup() {
+		// one line per scheduled session would dominate the setup
+		Logger.getLogger(SmartChargingScheduler.class).setLevel(Level.WARN);
+
+		BenchmarkScenario scenario = new BenchmarkScenario();
+		EventsManager eventsManager = EventsUtils.createEventsManager();
+		ChargingInfrastructure infrastructure = scenario.createInfrastructure(
+				scenario.createChargerSpecifications(size),
+				BenchmarkScenario.createChargingLogicFactory(eventsManager));
+		ElectricFleet fleet = BenchmarkScenario.createFleet(scenario.createFleetSpecification(size));
+		urbanEVCfg = new UrbanEVConfigGroup();
+		urbanEVCfg.setEnableSmartCharging(true);
+		VehicleChargingHandler handler = new VehicleChargingHandler(infrastructure, scenario.getNetwork(), fleet,
+				PopulationUtils.createPopulation(ConfigUtils.createConfig()), eventsManager,
+				new MobsimScopeEventHandling(eventsManager), urbanEVCfg);
+
+		chargers = infrastructure.getChargers().values().toArray(new Charger[0]);
+		vehicles = fleet.getElectricVehicles().values().toArray(new ElectricVehicle[0]);
+		Random random = scenario.getRandom();
+		arrivalTimes = new double[size];
+		departureTimes = new double[size];
+		chargingDurations = new double[size];
+		scheduler = new SmartChargingScheduler(infrastructure, fleet, handler);
+		for (int i = 0; i < size; i++) {
+			arrivalTimes[i] = (16 + 5 * random.nextDouble()) * HOUR;
+			departureTimes[i] = (24 + 6 + 3 * random.nextDouble()) * HOUR;
+			chargingDurations[i] = (1 + 5 * random.nextDouble()) * HOUR;
+			scheduler.schedule(vehicles[i].getId(), chargers[i].getId(), departureTimes[i] - chargingDurations[i]);
+		}
+		now = 16 * HOUR;
+	}
+
+	@Benchmark
+	public double computeOptimalStartTime() {
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += SmartChargingTouHelper.computeOptimalStartTime(arrivalTimes[i], departureTimes[i],
+					chargingDurations[i], urbanEVCfg, chargers[i], vehicles[i], true);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public void processDueTasks() {
+		scheduler.processDueTasks(now);
+	}
+}
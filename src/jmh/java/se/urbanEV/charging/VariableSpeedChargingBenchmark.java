@@ -0,0 +1,77 @@
+package se.urbanEV.charging;
+
+import org.matsim.core.events.EventsUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.urbanEV.benchmark.BenchmarkScenario;
+import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargingInfrastructure;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link VariableSpeedCharging#calcChargingPower(Charger)} and
+ * {@link VariableSpeedCharging#calcRemainingTimeToCharge(Charger)} for all size vehicles (vehicle i at charger i),
+ * at the SoCs of the Sweden fleet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class VariableSpeedChargingBenchmark {
+	@Param({ "1000", "10000", "100000" })
+	private int size;
+
+	private VariableSpeedCharging[] chargingPowers;
+	private Charger[] chargers;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkScenario scenario = new BenchmarkScenario();
+		ChargingInfrastructure infrastructure = scenario.createInfrastructure(
+				scenario.createChargerSpecifications(size),
+				BenchmarkScenario.createChargingLogicFactory(EventsUtils.createEventsManager()));
+		Charger[] allChargers = infrastructure.getChargers().values().toArray(new Charger[0]);
+		ElectricVehicle[] vehicles = BenchmarkScenario.createFleet(scenario.createFleetSpecification(size))
+				.getElectricVehicles()
+				.values()
+				.toArray(new ElectricVehicle[0]);
+		chargingPowers = new VariableSpeedCharging[vehicles.length];
+		chargers = new Charger[vehicles.length];
+		for (int i = 0; i < vehicles.length; i++) {
+			chargingPowers[i] = (VariableSpeedCharging)vehicles[i].getChargingPower();
+			chargers[i] = allChargers[i % allChargers.length];
+		}
+	}
+
+	@Benchmark
+	public double calcChargingPower() {
+		double sum = 0;
+		for (int i = 0; i < chargingPowers.length; i++) {
+			sum += chargingPowers[i].calcChargingPower(chargers[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double calcRemainingTimeToCharge() {
+		double sum = 0;
+		for (int i = 0; i < chargingPowers.length; i++) {
+			sum += chargingPowers[i].calcRemainingTimeToCharge(chargers[i]);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,117 @@
+package se.urbanEV.discharging;
+
+import org.matsim.api.core.v01.network.Link;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.urbanEV.benchmark.BenchmarkScenario;
+import se.urbanEV.fleet.ElectricVehicle;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drive energy consumption of size link traversals (random links of the Gothenburg network, travel times between
+ * 1 and 2 times the free speed travel time), each by one of size vehicles:
+ * <ul>
+ * <li>{@link LTHDriveEnergyConsumption}, on links with 1-4 slope segments; as the repository has no LTH
+ * consumption file, the speed/slope table is generated from a simple driving resistance model</li>
+ * <li>{@link TypeSpecificOhdeSlaskiDriveEnergyConsumption}, one per vehicle as in the simulation</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class DriveEnergyConsumptionBenchmark {
+	private static final int MAX_SLOPE_SEGMENTS = 4;
+	private static final double SLOPE_SIGMA = 0.03;
+
+	@Param({ "1000", "10000", "100000" })
+	private int size;
+
+	private Link[] links;
+	private double[] travelTimes;
+	private DriveEnergyConsumption lthConsumption;
+	private DriveEnergyConsumption[] ohdeSlaskiConsumptions;
+
+	@Setup
+	public void setup() {
+		BenchmarkScenario scenario = new BenchmarkScenario();
+		Random random = scenario.getRandom();
+		links = scenario.sampleLinks(size);
+		travelTimes = new double[size];
+		for (int i = 0; i < size; i++) {
+			Link link = links[i];
+			travelTimes[i] = link.getLength() / link.getFreespeed() * (1 + random.nextDouble());
+			if (link.getAttributes().getAttribute(LinkSlopesReader.SLOPES_ATTRIBUTE) == null) {
+				double[] slopes = new double[1 + random.nextInt(MAX_SLOPE_SEGMENTS)];
+				for (int s = 0; s < slopes.length; s++) {
+					slopes[s] = random.nextGaussian() * SLOPE_SIGMA;
+				}
+				link.getAttributes().putAttribute(LinkSlopesReader.SLOPES_ATTRIBUTE, slopes);
+			}
+		}
+
+		ElectricVehicle[] vehicles = BenchmarkScenario.createFleet(scenario.createFleetSpecification(size))
+				.getElectricVehicles()
+				.values()
+				.toArray(new ElectricVehicle[0]);
+		lthConsumption = createLthFactory().create(vehicles[0]);
+		ohdeSlaskiConsumptions = new DriveEnergyConsumption[size];
+		for (int i = 0; i < size; i++) {
+			ohdeSlaskiConsumptions[i] = new TypeSpecificOhdeSlaskiDriveEnergyConsumption(vehicles[i]);
+		}
+	}
+
+	/**
+	 * Consumption [kWh/km] over speed [m/s] and slope [-] of a mid-size car: rolling and air resistance plus the
+	 * gradient, at a drive train efficiency of 0.9 (recuperation neglected).
+	 */
+	private static LTHDriveEnergyConsumption.Factory createLthFactory() {
+		double[] speeds = new double[41];
+		for (int i = 0; i < speeds.length; i++) {
+			speeds[i] = i;
+		}
+		double[] slopes = new double[21];
+		for (int j = 0; j < slopes.length; j++) {
+			slopes[j] = -0.1 + 0.01 * j;
+		}
+		double[][] consumption = new double[speeds.length][slopes.length];
+		for (int i = 0; i < speeds.length; i++) {
+			for (int j = 0; j < slopes.length; j++) {
+				double force = 1600 * 9.81 * (0.01 + slopes[j]) + 0.5 * 1.2 * 0.3 * 2.3 * speeds[i] * speeds[i];// [N]
+				consumption[i][j] = Math.max(force, 0) / 0.9 / 3600;// [J/m] / 3600 = [kWh/km]
+			}
+		}
+		return new LTHDriveEnergyConsumption.Factory(speeds, slopes, consumption, false);
+	}
+
+	@Benchmark
+	public double lthDriveEnergyConsumption() {
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += lthConsumption.calcEnergyConsumption(links[i], travelTimes[i], 0);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double ohdeSlaskiDriveEnergyConsumption() {
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += ohdeSlaskiConsumptions[i].calcEnergyConsumption(links[i], travelTimes[i], 0);
+		}
+		return sum;
+	}
+}
@@ -2,9 +2,11 @@ package se.got;
 
 import se.urbanEV.EvModule;
 import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.discharging.LinkSlopesReader;
 import se.urbanEV.planning.ChangeChargingBehaviour;
 import se.urbanEV.scoring.ChargingBehaviourScoring;
 import se.urbanEV.scoring.ChargingBehaviourScoringParameters;
+import se.urbanEV.stats.ChargingBehaviorScoresCollector;
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.population.Person;
@@ -63,6 +65,14 @@ public class GotEVMain {
     }
 
     private static void loadConfigAndRun(Config config) {
+        createControler(config).run();
+    }
+
+    /**
+     * Loads the scenario and sets up the controler with the EV modules, smart charging and the charging behaviour
+     * scoring, ready to run (also used by {@link se.urbanEV.tools.MacroBenchmark}).
+     */
+    public static Controler createControler(Config config) {
 
         config.parallelEventHandling().setNumberOfThreads(1);
         final Scenario scenario = ScenarioUtils.loadScenario(config);
@@ -72,6 +82,13 @@ public class GotEVMain {
                 (UrbanEVConfigGroup) controler.getConfig().getModules().get(UrbanEVConfigGroup.GROUP_NAME);
         if (urbanEvCfg != null) {
             urbanEvCfg.logIfSuspicious();
+            ChargingBehaviorScoresCollector.getInstance()
+                    .configureDistributions(urbanEvCfg.getScoringDistributionBins(),
+                            urbanEvCfg.getScoringDistributionBinWidth());
+            if (urbanEvCfg.getLinkSlopesFile() != null) {
+                new LinkSlopesReader(scenario.getNetwork())
+                        .readURL(ConfigGroup.getInputFileURL(config.getContext(), urbanEvCfg.getLinkSlopesFile()));
+            }
         }
 
         controler.addOverridingModule(new EvModule());
@@ -135,6 +152,6 @@ public class GotEVMain {
                 "Smart charging awareness assignment: %.1f%% configured → %d / %d persons marked smartChargingAware=true",
                 awareness * 100.0, awareCount, total
         ));
-        controler.run();
+        return controler;
     }
 }
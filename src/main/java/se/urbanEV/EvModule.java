@@ -32,7 +32,9 @@ package se.urbanEV;
 import se.urbanEV.charging.ChargingModule;
 import se.urbanEV.discharging.DischargingModule;
 import se.urbanEV.fleet.ElectricFleetModule;
+import se.urbanEV.grid.GridModule;
 import se.urbanEV.infrastructure.ChargingInfrastructureModule;
+import se.urbanEV.metrics.MetricsModule;
 import se.urbanEV.stats.EvStatsModule;
 import org.matsim.core.controler.AbstractModule;
 
@@ -49,5 +51,7 @@ public class EvModule extends AbstractModule {
 		install(new ChargingModule());
 		install(new DischargingModule());
 		install(new EvStatsModule());
+		install(new GridModule());
+		install(new MetricsModule());
 	}
 }
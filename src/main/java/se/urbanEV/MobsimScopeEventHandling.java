@@ -32,6 +32,8 @@ package se.urbanEV;
 import se.urbanEV.config.UrbanEVConfigGroup;
 import se.urbanEV.fleet.*;
 import se.urbanEV.infrastructure.*;
+import se.urbanEV.stats.MidnightSocHistogram;
+import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Activity;
@@ -40,7 +42,6 @@ import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.api.core.v01.population.Population;
 import org.matsim.contrib.ev.EvUnits;
 import org.matsim.contrib.ev.MobsimScopeEventHandler;
-import org.matsim.contrib.util.CSVReaders;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
 import org.matsim.core.controler.IterationCounter;
@@ -51,7 +52,6 @@ import org.matsim.core.controler.events.StartupEvent;
 import org.matsim.core.controler.listener.AfterMobsimListener;
 import org.matsim.core.controler.listener.StartupListener;
 import org.matsim.core.replanning.StrategyManager;
-import org.matsim.core.utils.misc.Time;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -61,7 +61,6 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Meant for event handlers that are created anew in each iteration and should operate only until the end of the current
@@ -71,6 +70,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 @Singleton
 public class MobsimScopeEventHandling implements StartupListener, AfterMobsimListener {
+	private static final Logger log = Logger.getLogger(MobsimScopeEventHandling.class);
+
 	private final Collection<MobsimScopeEventHandler> eventHandlers = new ConcurrentLinkedQueue<>();
 	private final EventsManager eventsManager;
 	private Random random = new Random();
@@ -109,6 +110,9 @@ public class MobsimScopeEventHandling implements StartupListener, AfterMobsimLis
 	@Inject
 	private UrbanEVConfigGroup urbanEVConfig;
 
+	@Inject
+	private MidnightSocHistogram midnightSocHistogram;
+
 	public void addMobsimScopeHandler(MobsimScopeEventHandler handler) {
 		eventHandlers.add(handler);
 		eventsManager.addHandler(handler);
@@ -179,48 +183,19 @@ public class MobsimScopeEventHandling implements StartupListener, AfterMobsimLis
 
 		// Todo: Check and revise this whole part
 		if (iterationNumber == lastIteration && endTime/(24*60*60)>1 && endTime%(24*60*60)==0 && lastIteration!=0) {
-			// get average soc distribution
-			int socDistibutionAtMidnight[] = new int[11];
-			AtomicInteger n = new AtomicInteger();
-			List<String[]> socs = CSVReaders.readTSV(Paths.get(controlerIO.getIterationFilename(iterationNumber, "soc_histogram_time_profiles.txt")).toString());
-			socs.forEach(row -> {
-				if (!row[0].equals("time")) {
-					double time = Time.parseTime(row[0]);
-					if (time > 0.3 * endTime && time % (24*60*60) == 0 && time < 0.8 * endTime) {
-						for (int i = 1; i < row.length; i++) {
-							socDistibutionAtMidnight[i-1] += Integer.parseInt(row[i]);
-						}
-						n.getAndIncrement();
-					}
-				}
-			});
-
-			// find relative soc distribution at midnight
-			double relativeSocDistribution[] = new double[11];
-			double sum = 0;
-			for (int value : socDistibutionAtMidnight) {
-				sum += value;
-			}
-			for (int i = 0; i < relativeSocDistribution.length; i++) {
-				relativeSocDistribution[i] = socDistibutionAtMidnight[i] / sum;
+			// soc distribution at midnight (collected during the mobsim), truncated at the range anxiety threshold
+			MidnightSocHistogram.Sampler startSocSampler = midnightSocHistogram.createSampler(
+					urbanEVConfig.getDefaultRangeAnxietyThreshold());
+			if (startSocSampler == null) {
+				log.warn("Start socs are not updated: no midnight soc distribution available");
 			}
 
 			// update start socs
 			electricFleetSpecification.getVehicleSpecifications().forEach((id, ev) -> {
-
-				double startSoc = 0.0;
-				while (startSoc < urbanEVConfig.getDefaultRangeAnxietyThreshold()) {
-					double r = random.nextDouble();
-					double distributionSum = 0;
-					for (int i = 0; i < relativeSocDistribution.length; i++) {
-						distributionSum += relativeSocDistribution[i];
-						if (r < distributionSum) {
-							startSoc = 0.1 * ((double) i - random.nextDouble());
-							break;
-						}
-					}
+				if (startSocSampler == null) {
+					return;
 				}
-
+				double startSoc = startSocSampler.sample(random);
 				double initialSoc = startSoc * ev.getBatteryCapacity();
 
 				ElectricVehicleSpecification electricVehicleSpecification = ImmutableElectricVehicleSpecification.newBuilder()
@@ -31,8 +31,13 @@ package se.urbanEV.charging;
 
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.grid.GridLoadRecorder;
 import se.urbanEV.infrastructure.Charger;
 import se.urbanEV.infrastructure.ChargingInfrastructure;
+import se.urbanEV.metrics.ChargingStepJfrEvent;
+import se.urbanEV.metrics.EvMetrics;
 import org.matsim.contrib.ev.EvConfigGroup;
 import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
 import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
@@ -40,19 +45,43 @@ import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
 public class ChargingHandler implements MobsimAfterSimStepListener {
 	private final Iterable<Charger> chargers;
 	private final int chargeTimeStep;
+	private final GridLoadRecorder gridLoadRecorder;// null if gridNodesFile is not set
+	private final EvMetrics.Timer stepTimer = EvMetrics.getInstance().timer("ChargingHandler.step");
 
 	@Inject
-	public ChargingHandler(ChargingInfrastructure chargingInfrastructure, EvConfigGroup evConfig) {
+	public ChargingHandler(ChargingInfrastructure chargingInfrastructure, EvConfigGroup evConfig,
+			UrbanEVConfigGroup urbanEVCfg, Provider<GridLoadRecorder> gridLoadRecorderProvider) {
 		this.chargers = chargingInfrastructure.getChargers().values();
 		this.chargeTimeStep = evConfig.getChargeTimeStep();
+		this.gridLoadRecorder = urbanEVCfg.getGridNodesFile() != null ? gridLoadRecorderProvider.get() : null;
 	}
 
 	@Override
 	public void notifyMobsimAfterSimStep(@SuppressWarnings("rawtypes") MobsimAfterSimStepEvent e) {
 		if ((e.getSimulationTime() + 1) % chargeTimeStep == 0) {
+			ChargingStepJfrEvent jfrEvent = new ChargingStepJfrEvent();
+			jfrEvent.begin();
+			boolean countVehicles = jfrEvent.isEnabled();
+			int chargerCount = 0;
+			int vehicleCount = 0;
+			long start = stepTimer.start();
 			for (Charger c : chargers) {
+				if (countVehicles) {
+					chargerCount++;
+					vehicleCount += c.getLogic().getPluggedVehicles().size();
+				}
 				c.getLogic().chargeVehicles(chargeTimeStep, e.getSimulationTime());
 			}
+			if (gridLoadRecorder != null) {
+				gridLoadRecorder.addChargingStep(chargeTimeStep, e.getSimulationTime());
+			}
+			stepTimer.stop(start);
+			if (jfrEvent.shouldCommit()) {
+				jfrEvent.simTime = e.getSimulationTime();
+				jfrEvent.chargers = chargerCount;
+				jfrEvent.vehicles = vehicleCount;
+				jfrEvent.commit();
+			}
 		}
 	}
 }
@@ -47,6 +47,11 @@ public interface ChargingLogic {
 
 	void chargeVehicles(double chargePeriod, double now);
 
+	/**
+	 * @return total power [W] drawn by the charging vehicles in the last {@link #chargeVehicles(double, double)}
+	 */
+	double getCurrentPower();
+
 	Collection<ElectricVehicle> getPluggedVehicles();
 
 	ChargingStrategy getChargingStrategy();
@@ -46,6 +46,8 @@ public class ChargingLogicImpl implements ChargingLogic {
 	private final Map<Id<ElectricVehicle>, ElectricVehicle> chargingVehicles = new LinkedHashMap<>();
 	private final Map<Id<ElectricVehicle>, ChargingListener> listeners = new LinkedHashMap<>();
 
+	private double currentPower;// [W]
+
 	public ChargingLogicImpl(Charger charger, ChargingStrategy chargingStrategy, EventsManager eventsManager) {
 		this.chargingStrategy = Objects.requireNonNull(chargingStrategy);
 		this.charger = Objects.requireNonNull(charger);
@@ -54,10 +56,13 @@ public class ChargingLogicImpl implements ChargingLogic {
 
 	@Override
 	public void chargeVehicles(double chargePeriod, double now) {
+		double power = 0;
 		Iterator<ElectricVehicle> evIter = chargingVehicles.values().iterator();
 		while (evIter.hasNext()) {
 			ElectricVehicle ev = evIter.next();
-			ev.getBattery().changeSoc(ev.getChargingPower().calcChargingPower(charger) * chargePeriod);
+			double evPower = ev.getChargingPower().calcChargingPower(charger);
+			ev.getBattery().changeSoc(evPower * chargePeriod);
+			power += evPower;
 
 			if (chargingStrategy.isChargingCompleted(ev)) {
 				eventsManager.processEvent(
@@ -70,6 +75,12 @@ public class ChargingLogicImpl implements ChargingLogic {
 				evIter.remove();
 			}
 		}
+		currentPower = power;
+	}
+
+	@Override
+	public double getCurrentPower() {
+		return currentPower;
 	}
 
 	@Override
@@ -3,6 +3,7 @@ package se.urbanEV.charging;
 import org.apache.log4j.Logger;
 import org.matsim.core.mobsim.qsim.InternalInterface;
 import org.matsim.core.mobsim.qsim.interfaces.MobsimEngine;
+import se.urbanEV.metrics.EvMetrics;
 import javax.inject.Inject;
 
 /**
@@ -13,6 +14,7 @@ import javax.inject.Inject;
 public final class SmartChargingEngine implements MobsimEngine {
     private static final Logger log = Logger.getLogger(SmartChargingEngine.class);
     private final VehicleChargingHandler vch;
+    private final EvMetrics.Timer stepTimer = EvMetrics.getInstance().timer("SmartChargingEngine.step");
 
     @Inject
     public SmartChargingEngine(VehicleChargingHandler vch) {
@@ -22,7 +24,9 @@ public final class SmartChargingEngine implements MobsimEngine {
     @Override
     public void doSimStep(double time) {
 //        log.info("SmartChargingEngine tick at time=" + time);
+        long start = stepTimer.start();
         vch.tick(time);
+        stepTimer.stop(start);
     }
 
     @Override
@@ -39,6 +39,9 @@ import se.urbanEV.fleet.ElectricFleet;
 import se.urbanEV.fleet.ElectricVehicle;
 import se.urbanEV.infrastructure.Charger;
 import se.urbanEV.infrastructure.ChargingInfrastructure;
+import se.urbanEV.metrics.ChargerSearchJfrEvent;
+import se.urbanEV.metrics.EvMetrics;
+import se.urbanEV.metrics.SmartChargingDecisionJfrEvent;
 import se.urbanEV.scoring.ChargingBehaviourScoringEvent;
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Coord;
@@ -91,6 +94,14 @@ public class VehicleChargingHandler
     private final UrbanEVConfigGroup urbanEvCfg;
     private final SmartChargingScheduler smartScheduler;
 
+    private final EvMetrics.Timer eventTimer = EvMetrics.getInstance().timer("VehicleChargingHandler.events");
+    private final EvMetrics.Histogram searchCandidates = EvMetrics.getInstance()
+            .histogram("ChargerSearch.candidates", 0, 1, 2, 5, 10, 20, 50, 100, 200, 500);
+    private final EvMetrics.Counter chargersScanned = EvMetrics.getInstance().counter("ChargerSearch.chargersScanned");
+    private final EvMetrics.Counter failedSearches = EvMetrics.getInstance().counter("ChargerSearch.failed");
+    private final EvMetrics.Counter smartDecisions = EvMetrics.getInstance().counter("SmartCharging.decisions");
+    private final EvMetrics.Counter smartDeferrals = EvMetrics.getInstance().counter("SmartCharging.deferrals");
+
     @Inject
     public VehicleChargingHandler(ChargingInfrastructure chargingInfrastructure,
                                   Network network,
@@ -142,6 +153,12 @@ public class VehicleChargingHandler
 
     @Override
 	public void handleEvent(ActivityStartEvent event) {
+        long start = eventTimer.start();
+        handleActivityStart(event);
+        eventTimer.stop(start);
+    }
+
+	private void handleActivityStart(ActivityStartEvent event) {
 		String actType = event.getActType();
 		Id<Person> personId = event.getPersonId();
 		Id<Vehicle> vehicleId = lastVehicleUsed.get(personId);
@@ -200,6 +217,8 @@ public class VehicleChargingHandler
                                     isAware = Boolean.parseBoolean((String) awareAttr);
                                 }
 
+                                SmartChargingDecisionJfrEvent jfrEvent = new SmartChargingDecisionJfrEvent();
+                                jfrEvent.begin();
                                 double optimalStart = SmartChargingTouHelper.computeOptimalStartTime(
                                         arrivalTime,
                                         departureTime,
@@ -216,9 +235,22 @@ public class VehicleChargingHandler
                                             personId, isAware, arrivalTime, departureTime, chargingDuration, optimalStart
                                     ));
                                 }
+                                if (jfrEvent.shouldCommit()) {
+                                    jfrEvent.vehicleId = evId.toString();
+                                    jfrEvent.chargerId = selectedCharger.getId().toString();
+                                    jfrEvent.aware = isAware;
+                                    jfrEvent.arrivalTime = arrivalTime;
+                                    jfrEvent.departureTime = departureTime;
+                                    jfrEvent.chargingDuration = chargingDuration;
+                                    jfrEvent.startTime = optimalStart;
+                                    jfrEvent.deferred = optimalStart > arrivalTime + 1.0;
+                                    jfrEvent.commit();
+                                }
 
+                                smartDecisions.increment();
                                 if (optimalStart > arrivalTime + 1.0) {
                                     // schedule deferred plug-in
+                                    smartDeferrals.increment();
                                     smartScheduler.schedule(evId, selectedCharger.getId(), optimalStart);
                                     walkingDistance = DistanceUtils.calculateDistance(activityCoord, selectedCharger.getCoord());
 
@@ -281,6 +313,12 @@ public class VehicleChargingHandler
 
     @Override
     public void handleEvent(ActivityEndEvent event) {
+        long start = eventTimer.start();
+        handleActivityEnd(event);
+        eventTimer.stop(start);
+    }
+
+    private void handleActivityEnd(ActivityEndEvent event) {
         if (event.getActType().endsWith(CHARGING_IDENTIFIER)) {
             Id<Vehicle> vehicleId = lastVehicleUsed.get(event.getPersonId());
             if (vehicleId != null) {
@@ -368,7 +406,7 @@ public class VehicleChargingHandler
 	 * @param time
 	 * @return
 	 */
-	private Activity getActivity(Person person, double time){
+	public static Activity getActivity(Person person, double time){
 		Activity activity = null;
 		List<PlanElement> planElements = person.getSelectedPlan().getPlanElements();
 		for (int i = 0; i < planElements.size(); i++) {
@@ -401,9 +439,12 @@ public class VehicleChargingHandler
 	/**
 	 * Tries to find closest free charger of fitting type in vicinity of activity location
 	 * If a charger is private, only allowed vehicles can charge there
+	 * (package-private for FindBestChargerBenchmark in src/jmh/java)
 	 */
 
-	private Charger findBestCharger(Coord stopCoord, ElectricVehicle electricVehicle) {
+	Charger findBestCharger(Coord stopCoord, ElectricVehicle electricVehicle) {
+		ChargerSearchJfrEvent jfrEvent = new ChargerSearchJfrEvent();
+		jfrEvent.begin();
 
 		List<Charger> filteredChargers = new ArrayList<>();
 		chargingInfrastructure.getChargers().values().forEach(charger -> {
@@ -423,6 +464,20 @@ public class VehicleChargingHandler
 		List<Charger> nearestChargers = PartialSort.kSmallestElements(1, filteredChargers.stream(),
 				(charger) -> DistanceUtils.calculateSquaredDistance(stopCoord, charger.getCoord()));
 
+		searchCandidates.record(filteredChargers.size());
+		chargersScanned.add(chargingInfrastructure.getChargers().size());
+		if (nearestChargers.isEmpty()) {
+			failedSearches.increment();
+		}
+		if (jfrEvent.shouldCommit()) {
+			jfrEvent.vehicleId = electricVehicle.getId().toString();
+			jfrEvent.chargersScanned = chargingInfrastructure.getChargers().size();
+			jfrEvent.candidates = filteredChargers.size();
+			jfrEvent.found = !nearestChargers.isEmpty();
+			jfrEvent.chargerId = jfrEvent.found ? nearestChargers.get(0).getId().toString() : null;
+			jfrEvent.commit();
+		}
+
 		if (!nearestChargers.isEmpty()) {
 			return nearestChargers.get(0);
 		} else {
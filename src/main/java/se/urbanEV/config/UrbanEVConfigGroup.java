@@ -87,6 +87,83 @@ public final class UrbanEVConfigGroup extends ReflectiveConfigGroup {
     private static final String AWARENESS_FACTOR = "awarenessFactor";
     private static final String COINCIDENCE_FACTOR = "coincidenceFactor";
 
+    public static final String TEMPERATURE_RASTER_FILE = "temperatureRasterFile";
+    static final String TEMPERATURE_RASTER_FILE_EXP = "Location of an hourly temperature raster (ESRI ASCII grid with an additional nhours header entry and one block of values per hour, network CRS) used for the aux energy consumption. If not set, a constant 15 oC is assumed.";
+
+    public static final String LINK_SLOPES_FILE = "linkSlopesFile";
+    static final String LINK_SLOPES_FILE_EXP = "Location of a binary link slopes file (see se.urbanEV.tools.LinkSlopePreprocessor) attached to the network at startup. Used by the LTH drive energy consumption model. If not set, all links are flat.";
+
+    public static final String GRID_NODES_FILE = "gridNodesFile";
+    static final String GRID_NODES_FILE_EXP = "Location of a csv file (';'-separated) assigning chargers to power grid nodes (feeders/substations), either explicitly (header chargerId;nodeId) or by the nearest node coordinate (header nodeId;x;y, network CRS). If set, the charging power per node is recorded at 1-minute resolution and gridLoad.csv.gz and gridLoadSummary.csv are written in each iteration. If not set, no grid load is recorded.";
+
+    public static final String GRID_FEEDERS_FILE = "gridFeedersFile";
+    static final String GRID_FEEDERS_FILE_EXP = "Location of a csv file (';'-separated, header feederId;nodeId;parentId;r_ohm;x_ohm;rating_kVA;vNom_kV) describing radial feeders whose node ids match gridNodesFile. If set (together with gridNodesFile), voltages and branch loadings are estimated with the linearised DistFlow model for every 15-minute slot and written to gridImpact.csv.gz and gridImpactSummary.csv.";
+
+    public static final String GRID_LOAD_POWER_FACTOR = "gridLoadPowerFactor";
+    static final String GRID_LOAD_POWER_FACTOR_EXP = "Power factor (0, 1] of the charging load used for the feeder voltage estimates (gridFeedersFile); the reactive power is inductive.";
+
+    // Output parameters
+    public static final String TRIP_ENERGY_OUTPUT = "tripEnergyOutput";
+    static final String TRIP_ENERGY_OUTPUT_EXP = "If set to true, the start/end soc, distance, energy, consumption and mean speed of every EV trip are written to tripEnergy.csv.gz in each iteration directory. [true/false]";
+
+    public static final String CHARGER_OCCUPANCY_CSV_OUTPUT = "chargerOccupancyCsvOutput";
+    static final String CHARGER_OCCUPANCY_CSV_OUTPUT_EXP = "If set to true, charger occupancy intervals are streamed to charger_occupancy.csv.gz while the iteration runs, instead of writing charger_occupancy_plan.xml at its end. The Via-readable plan file can be created from the csv with se.urbanEV.tools.ChargerOccupancyCsvToPlan. [true/false]";
+
+    public static final String STREAMING_CHARGING_STATS = "streamingChargingStats";
+    static final String STREAMING_CHARGING_STATS_EXP = "If set to true, completed charging sessions are buffered in a few small reusable buffers and appended to chargingStats.csv in chunks by the output writer while the iteration runs, instead of being kept in memory until its end. The session totals are written to chargingStatsSummary.csv. [true/false]";
+
+    public static final String SCORING_DISTRIBUTION_BINS = "scoringDistributionBins";
+    static final String SCORING_DISTRIBUTION_BINS_EXP = "Number of bins of the per-component distributions of charging behaviour score values written to scoringDistributions.csv in each iteration directory (bins centered on 0, outliers counted in the outermost bins). 0 = no distributions.";
+
+    public static final String SCORING_DISTRIBUTION_BIN_WIDTH = "scoringDistributionBinWidth";
+    static final String SCORING_DISTRIBUTION_BIN_WIDTH_EXP = "Width of the bins of the charging behaviour score distributions. Only used if scoringDistributionBins > 0.";
+
+    public static final String TIME_PROFILE_CHART_INTERVAL = "timeProfileChartInterval";
+    static final String TIME_PROFILE_CHART_INTERVAL_EXP = "Iteration interval at which the EV time profile charts (png) are rendered; they are always rendered in the last iteration. The raw profile data (txt) is written in every iteration. 0 = charts only in the last iteration (headless). Charts can be rendered later with se.urbanEV.tools.TimeProfileChartRenderer.";
+
+    public static final String SOC_TRAJECTORY_INTERVAL = "socTrajectoryInterval";
+    static final String SOC_TRAJECTORY_INTERVAL_EXP = "Interval [s] at which the SoC of every EV is recorded into the compact binary file socTrajectories.bin (read with se.urbanEV.stats.SocTrajectoryReader). Should be a multiple of the QSim time step. 0 = off.";
+
+    public static final String CHARGING_SESSION_QUANTILES = "chargingSessionQuantiles";
+    static final String CHARGING_SESSION_QUANTILES_EXP = "If set to true, charging session durations, energy and walking distances are added to streaming quantile sketches (1 % relative accuracy) per charger category and hour of day; quantiles of each iteration and over all iterations are appended to chargingSessionQuantiles.csv. Requires timeProfiles in the ev config group. [true/false]";
+
+    public static final String CHARGING_GRID_CELL_SIZE = "chargingGridCellSize";
+    static final String CHARGING_GRID_CELL_SIZE_EXP = "Size [m] of the square grid cells of chargingDemandGrid.csv.gz (energy delivered, peak plugged vehicles and failed charging attempts per cell and hour of day). 0 = off.";
+
+    public static final String EV_EVENTS_BINARY_INTERVAL = "evEventsBinaryInterval";
+    static final String EV_EVENTS_BINARY_INTERVAL_EXP = "Iteration interval at which the charging events (charging_start, charging_end, unplugging, scoring) are written to the compact binary file evEvents.bin.gz (interned ids, primitive fields; read with se.urbanEV.stats.EvEventReader); the last iteration is always included. 0 = off.";
+
+    public static final String EXCLUDE_EV_EVENTS_FROM_XML = "excludeEvEventsFromXml";
+    static final String EXCLUDE_EV_EVENTS_FROM_XML_EXP = "If set to true, the charging events are left out of the events xml files, which are then written by se.urbanEV.stats.EvEventsXmlWriter (replacing the controler's events handling) at the controler's writeEventsInterval and writeEventsUntilIteration. Use together with evEventsBinaryInterval to keep them. [true/false]";
+
+    public static final String EV_PERFORMANCE_METRICS = "evPerformanceMetrics";
+    static final String EV_PERFORMANCE_METRICS_EXP = "If set to true, the EV modules collect performance metrics (events handled per handler, charger searches and their candidates, smart charging deferrals, charging step, discharging and output write times, allocated bytes) that are reset at every iteration start and written to ev_performance.csv in the output directory at the iteration end. [true/false]";
+
+    public static final String EV_PERFORMANCE_PROMETHEUS_FILE = "evPerformancePrometheusFile";
+    static final String EV_PERFORMANCE_PROMETHEUS_FILE_EXP = "Location of a text file (Prometheus exposition format) that is replaced at every iteration end with the metrics of that iteration, e.g. in the directory of the node_exporter textfile collector. Relative paths are resolved against the output directory. Only used if evPerformanceMetrics is set to true. null = off.";
+
+    // Performance parameters
+    public static final String BATCH_DRIVE_DISCHARGING = "batchDriveDischarging";
+    static final String BATCH_DRIVE_DISCHARGING_EXP = "If set to true, drive discharging is buffered while the link events of a sim step are handled and applied to the batteries in one pass after the step. [true/false]";
+
+    public static final String DRIVE_DISCHARGING_THREADS = "driveDischargingThreads";
+    static final String DRIVE_DISCHARGING_THREADS_EXP = "Number of threads of the dedicated pool the buffered SoC changes are spread over (vehicles are partitioned, so each battery is updated by a single thread; the energy consumption is computed on the mobsim thread). Only used if batchDriveDischarging is set to true. 1 = sequential.";
+
+    public static final String LAZY_AUX_DISCHARGING = "lazyAuxDischarging";
+    static final String LAZY_AUX_DISCHARGING_EXP = "If set to true, the aux energy of parked vehicles is integrated over the stay when the activity ends or the SoC is read, instead of every auxDischargeTimeStep. [true/false]";
+
+    public static final String INCREMENTAL_SOC_HISTOGRAM = "incrementalSocHistogram";
+    static final String INCREMENTAL_SOC_HISTOGRAM_EXP = "If set to true, the fleet SoC histogram and the per-vehicle-type SoC sums are updated by the batteries whenever their SoC changes, so sampling the SoC time profiles no longer scans the whole fleet. [true/false]";
+
+    public static final String OUTPUT_WRITER_THREADS = "outputWriterThreads";
+    static final String OUTPUT_WRITER_THREADS_EXP = "Number of background threads that write the iteration outputs of the EV statistics (chargingStats.csv, evConsumptionPerLink.csv, charger_occupancy_plan.xml, scoringComponents.csv), so that the next iteration does not wait for them. 0 = written synchronously at the end of the mobsim.";
+
+    public static final String JFR_EVENTS = "jfrEvents";
+    static final String JFR_EVENTS_EXP = "If set to true, the EV hot paths (charger search, smart charging decisions, charging steps, drive discharging batches, EV output writing) emit Java Flight Recorder events (category UrbanEV) that show up in recordings, e.g. started with -XX:StartFlightRecording. If false, the events are not registered and never recorded. [true/false]";
+
+    public static final String COMPRESSED_EV_OUTPUTS = "compressedEvOutputs";
+    static final String COMPRESSED_EV_OUTPUTS_EXP = "If set to true, chargingStats.csv and evConsumptionPerLink.csv are written gzip-compressed (chargingStats.csv.gz, evConsumptionPerLink.csv.gz), compressed on the output writer threads if there are any. [true/false]";
+
 
     // Charger parameters
     private boolean generateHomeChargersByPercentage = false;
@@ -128,6 +205,17 @@ public final class UrbanEVConfigGroup extends ReflectiveConfigGroup {
     @NotNull
     private String vehicleTypesFile = null;
 
+    private String temperatureRasterFile = null;
+
+    private String linkSlopesFile = null;
+
+    private String gridNodesFile = null;
+
+    private String gridFeedersFile = null;
+
+    @Positive
+    private double gridLoadPowerFactor = 1.0;
+
     // Charging parameters
     @Positive
     private int parkingSearchRadius = 500;
@@ -168,6 +256,56 @@ public final class UrbanEVConfigGroup extends ReflectiveConfigGroup {
     private double awarenessFactor = 0.0;
     private double coincidenceFactor = 0.0;
 
+    // Output parameters
+    private boolean tripEnergyOutput = false;
+
+    private boolean chargerOccupancyCsvOutput = false;
+
+    private boolean streamingChargingStats = false;
+
+    @PositiveOrZero
+    private int scoringDistributionBins = 0;
+
+    @Positive
+    private double scoringDistributionBinWidth = 0.1;
+
+    @PositiveOrZero
+    private int timeProfileChartInterval = 1;
+
+    @PositiveOrZero
+    private int socTrajectoryInterval = 0;
+
+    private boolean chargingSessionQuantiles = false;
+
+    @PositiveOrZero
+    private double chargingGridCellSize = 0.0;
+
+    @PositiveOrZero
+    private int evEventsBinaryInterval = 0;
+
+    private boolean excludeEvEventsFromXml = false;
+
+    private boolean evPerformanceMetrics = false;
+
+    private String evPerformancePrometheusFile = null;
+
+    // Performance parameters
+    private boolean batchDriveDischarging = false;
+
+    @Positive
+    private int driveDischargingThreads = 1;
+
+    private boolean lazyAuxDischarging = false;
+
+    private boolean incrementalSocHistogram = false;
+
+    @PositiveOrZero
+    private int outputWriterThreads = 0;
+
+    private boolean jfrEvents = false;
+
+    private boolean compressedEvOutputs = false;
+
 
 
 
@@ -184,6 +322,11 @@ public final class UrbanEVConfigGroup extends ReflectiveConfigGroup {
         map.put(HOME_CHARGING_UTILITY, HOME_CHARGING_UTILITY_EXP);
         map.put(SOC_DIFFERENCE_UTILITY, SOC_DIFFERENCE_UTILITY_EXP);
         map.put(VEHICLE_TYPES_FILE, VEHICLE_TYPES_FILE_EXP);
+        map.put(TEMPERATURE_RASTER_FILE, TEMPERATURE_RASTER_FILE_EXP);
+        map.put(LINK_SLOPES_FILE, LINK_SLOPES_FILE_EXP);
+        map.put(GRID_NODES_FILE, GRID_NODES_FILE_EXP);
+        map.put(GRID_FEEDERS_FILE, GRID_FEEDERS_FILE_EXP);
+        map.put(GRID_LOAD_POWER_FACTOR, GRID_LOAD_POWER_FACTOR_EXP);
         map.put(PARKING_SEARCH_RADIUS, PARKING_SEARCH_RADIUS_EXP);
         map.put(DEFAULT_RANGE_ANXIETY_THRESHOLD, DEFAULT_RANGE_ANXIETY_THRESHOLD_EXP);
         map.put(MAXNUMBERSIMULTANEOUSPLANCHANGES, MAXNUMBERSIMULTANEOUSPLANCHANGES_EXP);
@@ -207,6 +350,27 @@ public final class UrbanEVConfigGroup extends ReflectiveConfigGroup {
         map.put(AWARENESS_FACTOR, "Probability [0.0–1.0] of an agent being aware of ToU pricing and willing to shift charging start.");
         map.put(ALPHA_SCALE_TEMPORAL, "Temporal shift controller in (0,1]. 1.0=no shift; values closer to 0 shift the low-ToU window earlier..");
 
+        map.put(TRIP_ENERGY_OUTPUT, TRIP_ENERGY_OUTPUT_EXP);
+        map.put(CHARGER_OCCUPANCY_CSV_OUTPUT, CHARGER_OCCUPANCY_CSV_OUTPUT_EXP);
+        map.put(STREAMING_CHARGING_STATS, STREAMING_CHARGING_STATS_EXP);
+        map.put(SCORING_DISTRIBUTION_BINS, SCORING_DISTRIBUTION_BINS_EXP);
+        map.put(SCORING_DISTRIBUTION_BIN_WIDTH, SCORING_DISTRIBUTION_BIN_WIDTH_EXP);
+        map.put(TIME_PROFILE_CHART_INTERVAL, TIME_PROFILE_CHART_INTERVAL_EXP);
+        map.put(SOC_TRAJECTORY_INTERVAL, SOC_TRAJECTORY_INTERVAL_EXP);
+        map.put(CHARGING_SESSION_QUANTILES, CHARGING_SESSION_QUANTILES_EXP);
+        map.put(CHARGING_GRID_CELL_SIZE, CHARGING_GRID_CELL_SIZE_EXP);
+        map.put(EV_EVENTS_BINARY_INTERVAL, EV_EVENTS_BINARY_INTERVAL_EXP);
+        map.put(EXCLUDE_EV_EVENTS_FROM_XML, EXCLUDE_EV_EVENTS_FROM_XML_EXP);
+        map.put(EV_PERFORMANCE_METRICS, EV_PERFORMANCE_METRICS_EXP);
+        map.put(EV_PERFORMANCE_PROMETHEUS_FILE, EV_PERFORMANCE_PROMETHEUS_FILE_EXP);
+        map.put(BATCH_DRIVE_DISCHARGING, BATCH_DRIVE_DISCHARGING_EXP);
+        map.put(DRIVE_DISCHARGING_THREADS, DRIVE_DISCHARGING_THREADS_EXP);
+        map.put(LAZY_AUX_DISCHARGING, LAZY_AUX_DISCHARGING_EXP);
+        map.put(INCREMENTAL_SOC_HISTOGRAM, INCREMENTAL_SOC_HISTOGRAM_EXP);
+        map.put(OUTPUT_WRITER_THREADS, OUTPUT_WRITER_THREADS_EXP);
+        map.put(JFR_EVENTS, JFR_EVENTS_EXP);
+        map.put(COMPRESSED_EV_OUTPUTS, COMPRESSED_EV_OUTPUTS_EXP);
+
         return map;
     }
 
@@ -290,6 +454,56 @@ public final class UrbanEVConfigGroup extends ReflectiveConfigGroup {
         this.vehicleTypesFile = vehicleTypesFile;
     }
 
+    @StringGetter(TEMPERATURE_RASTER_FILE)
+    public String getTemperatureRasterFile() {
+        return temperatureRasterFile;
+    }
+
+    @StringSetter(TEMPERATURE_RASTER_FILE)
+    public void setTemperatureRasterFile(String temperatureRasterFile) {
+        this.temperatureRasterFile = temperatureRasterFile;
+    }
+
+    @StringGetter(LINK_SLOPES_FILE)
+    public String getLinkSlopesFile() {
+        return linkSlopesFile;
+    }
+
+    @StringSetter(LINK_SLOPES_FILE)
+    public void setLinkSlopesFile(String linkSlopesFile) {
+        this.linkSlopesFile = linkSlopesFile;
+    }
+
+    @StringGetter(GRID_NODES_FILE)
+    public String getGridNodesFile() {
+        return gridNodesFile;
+    }
+
+    @StringSetter(GRID_NODES_FILE)
+    public void setGridNodesFile(String gridNodesFile) {
+        this.gridNodesFile = gridNodesFile;
+    }
+
+    @StringGetter(GRID_FEEDERS_FILE)
+    public String getGridFeedersFile() {
+        return gridFeedersFile;
+    }
+
+    @StringSetter(GRID_FEEDERS_FILE)
+    public void setGridFeedersFile(String gridFeedersFile) {
+        this.gridFeedersFile = gridFeedersFile;
+    }
+
+    @StringGetter(GRID_LOAD_POWER_FACTOR)
+    public double getGridLoadPowerFactor() {
+        return gridLoadPowerFactor;
+    }
+
+    @StringSetter(GRID_LOAD_POWER_FACTOR)
+    public void setGridLoadPowerFactor(double gridLoadPowerFactor) {
+        this.gridLoadPowerFactor = gridLoadPowerFactor;
+    }
+
     @StringGetter(PARKING_SEARCH_RADIUS)
     public int getParkingSearchRadius() {
         return parkingSearchRadius;
@@ -478,6 +692,206 @@ public final class UrbanEVConfigGroup extends ReflectiveConfigGroup {
         }
     }
 
+    @StringGetter(TRIP_ENERGY_OUTPUT)
+    public boolean isTripEnergyOutput() {
+        return tripEnergyOutput;
+    }
+
+    @StringSetter(TRIP_ENERGY_OUTPUT)
+    public void setTripEnergyOutput(boolean tripEnergyOutput) {
+        this.tripEnergyOutput = tripEnergyOutput;
+    }
+
+    @StringGetter(CHARGER_OCCUPANCY_CSV_OUTPUT)
+    public boolean isChargerOccupancyCsvOutput() {
+        return chargerOccupancyCsvOutput;
+    }
+
+    @StringSetter(CHARGER_OCCUPANCY_CSV_OUTPUT)
+    public void setChargerOccupancyCsvOutput(boolean chargerOccupancyCsvOutput) {
+        this.chargerOccupancyCsvOutput = chargerOccupancyCsvOutput;
+    }
+
+    @StringGetter(STREAMING_CHARGING_STATS)
+    public boolean isStreamingChargingStats() {
+        return streamingChargingStats;
+    }
+
+    @StringSetter(STREAMING_CHARGING_STATS)
+    public void setStreamingChargingStats(boolean streamingChargingStats) {
+        this.streamingChargingStats = streamingChargingStats;
+    }
+
+    @StringGetter(SCORING_DISTRIBUTION_BINS)
+    public int getScoringDistributionBins() {
+        return scoringDistributionBins;
+    }
+
+    @StringSetter(SCORING_DISTRIBUTION_BINS)
+    public void setScoringDistributionBins(int scoringDistributionBins) {
+        this.scoringDistributionBins = scoringDistributionBins;
+    }
+
+    @StringGetter(SCORING_DISTRIBUTION_BIN_WIDTH)
+    public double getScoringDistributionBinWidth() {
+        return scoringDistributionBinWidth;
+    }
+
+    @StringSetter(SCORING_DISTRIBUTION_BIN_WIDTH)
+    public void setScoringDistributionBinWidth(double scoringDistributionBinWidth) {
+        this.scoringDistributionBinWidth = scoringDistributionBinWidth;
+    }
+
+    @StringGetter(TIME_PROFILE_CHART_INTERVAL)
+    public int getTimeProfileChartInterval() {
+        return timeProfileChartInterval;
+    }
+
+    @StringSetter(TIME_PROFILE_CHART_INTERVAL)
+    public void setTimeProfileChartInterval(int timeProfileChartInterval) {
+        this.timeProfileChartInterval = timeProfileChartInterval;
+    }
+
+    @StringGetter(SOC_TRAJECTORY_INTERVAL)
+    public int getSocTrajectoryInterval() {
+        return socTrajectoryInterval;
+    }
+
+    @StringSetter(SOC_TRAJECTORY_INTERVAL)
+    public void setSocTrajectoryInterval(int socTrajectoryInterval) {
+        this.socTrajectoryInterval = socTrajectoryInterval;
+    }
+
+    @StringGetter(CHARGING_SESSION_QUANTILES)
+    public boolean isChargingSessionQuantiles() {
+        return chargingSessionQuantiles;
+    }
+
+    @StringSetter(CHARGING_SESSION_QUANTILES)
+    public void setChargingSessionQuantiles(boolean chargingSessionQuantiles) {
+        this.chargingSessionQuantiles = chargingSessionQuantiles;
+    }
+
+    @StringGetter(CHARGING_GRID_CELL_SIZE)
+    public double getChargingGridCellSize() {
+        return chargingGridCellSize;
+    }
+
+    @StringSetter(CHARGING_GRID_CELL_SIZE)
+    public void setChargingGridCellSize(double chargingGridCellSize) {
+        this.chargingGridCellSize = chargingGridCellSize;
+    }
+
+    @StringGetter(EV_EVENTS_BINARY_INTERVAL)
+    public int getEvEventsBinaryInterval() {
+        return evEventsBinaryInterval;
+    }
+
+    @StringSetter(EV_EVENTS_BINARY_INTERVAL)
+    public void setEvEventsBinaryInterval(int evEventsBinaryInterval) {
+        this.evEventsBinaryInterval = evEventsBinaryInterval;
+    }
+
+    @StringGetter(EXCLUDE_EV_EVENTS_FROM_XML)
+    public boolean isExcludeEvEventsFromXml() {
+        return excludeEvEventsFromXml;
+    }
+
+    @StringSetter(EXCLUDE_EV_EVENTS_FROM_XML)
+    public void setExcludeEvEventsFromXml(boolean excludeEvEventsFromXml) {
+        this.excludeEvEventsFromXml = excludeEvEventsFromXml;
+    }
+
+    @StringGetter(EV_PERFORMANCE_METRICS)
+    public boolean isEvPerformanceMetrics() {
+        return evPerformanceMetrics;
+    }
+
+    @StringSetter(EV_PERFORMANCE_METRICS)
+    public void setEvPerformanceMetrics(boolean evPerformanceMetrics) {
+        this.evPerformanceMetrics = evPerformanceMetrics;
+    }
+
+    @StringGetter(EV_PERFORMANCE_PROMETHEUS_FILE)
+    public String getEvPerformancePrometheusFile() {
+        return evPerformancePrometheusFile;
+    }
+
+    @StringSetter(EV_PERFORMANCE_PROMETHEUS_FILE)
+    public void setEvPerformancePrometheusFile(String evPerformancePrometheusFile) {
+        this.evPerformancePrometheusFile = evPerformancePrometheusFile;
+    }
+
+    @StringGetter(BATCH_DRIVE_DISCHARGING)
+    public boolean isBatchDriveDischarging() {
+        return batchDriveDischarging;
+    }
+
+    @StringSetter(BATCH_DRIVE_DISCHARGING)
+    public void setBatchDriveDischarging(boolean batchDriveDischarging) {
+        this.batchDriveDischarging = batchDriveDischarging;
+    }
+
+    @StringGetter(DRIVE_DISCHARGING_THREADS)
+    public int getDriveDischargingThreads() {
+        return driveDischargingThreads;
+    }
+
+    @StringSetter(DRIVE_DISCHARGING_THREADS)
+    public void setDriveDischargingThreads(int driveDischargingThreads) {
+        this.driveDischargingThreads = driveDischargingThreads;
+    }
+
+    @StringGetter(LAZY_AUX_DISCHARGING)
+    public boolean isLazyAuxDischarging() {
+        return lazyAuxDischarging;
+    }
+
+    @StringSetter(LAZY_AUX_DISCHARGING)
+    public void setLazyAuxDischarging(boolean lazyAuxDischarging) {
+        this.lazyAuxDischarging = lazyAuxDischarging;
+    }
+
+    @StringGetter(INCREMENTAL_SOC_HISTOGRAM)
+    public boolean isIncrementalSocHistogram() {
+        return incrementalSocHistogram;
+    }
+
+    @StringSetter(INCREMENTAL_SOC_HISTOGRAM)
+    public void setIncrementalSocHistogram(boolean incrementalSocHistogram) {
+        this.incrementalSocHistogram = incrementalSocHistogram;
+    }
+
+    @StringGetter(OUTPUT_WRITER_THREADS)
+    public int getOutputWriterThreads() {
+        return outputWriterThreads;
+    }
+
+    @StringSetter(OUTPUT_WRITER_THREADS)
+    public void setOutputWriterThreads(int outputWriterThreads) {
+        this.outputWriterThreads = outputWriterThreads;
+    }
+
+    @StringGetter(JFR_EVENTS)
+    public boolean isJfrEvents() {
+        return jfrEvents;
+    }
+
+    @StringSetter(JFR_EVENTS)
+    public void setJfrEvents(boolean jfrEvents) {
+        this.jfrEvents = jfrEvents;
+    }
+
+    @StringGetter(COMPRESSED_EV_OUTPUTS)
+    public boolean isCompressedEvOutputs() {
+        return compressedEvOutputs;
+    }
+
+    @StringSetter(COMPRESSED_EV_OUTPUTS)
+    public void setCompressedEvOutputs(boolean compressedEvOutputs) {
+        this.compressedEvOutputs = compressedEvOutputs;
+    }
+
     public void logIfSuspicious() {
         if (betaMoney > 0.0) {
             log.warn("UrbanEVConfigGroup: betaMoney > 0.0 detected (" + betaMoney + "). "
@@ -487,5 +901,13 @@ public final class UrbanEVConfigGroup extends ReflectiveConfigGroup {
             log.error("UrbanEVConfigGroup: negative charging cost detected. "
                     + "Please check home/work/publicChargingCost in config.xml.");
         }
+        if (excludeEvEventsFromXml && evEventsBinaryInterval == 0) {
+            log.warn("UrbanEVConfigGroup: excludeEvEventsFromXml is set without evEventsBinaryInterval; "
+                    + "the charging events will not be written at all.");
+        }
+        if (evPerformancePrometheusFile != null && !evPerformanceMetrics) {
+            log.warn("UrbanEVConfigGroup: evPerformancePrometheusFile is set without evPerformanceMetrics; "
+                    + "no metrics will be written.");
+        }
     }
 }
@@ -0,0 +1,182 @@
+package se.urbanEV.discharging;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Reader of ESRI ASCII grids, shared by the temperature raster ({@link RasterTemperatureService}) and the elevation
+ * model of the LinkSlopePreprocessor.
+ * <p>
+ * The header ({@code ncols}, {@code nrows}, {@code xllcorner/xllcenter}, {@code yllcorner/yllcenter},
+ * {@code cellsize}, optionally {@code NODATA_value}) is read on construction. Optionally, one more header entry gives
+ * the number of blocks of {@code nrows} x {@code ncols} values that follow (e.g. {@code nhours} for one block per
+ * hour); without it, there is a single block. Values are passed on as they are read, with the cell index in row-major
+ * order, first row = northernmost row; NODATA values are passed on unchanged.
+ */
+public class AsciiGridReader implements Closeable {
+	public interface ValueConsumer {
+		void accept(int block, int cell, double value);
+	}
+
+	private final BufferedReader reader;
+	private final String source;
+
+	private int cols = -1;
+	private int rows = -1;
+	private double xll = Double.NaN;
+	private double yll = Double.NaN;
+	private boolean cellCentered = false;
+	private double cellSize = Double.NaN;
+	private double noData = Double.NaN;
+	private int blocks = 1;
+
+	private String[] firstValueTokens;// already read with the header
+
+	/**
+	 * @param source for error messages, e.g. the file name
+	 * @param blockCountKey header entry with the number of blocks, null if the grid has a single block
+	 */
+	public AsciiGridReader(BufferedReader reader, String source, String blockCountKey) {
+		this.reader = reader;
+		this.source = source;
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] tokens = line.trim().split("\\s+");
+				if (tokens[0].isEmpty()) {
+					continue;
+				}
+				if (!Character.isLetter(tokens[0].charAt(0))) {
+					firstValueTokens = tokens;
+					break;
+				}
+				readHeaderLine(tokens, blockCountKey);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (cols <= 0 || rows <= 0 || Double.isNaN(xll) || Double.isNaN(yll) || !(cellSize > 0) || blocks <= 0) {
+			throw new IllegalArgumentException("Incomplete ASCII grid header in " + source);
+		}
+	}
+
+	private void readHeaderLine(String[] tokens, String blockCountKey) {
+		String key = tokens[0].toLowerCase();
+		double value = Double.parseDouble(tokens[1]);
+		switch (key) {
+			case "ncols":
+				cols = (int)value;
+				break;
+			case "nrows":
+				rows = (int)value;
+				break;
+			case "xllcorner":
+				xll = value;
+				break;
+			case "xllcenter":
+				xll = value;
+				cellCentered = true;
+				break;
+			case "yllcorner":
+				yll = value;
+				break;
+			case "yllcenter":
+				yll = value;
+				cellCentered = true;
+				break;
+			case "cellsize":
+				cellSize = value;
+				break;
+			case "nodata_value":
+				noData = value;
+				break;
+			default:
+				if (key.equalsIgnoreCase(blockCountKey)) {
+					blocks = (int)value;
+					break;
+				}
+				throw new IllegalArgumentException("Unknown ASCII grid header entry in " + source + ": " + tokens[0]);
+		}
+	}
+
+	/**
+	 * Reads all values; fails if the file contains more or fewer values than declared in the header.
+	 */
+	public void readValues(ValueConsumer consumer) {
+		int cellCount = getCellCount();
+		int block = 0;
+		int cell = 0;
+		try {
+			String[] tokens = firstValueTokens;
+			while (tokens != null) {
+				if (!tokens[0].isEmpty()) {
+					for (String token : tokens) {
+						if (block == blocks) {
+							throw new IllegalArgumentException("More values than declared in the header of " + source);
+						}
+						consumer.accept(block, cell++, Double.parseDouble(token));
+						if (cell == cellCount) {
+							block++;
+							cell = 0;
+						}
+					}
+				}
+				String line = reader.readLine();
+				tokens = line == null ? null : line.trim().split("\\s+");
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (block < blocks) {
+			throw new IllegalArgumentException("Fewer values than declared in the header of " + source);
+		}
+	}
+
+	public int getCols() {
+		return cols;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getCellCount() {
+		return cols * rows;
+	}
+
+	public int getBlocks() {
+		return blocks;
+	}
+
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * @return x of the lower left corner of the grid (not of the centre of the lower left cell)
+	 */
+	public double getXllCorner() {
+		return cellCentered ? xll - cellSize / 2 : xll;
+	}
+
+	/**
+	 * @return y of the lower left corner of the grid (not of the centre of the lower left cell)
+	 */
+	public double getYllCorner() {
+		return cellCentered ? yll - cellSize / 2 : yll;
+	}
+
+	/**
+	 * @return NODATA_value, NaN if there is none
+	 */
+	public double getNoData() {
+		return noData;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
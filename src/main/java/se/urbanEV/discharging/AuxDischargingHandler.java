@@ -31,7 +31,10 @@ package se.urbanEV.discharging;
 
 import com.google.inject.Inject;
 import se.urbanEV.MobsimScopeEventHandling;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.fleet.Battery;
 import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.metrics.EvMetrics;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.ActivityEndEvent;
 import org.matsim.api.core.v01.events.ActivityStartEvent;
@@ -42,7 +45,10 @@ import org.matsim.api.core.v01.population.Person;
 import org.matsim.contrib.ev.EvConfigGroup;
 import org.matsim.contrib.ev.MobsimScopeEventHandler;
 import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
 import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
+import org.matsim.core.mobsim.qsim.interfaces.MobsimTimer;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -53,10 +59,18 @@ import java.util.concurrent.ConcurrentMap;
  * <p>
  * VehicleProvider is responsible to decide if AUX discharging applies to a given vehicle based on information from
  * ActivityStartEvent.
+ * <p>
+ * In lazy mode ({@link UrbanEVConfigGroup#isLazyAuxDischarging()}) only the activity start time and link are
+ * recorded. The energy for the whole stay is computed in one call to
+ * {@link AuxEnergyConsumption#calcEnergyConsumption(double, double, Id)} when the activity ends. In between, the stay
+ * is registered as a {@link Battery.DeferredDischarge} of the battery, so any read of the SoC (e.g. by charging or
+ * the SoC outputs) first settles the consumption up to the current time. Code that reads aggregated SoC statistics
+ * instead of the batteries (incrementalSocHistogram) settles all parked vehicles through {@link PendingDischarges}.
+ * Remaining stays are settled before the mobsim cleans up.
  */
 public class AuxDischargingHandler
-		implements MobsimAfterSimStepListener, ActivityStartEventHandler, ActivityEndEventHandler,
-		MobsimScopeEventHandler {
+		implements MobsimAfterSimStepListener, MobsimBeforeCleanupListener, ActivityStartEventHandler,
+		ActivityEndEventHandler, MobsimScopeEventHandler {
 	public interface VehicleProvider {
 		/**
 		 * During activities such as stopping at a bus stop or taxi rank, picking up/dropping off passengers etc.
@@ -68,51 +82,109 @@ public class AuxDischargingHandler
 		ElectricVehicle getVehicle(ActivityStartEvent event);
 	}
 
-	private final class VehicleAndLink {
+	private final class VehicleAndLink implements Battery.DeferredDischarge {
 		private final ElectricVehicle vehicle;
 		private final Id<Link> linkId;
+		private double dischargedUntil;// only used in lazy mode
 
-		private VehicleAndLink(ElectricVehicle vehicle, Id<Link> linkId) {
+		private VehicleAndLink(ElectricVehicle vehicle, Id<Link> linkId, double dischargedUntil) {
 			this.vehicle = vehicle;
 			this.linkId = linkId;
+			this.dischargedUntil = dischargedUntil;
+		}
+
+		private synchronized void dischargeUntil(double time) {
+			if (time > dischargedUntil) {
+				double energy = vehicle.getAuxEnergyConsumption()
+						.calcEnergyConsumption(dischargedUntil, time - dischargedUntil, linkId);
+				dischargedUntil = time;// before changeSoc(), which settles again
+				vehicle.getBattery().changeSoc(-energy);
+			}
+		}
+
+		@Override
+		public void settle() {
+			dischargeUntil(mobsimTimer.getTimeOfDay());
 		}
 	}
 
 	private final VehicleProvider vehicleProvider;
 	private final int auxDischargeTimeStep;
+	private final boolean lazy;
+	private final MobsimTimer mobsimTimer;
+	private final EvMetrics.Timer stepTimer = EvMetrics.getInstance().timer("AuxDischargingHandler.step");
+	private final EvMetrics.Timer eventTimer = EvMetrics.getInstance().timer("AuxDischargingHandler.events");
 
 	private final ConcurrentMap<Id<Person>, VehicleAndLink> vehicles = new ConcurrentHashMap<>();
 
 	@Inject
-	public AuxDischargingHandler(VehicleProvider vehicleProvider, EvConfigGroup evCfg,
-			MobsimScopeEventHandling events) {
+	public AuxDischargingHandler(VehicleProvider vehicleProvider, EvConfigGroup evCfg, UrbanEVConfigGroup urbanEVCfg,
+			MobsimTimer mobsimTimer, MobsimScopeEventHandling events) {
 		this.vehicleProvider = vehicleProvider;
 		this.auxDischargeTimeStep = evCfg.getAuxDischargeTimeStep();
+		this.lazy = urbanEVCfg.isLazyAuxDischarging();
+		this.mobsimTimer = mobsimTimer;
 		events.addMobsimScopeHandler(this);
 	}
 
 	@Override
 	public void notifyMobsimAfterSimStep(@SuppressWarnings("rawtypes") MobsimAfterSimStepEvent e) {
-		if (e.getSimulationTime() % auxDischargeTimeStep == 0) {
+		if (!lazy && e.getSimulationTime() % auxDischargeTimeStep == 0) {
+			long start = stepTimer.start();
 			for (VehicleAndLink vehicleAndLink : vehicles.values()) {
 				ElectricVehicle ev = vehicleAndLink.vehicle;
 				double energy = ev.getAuxEnergyConsumption()
 						.calcEnergyConsumption(e.getSimulationTime(), auxDischargeTimeStep, vehicleAndLink.linkId);
 				ev.getBattery().changeSoc(-energy);
 			}
+			stepTimer.stop(start);
 		}
 	}
 
 	@Override
 	public void handleEvent(ActivityStartEvent event) {
+		long start = eventTimer.start();
 		ElectricVehicle electricVehicle = vehicleProvider.getVehicle(event);
 		if (electricVehicle != null) {
-			vehicles.put(event.getPersonId(), new VehicleAndLink(electricVehicle, event.getLinkId()));
+			VehicleAndLink vehicleAndLink = new VehicleAndLink(electricVehicle, event.getLinkId(), event.getTime());
+			vehicles.put(event.getPersonId(), vehicleAndLink);
+			if (lazy) {
+				electricVehicle.getBattery().addDeferredDischarge(vehicleAndLink);
+			}
 		}
+		eventTimer.stop(start);
 	}
 
 	@Override
 	public void handleEvent(ActivityEndEvent event) {
-		vehicles.remove(event.getPersonId());
+		long start = eventTimer.start();
+		VehicleAndLink vehicleAndLink = vehicles.remove(event.getPersonId());
+		if (lazy && vehicleAndLink != null) {
+			vehicleAndLink.vehicle.getBattery().removeDeferredDischarge(vehicleAndLink);
+			vehicleAndLink.dischargeUntil(event.getTime());
+		}
+		eventTimer.stop(start);
+	}
+
+	@Override
+	public void notifyMobsimBeforeCleanup(@SuppressWarnings("rawtypes") MobsimBeforeCleanupEvent e) {
+		if (lazy) {
+			dischargeParkedVehicles(mobsimTimer.getTimeOfDay());
+			for (VehicleAndLink vehicleAndLink : vehicles.values()) {
+				vehicleAndLink.vehicle.getBattery().removeDeferredDischarge(vehicleAndLink);
+			}
+		}
+	}
+
+	/**
+	 * Lazy mode only: brings the SoC of all currently parked vehicles up to date with the aux consumption until the
+	 * given time. No-op otherwise (vehicles are then discharged every aux discharge time step).
+	 */
+	public void dischargeParkedVehicles(double time) {
+		if (lazy) {
+			for (VehicleAndLink vehicleAndLink : vehicles.values()) {
+				vehicleAndLink.dischargeUntil(time);
+			}
+		}
 	}
 }
@@ -38,5 +38,9 @@ public interface AuxEnergyConsumption {
 		AuxEnergyConsumption create(ElectricVehicle electricVehicle);
 	}
 
+	/**
+	 * @return energy [J] consumed over the whole interval [beginTime, beginTime + duration]. Implementations must not
+	 * assume that the interval is short: in lazy aux discharging the interval spans an entire activity.
+	 */
 	double calcEnergyConsumption(double beginTime, double duration, Id<Link> linkId);
 }
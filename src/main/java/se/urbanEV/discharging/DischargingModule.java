@@ -30,7 +30,9 @@ email	:	lennart.adenaw@tum.de
 
 package se.urbanEV.discharging;
 
+import com.google.inject.Inject;
 import se.urbanEV.EvModule;
+import se.urbanEV.config.UrbanEVConfigGroup;
 import org.matsim.contrib.ev.temperature.TemperatureService;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.mobsim.qsim.AbstractQSimModule;
@@ -39,18 +41,33 @@ import org.matsim.core.mobsim.qsim.AbstractQSimModule;
  * @author Michal Maciejewski (michalm)
  */
 public class DischargingModule extends AbstractModule {
+	@Inject
+	private UrbanEVConfigGroup urbanEVCfg;
+
 	@Override
 	public void install() {
 		bind(DriveEnergyConsumption.Factory.class).toInstance(SimpleDriveEnergyConsumption::new);
-		bind(TemperatureService.class).toInstance(linkId -> 15);// XXX fixed temperature 15 oC
+		boolean temperatureRaster = urbanEVCfg.getTemperatureRasterFile() != null;
+		if (temperatureRaster) {
+			bind(RasterTemperatureService.class).asEagerSingleton();
+			bind(TemperatureService.class).to(RasterTemperatureService.class);
+		} else {
+			bind(TemperatureService.class).toInstance(linkId -> 15);// XXX fixed temperature 15 oC
+		}
 		bind(AuxEnergyConsumption.Factory.class).to(OhdeSlaskiAuxEnergyConsumption.Factory.class).asEagerSingleton();
 
 		installQSimModule(new AbstractQSimModule() {
 			@Override
 			protected void configureQSim() {
 				this.bind(DriveDischargingHandler.class).asEagerSingleton();
+				this.addQSimComponentBinding(EvModule.EV_COMPONENT).to(DriveDischargingHandler.class);
 				this.bind(AuxDischargingHandler.class).asEagerSingleton();
 				this.addQSimComponentBinding(EvModule.EV_COMPONENT).to(AuxDischargingHandler.class);
+				this.bind(PendingDischarges.class).asEagerSingleton();
+				if (temperatureRaster) {
+					// keeps RasterTemperatureService.getCurrentTemperature() in sync with the simulation time
+					this.addQSimComponentBinding(EvModule.EV_COMPONENT).to(RasterTemperatureService.class);
+				}
 
 				//by default, no vehicle will be AUX-discharged when not moving
 				this.bind(AuxDischargingHandler.VehicleProvider.class).toInstance(event -> null);
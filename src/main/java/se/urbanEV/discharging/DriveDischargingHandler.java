@@ -31,8 +31,12 @@ package se.urbanEV.discharging;
 
 import com.google.inject.Inject;
 import se.urbanEV.MobsimScopeEventHandling;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.fleet.Battery;
 import se.urbanEV.fleet.ElectricFleet;
 import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.metrics.DischargeBatchJfrEvent;
+import se.urbanEV.metrics.EvMetrics;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.LinkLeaveEvent;
 import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
@@ -44,33 +48,253 @@ import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.contrib.ev.EvConfigGroup;
 import org.matsim.contrib.ev.MobsimScopeEventHandler;
+import org.matsim.core.controler.IterationCounter;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
 import org.matsim.vehicles.Vehicle;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Because in QSim and JDEQSim vehicles enter and leave traffic at the end of links, we skip the first link when
  * calculating the drive-related energy consumption. However, the time spent on the first link is used by the time-based
  * aux discharge process (see {@link AuxDischargingHandler}).
+ * <p>
+ * If {@link UrbanEVConfigGroup#isBatchDriveDischarging()} is set, the event handlers only record which vehicle left
+ * which link after which travel time. The records are kept in a primitive buffer and the batteries are discharged
+ * after the sim step (see {@link #notifyMobsimAfterSimStep}). The energy of all records is computed first, on the mobsim
+ * thread and in record order, so the consumption models and their shared state (e.g. the warning flags of
+ * {@link LTHDriveEnergyConsumption}, the temperature service of the aux models) are never called concurrently by the
+ * batch. Only the SoC changes (and trip records) are then optionally spread over a dedicated pool of
+ * driveDischargingThreads threads. Vehicles are partitioned among the threads, so the records of one vehicle are always
+ * applied by the same thread and in the order in which they were recorded.
+ * <p>
+ * The batch does not delay the SoC seen by other code. When a vehicle leaves traffic, the handler does not touch its
+ * battery, but registers the vehicle's records of the current step as a {@link Battery.DeferredDischarge}, so the
+ * first read of its SoC (e.g. by VehicleChargingHandler at the arrival) applies them, in the reading thread, and sees
+ * the same SoC as in the immediate mode. Code that samples the SoC of driving vehicles during the mobsim calls
+ * {@link #applyPendingDischarges()} (through {@link PendingDischarges}) first.
+ * <p>
+ * Threading contract of the batch mode: the handlers may be called from several events threads, provided that all
+ * events of a sim step have been handled before the after-sim-step listeners run (parallelEventHandling with
+ * synchronizeOnSimSteps), because the batch runs on the mobsim thread and takes over the buffer of the step without
+ * waiting for the events threads. While events are handled, buffering records and settling arrived vehicles are
+ * serialised by the lock of the handler, so the records of a vehicle are applied once and in the order in which they
+ * were recorded, whichever thread reads its SoC first.
+ * <p>
+ * If {@link UrbanEVConfigGroup#isTripEnergyOutput()} is set, the energy balance of every trip is written to
+ * {@code tripEnergy.csv.gz} (see {@link TripEnergyRecorder}).
  */
 public class DriveDischargingHandler
 		implements LinkLeaveEventHandler, VehicleEntersTrafficEventHandler, VehicleLeavesTrafficEventHandler,
-		MobsimScopeEventHandler {
-	private static class EvDrive {
+		MobsimScopeEventHandler, MobsimAfterSimStepListener, MobsimBeforeCleanupListener {
+	// below this number of records per step, spreading the work over several threads does not pay off
+	private static final int MIN_RECORDS_FOR_PARALLEL_DISCHARGING = 256;
+	private static final String THREAD_NAME_PREFIX = "ev-drive-discharging-";
+
+	private static final byte DISCHARGE = 0;
+	private static final byte TRIP_START = 1;
+	private static final byte TRIP_END = 2;
+	// flag of records that have already been applied because the SoC of their vehicle was read after it left traffic
+	private static final byte APPLIED = 0x40;
+
+	private final class EvDrive implements Battery.DeferredDischarge {
 		private final Id<Vehicle> vehicleId;
 		private final ElectricVehicle ev;
+		private final int partitionKey;
+		private final int tripSlot;
 		private double movedOverNodeTime;
 
-		public EvDrive(Id<Vehicle> vehicleId, ElectricVehicle ev) {
+		// last record of this vehicle in the buffer of the given generation (batch mode)
+		private int lastRecord = -1;
+		private long recordGeneration = -1;
+
+		public EvDrive(Id<Vehicle> vehicleId, ElectricVehicle ev, int tripSlot) {
 			this.vehicleId = vehicleId;
 			this.ev = ev;
+			this.partitionKey = ev.getId().hashCode() & Integer.MAX_VALUE;
+			this.tripSlot = tripSlot;
 			movedOverNodeTime = Double.NaN;
 		}
 
 		private boolean isOnFirstLink() {
 			return Double.isNaN(movedOverNodeTime);
 		}
+
+		@Override
+		public void settle() {
+			settleArrivedVehicle(this);
+		}
+	}
+
+	/**
+	 * Columnar buffer of link traversals that still have to be discharged (and of trip starts, if trips are
+	 * recorded). The arrays are reused from step to step, so handling a link event does not allocate anything once the
+	 * buffer has grown to the typical step size.
+	 * <p>
+	 * The records of each vehicle are chained through {@link #previousRecords}, so that they can be applied when the
+	 * SoC of a vehicle that has left traffic is read, without scanning the buffer.
+	 */
+	private static class DischargeBuffer {
+		private byte[] kinds = new byte[1024];
+		private ElectricVehicle[] vehicles = new ElectricVehicle[1024];
+		private int[] partitionKeys = new int[1024];
+		private int[] tripSlots = new int[1024];
+		private Link[] links = new Link[1024];
+		private double[] travelTimes = new double[1024];
+		private double[] eventTimes = new double[1024];
+		private double[] energies = new double[1024];
+		private int[] previousRecords = new int[1024];// of the same vehicle, -1 if none
+		private int size = 0;
+		private long generation;// distinguishes the steps the buffer is reused for
+
+		// record indices grouped by partition (stable, i.e. in record order within each partition)
+		private int[] partitionedRecords = new int[1024];
+		private int[] partitionStarts = new int[0];
+
+		private int[] vehicleRecords = new int[16];// of the vehicle being settled, newest first
+
+		private int add(byte kind, EvDrive evDrive, Link link, double travelTime, double eventTime, int previousRecord) {
+			if (size == vehicles.length) {
+				int capacity = 2 * size;
+				kinds = Arrays.copyOf(kinds, capacity);
+				vehicles = Arrays.copyOf(vehicles, capacity);
+				partitionKeys = Arrays.copyOf(partitionKeys, capacity);
+				tripSlots = Arrays.copyOf(tripSlots, capacity);
+				links = Arrays.copyOf(links, capacity);
+				travelTimes = Arrays.copyOf(travelTimes, capacity);
+				eventTimes = Arrays.copyOf(eventTimes, capacity);
+				energies = Arrays.copyOf(energies, capacity);
+				previousRecords = Arrays.copyOf(previousRecords, capacity);
+			}
+			kinds[size] = kind;
+			vehicles[size] = evDrive.ev;
+			partitionKeys[size] = evDrive.partitionKey;
+			tripSlots[size] = evDrive.tripSlot;
+			links[size] = link;
+			travelTimes[size] = travelTime;
+			eventTimes[size] = eventTime;
+			energies[size] = 0;
+			previousRecords[size] = previousRecord;
+			return size++;
+		}
+
+		/**
+		 * Counting sort of the record indices by partition, once per step, so that each partition visits only its own
+		 * records.
+		 */
+		private void partition(int partitionCount) {
+			if (partitionStarts.length != partitionCount + 1) {
+				partitionStarts = new int[partitionCount + 1];
+			} else {
+				Arrays.fill(partitionStarts, 0);
+			}
+			if (partitionedRecords.length < size) {
+				partitionedRecords = new int[kinds.length];
+			}
+			for (int i = 0; i < size; i++) {
+				partitionStarts[partitionKeys[i] % partitionCount + 1]++;
+			}
+			for (int p = 0; p < partitionCount; p++) {
+				partitionStarts[p + 1] += partitionStarts[p];
+			}
+			int[] next = Arrays.copyOf(partitionStarts, partitionCount);
+			for (int i = 0; i < size; i++) {
+				partitionedRecords[next[partitionKeys[i] % partitionCount]++] = i;
+			}
+		}
+
+		private void dischargePartition(int partition, TripEnergyRecorder tripRecorder) {
+			for (int j = partitionStarts[partition]; j < partitionStarts[partition + 1]; j++) {
+				int i = partitionedRecords[j];
+				if ((kinds[i] & APPLIED) == 0) {
+					apply(i, tripRecorder);
+				}
+			}
+		}
+
+		private void dischargeAll(TripEnergyRecorder tripRecorder) {
+			for (int i = 0; i < size; i++) {
+				if ((kinds[i] & APPLIED) == 0) {
+					apply(i, tripRecorder);
+				}
+			}
+		}
+
+		/**
+		 * Applies the given record and the earlier records of the same vehicle that have not been applied yet, oldest
+		 * first.
+		 */
+		private void calcEnergies() {
+			for (int i = 0; i < size; i++) {
+				if (kinds[i] == DISCHARGE) {
+					energies[i] = calcEnergyConsumption(vehicles[i], links[i], travelTimes[i], eventTimes[i]);
+				}
+			}
+		}
+
+		private void applyVehicleRecords(int lastRecord, TripEnergyRecorder tripRecorder) {
+			// all records are flagged before the first one is applied: applying them reads the SoC, which settles the
+			// vehicle again
+			int count = 0;
+			for (int i = lastRecord; i >= 0 && (kinds[i] & APPLIED) == 0; i = previousRecords[i]) {
+				kinds[i] |= APPLIED;
+				if (count == vehicleRecords.length) {
+					vehicleRecords = Arrays.copyOf(vehicleRecords, 2 * count);
+				}
+				vehicleRecords[count++] = i;
+			}
+			for (int j = count - 1; j >= 0; j--) {
+				int i = vehicleRecords[j];
+				if (isDischarge(i)) {
+					energies[i] = calcEnergyConsumption(vehicles[i], links[i], travelTimes[i], eventTimes[i]);
+				}
+				apply(i, tripRecorder);
+			}
+		}
+
+		private void apply(int i, TripEnergyRecorder tripRecorder) {
+			switch (kinds[i] & ~APPLIED) {
+				case DISCHARGE:
+					//Energy consumption might be negative on links with negative slope
+					vehicles[i].getBattery().changeSoc(-energies[i]);
+					if (tripRecorder != null) {
+						tripRecorder.addLink(tripSlots[i], links[i].getLength(), energies[i]);
+					}
+					break;
+				case TRIP_START:
+					tripRecorder.startTrip(tripSlots[i], eventTimes[i], vehicles[i].getBattery());
+					break;
+				case TRIP_END:
+					tripRecorder.endTrip(tripSlots[i], eventTimes[i], vehicles[i].getBattery());
+					break;
+				default:
+					throw new IllegalStateException("Unknown record kind: " + kinds[i]);
+			}
+		}
+
+		private boolean isDischarge(int i) {
+			return (kinds[i] & ~APPLIED) == DISCHARGE;
+		}
+
+		private void clear() {
+			Arrays.fill(vehicles, 0, size, null);
+			Arrays.fill(links, 0, size, null);
+			size = 0;
+		}
 	}
 
 	private final Network network;
@@ -78,62 +302,239 @@ public class DriveDischargingHandler
 	private final Map<Id<Vehicle>, EvDrive> evDrives;
 	private Map<Id<Link>, Double> energyConsumptionPerLink = new HashMap<>();
 
+	private final boolean batchDischarging;
+	private final int dischargingThreads;
+	private final ExecutorService dischargingExecutor;// null unless batch discharging runs on several threads
+	private final List<Callable<Object>> partitionTasks = new ArrayList<>();
+	private DischargeBuffer pendingDischarges = new DischargeBuffer();
+	private DischargeBuffer processedDischarges = new DischargeBuffer();
+	private long lastGeneration = 0;
+	private final List<EvDrive> arrivedDrives = new ArrayList<>();// registered as deferred discharges in this step
+
+	private final TripEnergyRecorder tripRecorder;
+
+	private final EvMetrics.Timer eventTimer = EvMetrics.getInstance().timer("DriveDischargingHandler.events");
+	private final EvMetrics.Timer batchTimer = EvMetrics.getInstance().timer("DriveDischargingHandler.batch");
+
 	@Inject
 	public DriveDischargingHandler(ElectricFleet data, Network network, EvConfigGroup evCfg,
-                                   MobsimScopeEventHandling events) {
+                                   UrbanEVConfigGroup urbanEVCfg, OutputDirectoryHierarchy controlerIO,
+                                   IterationCounter iterationCounter, MobsimScopeEventHandling events) {
 		this.network = network;
 		eVehicles = data.getElectricVehicles();
 		evDrives = new HashMap<>(eVehicles.size() / 10);
+		batchDischarging = urbanEVCfg.isBatchDriveDischarging();
+		dischargingThreads = urbanEVCfg.getDriveDischargingThreads();
+		tripRecorder = urbanEVCfg.isTripEnergyOutput() ?
+				new TripEnergyRecorder(eVehicles,
+						controlerIO.getIterationFilename(iterationCounter.getIterationNumber(), "tripEnergy.csv.gz")) :
+				null;
+		if (batchDischarging && dischargingThreads > 1) {
+			AtomicInteger threadCount = new AtomicInteger();
+			dischargingExecutor = Executors.newFixedThreadPool(dischargingThreads, r -> {
+				Thread thread = new Thread(r, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			for (int p = 0; p < dischargingThreads; p++) {
+				int partition = p;
+				partitionTasks.add(() -> {
+					processedDischarges.dischargePartition(partition, tripRecorder);
+					return null;
+				});
+			}
+		} else {
+			dischargingExecutor = null;
+		}
 		events.addMobsimScopeHandler(this);
 	}
 
 	@Override
 	public void handleEvent(VehicleEntersTrafficEvent event) {
+		long start = eventTimer.start();
 		Id<Vehicle> vehicleId = event.getVehicleId();
 		ElectricVehicle ev = eVehicles.get(vehicleId);
 		if (ev != null) {// handle only our EVs
-			evDrives.put(vehicleId, new EvDrive(vehicleId, ev));
+			EvDrive evDrive = new EvDrive(vehicleId, ev, tripRecorder == null ? -1 : tripRecorder.getSlot(ev.getId()));
+			evDrives.put(vehicleId, evDrive);
+			if (tripRecorder != null) {
+				if (batchDischarging) {
+					bufferRecord(TRIP_START, evDrive, null, 0, event.getTime());
+				} else {
+					tripRecorder.startTrip(evDrive.tripSlot, event.getTime(), ev.getBattery());
+				}
+			}
 		}
+		eventTimer.stop(start);
 	}
 
 	@Override
 	public void handleEvent(LinkLeaveEvent event) {
+		long start = eventTimer.start();
 		EvDrive evDrive = dischargeVehicle(event.getVehicleId(), event.getLinkId(), event.getTime());
 		if (evDrive != null) {
 			evDrive.movedOverNodeTime = event.getTime();
 		}
+		eventTimer.stop(start);
 	}
 
 	@Override
 	public void handleEvent(VehicleLeavesTrafficEvent event) {
+		long start = eventTimer.start();
 		EvDrive evDrive = dischargeVehicle(event.getVehicleId(), event.getLinkId(), event.getTime());
 		if (evDrive != null) {
 			evDrives.remove(evDrive.vehicleId);
+			if (batchDischarging) {
+				deferArrival(evDrive, event.getTime());
+			} else if (tripRecorder != null) {
+				tripRecorder.endTrip(evDrive.tripSlot, event.getTime(), evDrive.ev.getBattery());
+			}
 		}
+		eventTimer.stop(start);
 	}
 
-	//XXX The current implementation is thread-safe because no other EventHandler modifies battery SOC
+	//XXX The immediate mode is thread-safe because no other EventHandler modifies battery SOC
 	// (for instance, AUX discharging and battery charging modifies SOC outside event handling
-	// (as MobsimAfterSimStepListeners)
-	//TODO In the long term, it will be safer to move the discharging procedure to a MobsimAfterSimStepListener
+	// (as MobsimAfterSimStepListeners). The batch mode moves the SOC updates to a MobsimAfterSimStepListener as well;
+	// its handlers only write to the buffer (see the threading contract in the class comment).
 	private EvDrive dischargeVehicle(Id<Vehicle> vehicleId, Id<Link> linkId, double eventTime) {
 		EvDrive evDrive = evDrives.get(vehicleId);
 		if (evDrive != null && !evDrive.isOnFirstLink()) {// handle only our EVs, except for the first link
 			Link link = network.getLinks().get(linkId);
 			double tt = eventTime - evDrive.movedOverNodeTime;
-			ElectricVehicle ev = evDrive.ev;
-			double energy = ev.getDriveEnergyConsumption().calcEnergyConsumption(link, tt, eventTime - tt)
-					+ ev.getAuxEnergyConsumption().calcEnergyConsumption(eventTime - tt, tt, linkId);
+			if (batchDischarging) {
+				bufferRecord(DISCHARGE, evDrive, link, tt, eventTime);
+				return evDrive;
+			}
+			double energy = calcEnergyConsumption(evDrive.ev, link, tt, eventTime);
 			//Energy consumption might be negative on links with negative slope
-			ev.getBattery().changeSoc(-energy);
+			evDrive.ev.getBattery().changeSoc(-energy);
+			if (tripRecorder != null) {
+				tripRecorder.addLink(evDrive.tripSlot, link.getLength(), energy);
+			}
 
 			//FIXME emit a DriveOnLinkEnergyConsumptionEvent instead of calculating it here...
-			double linkConsumption = energy + energyConsumptionPerLink.getOrDefault(linkId, 0.0);
-			energyConsumptionPerLink.put(linkId, linkConsumption);
+			addLinkConsumption(linkId, energy);
 		}
 		return evDrive;
 	}
 
+	private synchronized void bufferRecord(byte kind, EvDrive evDrive, Link link, double tt, double eventTime) {
+		DischargeBuffer buffer = pendingDischarges;
+		int previousRecord = evDrive.recordGeneration == buffer.generation ? evDrive.lastRecord : -1;
+		evDrive.lastRecord = buffer.add(kind, evDrive, link, tt, eventTime, previousRecord);
+		evDrive.recordGeneration = buffer.generation;
+	}
+
+	private synchronized void deferArrival(EvDrive evDrive, double eventTime) {
+		if (tripRecorder != null) {
+			bufferRecord(TRIP_END, evDrive, null, 0, eventTime);
+		}
+		if (evDrive.recordGeneration == pendingDischarges.generation) {
+			arrivedDrives.add(evDrive);
+			evDrive.ev.getBattery().addDeferredDischarge(evDrive);
+		}
+	}
+
+	private synchronized void settleArrivedVehicle(EvDrive evDrive) {
+		// records of earlier steps have been applied by the batch
+		if (evDrive.recordGeneration == pendingDischarges.generation) {
+			pendingDischarges.applyVehicleRecords(evDrive.lastRecord, tripRecorder);
+		}
+	}
+
+	private static double calcEnergyConsumption(ElectricVehicle ev, Link link, double tt, double eventTime) {
+		return ev.getDriveEnergyConsumption().calcEnergyConsumption(link, tt, eventTime - tt)
+				+ ev.getAuxEnergyConsumption().calcEnergyConsumption(eventTime - tt, tt, link.getId());
+	}
+
+	private void addLinkConsumption(Id<Link> linkId, double energy) {
+		double linkConsumption = energy + energyConsumptionPerLink.getOrDefault(linkId, 0.0);
+		energyConsumptionPerLink.put(linkId, linkConsumption);
+	}
+
+	@Override
+	public void notifyMobsimAfterSimStep(@SuppressWarnings("rawtypes") MobsimAfterSimStepEvent e) {
+		if (batchDischarging) {
+			applyPendingDischarges();
+		}
+	}
+
+	@Override
+	public void notifyMobsimBeforeCleanup(@SuppressWarnings("rawtypes") MobsimBeforeCleanupEvent e) {
+		if (batchDischarging) {
+			applyPendingDischarges();
+		}
+		if (dischargingExecutor != null) {
+			dischargingExecutor.shutdown();
+		}
+		if (tripRecorder != null) {
+			tripRecorder.close();
+		}
+	}
+
+	/**
+	 * Batch mode: discharges the batteries with the records buffered so far. Must be called from the mobsim thread
+	 * between sim steps (i.e. not while events are being handled). No-op in the immediate mode.
+	 */
+	public void applyPendingDischarges() {
+		DischargeBuffer buffer;
+		synchronized (this) {
+			if (pendingDischarges.size == 0) {
+				return;
+			}
+			buffer = pendingDischarges;
+			pendingDischarges = processedDischarges;
+			pendingDischarges.generation = ++lastGeneration;
+			processedDischarges = buffer;
+			// the records of arrived vehicles that have not been read yet are applied with all others below
+			for (EvDrive evDrive : arrivedDrives) {
+				evDrive.ev.getBattery().removeDeferredDischarge(evDrive);
+			}
+			arrivedDrives.clear();
+		}
+		DischargeBatchJfrEvent jfrEvent = new DischargeBatchJfrEvent();
+		jfrEvent.begin();
+		long start = batchTimer.start();
+
+		buffer.calcEnergies();
+		boolean parallel = dischargingExecutor != null && buffer.size >= MIN_RECORDS_FOR_PARALLEL_DISCHARGING;
+		if (parallel) {
+			buffer.partition(dischargingThreads);
+			runPartitionTasks();
+		} else {
+			buffer.dischargeAll(tripRecorder);
+		}
+
+		// sequential and in record order, so that the per-link sums do not depend on the number of threads
+		for (int i = 0; i < buffer.size; i++) {
+			if (buffer.isDischarge(i)) {
+				addLinkConsumption(buffer.links[i].getId(), buffer.energies[i]);
+			}
+		}
+		if (jfrEvent.shouldCommit()) {
+			jfrEvent.records = buffer.size;
+			jfrEvent.threads = parallel ? dischargingThreads : 1;
+			jfrEvent.commit();
+		}
+		buffer.clear();
+		batchTimer.stop(start);
+	}
+
+	private void runPartitionTasks() {
+		try {
+			for (Future<Object> task : dischargingExecutor.invokeAll(partitionTasks)) {
+				task.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while discharging", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof RuntimeException ? (RuntimeException)cause : new RuntimeException(cause);
+		}
+	}
+
 	public Map<Id<Link>, Double> getEnergyConsumptionPerLink() {
 		return energyConsumptionPerLink;
 	}
@@ -124,7 +124,7 @@ public class LTHDriveEnergyConsumption implements  DriveEnergyConsumption {
 
 		}
 
-		double[] linkslopes = (double[])link.getAttributes().getAttribute("slopes");
+		double[] linkslopes = (double[])link.getAttributes().getAttribute(LinkSlopesReader.SLOPES_ATTRIBUTE);
 		if (linkslopes == null) {
 			linkslopes = new double[] { 0.0 };
 		}
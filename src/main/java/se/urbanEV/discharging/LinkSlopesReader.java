@@ -0,0 +1,74 @@
+package se.urbanEV.discharging;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+
+/**
+ * Attaches the slope profiles from a side-file written by {@link LinkSlopesWriter} to the links of a network, as the
+ * {@value #SLOPES_ATTRIBUTE} attribute read by {@link LTHDriveEnergyConsumption}.
+ * <p>
+ * Format (big-endian, optionally gzipped): magic, version, number of links; then per link its id (modified UTF-8),
+ * the number of segments (int; short in version 1) and one float slope [-] per segment. Segments split the link
+ * length evenly. Links not contained in the file keep zero slope.
+ */
+public class LinkSlopesReader {
+	private static final Logger log = Logger.getLogger(LinkSlopesReader.class);
+
+	public static final String SLOPES_ATTRIBUTE = "slopes";
+
+	static final int MAGIC = 0x534c4f50;// "SLOP"
+	static final int VERSION = 2;
+
+	private final Network network;
+
+	public LinkSlopesReader(Network network) {
+		this.network = network;
+	}
+
+	public void readURL(URL url) {
+		int unknownLinks = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(IOUtils.getInputStream(url)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IllegalArgumentException("Not a link slopes file: " + url);
+			}
+			int version = in.readInt();
+			if (version != VERSION && version != 1) {
+				throw new IllegalArgumentException("Unsupported link slopes file version " + version + ": " + url);
+			}
+			int linkCount = in.readInt();
+			for (int i = 0; i < linkCount; i++) {
+				Id<Link> linkId = Id.createLinkId(in.readUTF());
+				int segments = version == 1 ? in.readShort() : in.readInt();
+				if (segments < 0) {
+					throw new IllegalArgumentException("Invalid number of segments of link " + linkId + ": " + url);
+				}
+				double[] slopes = new double[segments];
+				for (int s = 0; s < slopes.length; s++) {
+					slopes[s] = in.readFloat();
+				}
+
+				Link link = network.getLinks().get(linkId);
+				if (link == null) {
+					unknownLinks++;
+				} else {
+					link.getAttributes().putAttribute(SLOPES_ATTRIBUTE, slopes);
+				}
+			}
+			log.info("Slopes attached to " + (linkCount - unknownLinks) + " links");
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (unknownLinks > 0) {
+			log.warn(unknownLinks + " links in " + url + " are not part of the network; their slopes are ignored");
+		}
+	}
+}
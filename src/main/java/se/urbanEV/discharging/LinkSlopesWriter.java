@@ -0,0 +1,40 @@
+package se.urbanEV.discharging;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Writes per-link slope profiles (as used by {@link LTHDriveEnergyConsumption}) to a compact binary side-file, so they
+ * can be attached to the network without re-sampling the elevation model. See {@link LinkSlopesReader} for the format.
+ */
+public class LinkSlopesWriter {
+	private final Map<Id<Link>, double[]> slopesPerLink;
+
+	public LinkSlopesWriter(Map<Id<Link>, double[]> slopesPerLink) {
+		this.slopesPerLink = slopesPerLink;
+	}
+
+	public void write(String file) {
+		try (DataOutputStream out = new DataOutputStream(IOUtils.getOutputStream(IOUtils.getFileUrl(file), false))) {
+			out.writeInt(LinkSlopesReader.MAGIC);
+			out.writeInt(LinkSlopesReader.VERSION);
+			out.writeInt(slopesPerLink.size());
+			for (Map.Entry<Id<Link>, double[]> e : slopesPerLink.entrySet()) {
+				double[] slopes = e.getValue();
+				out.writeUTF(e.getKey().toString());
+				out.writeInt(slopes.length);
+				for (double slope : slopes) {
+					out.writeFloat((float)slope);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -30,7 +30,6 @@ email	:	lennart.adenaw@tum.de
 
 package se.urbanEV.discharging;
 
-import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import se.urbanEV.fleet.ElectricVehicle;
 import org.matsim.api.core.v01.Id;
@@ -43,15 +42,27 @@ public class OhdeSlaskiAuxEnergyConsumption implements AuxEnergyConsumption {
 	private static final double c = 1748.1;// [W]
 
 	// precomputed values
-	private static final int MIN_TEMP = -20;
-	private static final int MAX_TEMP = 40;
+	static final int MIN_TEMP = -20;
+	static final int MAX_TEMP = 40;
+	private static final int TEMP_STEPS_PER_UNIT = 10;
+	private static final double[] POWER = new double[(MAX_TEMP - MIN_TEMP) * TEMP_STEPS_PER_UNIT + 1];
+
+	static {
+		for (int i = 0; i < POWER.length; i++) {
+			double temp = MIN_TEMP + (double)i / TEMP_STEPS_PER_UNIT;
+			POWER[i] = (a * temp + b) * temp + c;
+		}
+	}
 
 	// temp - air temp [oC]
-	// power - avg power [W]
+	// power - avg power [W], interpolated linearly between the precomputed values (error < 0.01 W)
 	private static double calcPower(double temp) {
-		Preconditions.checkArgument(temp >= MIN_TEMP && temp <= MAX_TEMP, "temperature outside allowed range: %s",
-				temp);
-		return (a * temp + b) * temp + c;
+		if (!(temp >= MIN_TEMP && temp <= MAX_TEMP)) {
+			throw new IllegalArgumentException("temperature outside allowed range: " + temp);
+		}
+		double pos = (temp - MIN_TEMP) * TEMP_STEPS_PER_UNIT;
+		int idx = Math.min((int)pos, POWER.length - 2);
+		return POWER[idx] + (pos - idx) * (POWER[idx + 1] - POWER[idx]);
 	}
 
 	private final TemperatureService temperatureService;
@@ -62,7 +73,22 @@ public class OhdeSlaskiAuxEnergyConsumption implements AuxEnergyConsumption {
 
 	@Override
 	public double calcEnergyConsumption(double beginTime, double duration, Id<Link> linkId) {
-		return calcPower(temperatureService.getCurrentTemperature(linkId)) * duration;
+		if (!(temperatureService instanceof TemperatureProfileService)) {
+			return calcPower(temperatureService.getCurrentTemperature(linkId)) * duration;
+		}
+
+		// integrate the power over the piecewise constant temperature profile
+		TemperatureProfileService temperatureProfile = (TemperatureProfileService)temperatureService;
+		double endTime = beginTime + duration;
+		double energy = 0;
+		double time = beginTime;
+		while (time < endTime) {
+			double nextChangeTime = temperatureProfile.getNextTemperatureChangeTime(linkId, time);
+			double pieceEndTime = nextChangeTime > time ? Math.min(nextChangeTime, endTime) : endTime;
+			energy += calcPower(temperatureProfile.getTemperature(linkId, time)) * (pieceEndTime - time);
+			time = pieceEndTime;
+		}
+		return energy;
 	}
 
 	public static class Factory implements AuxEnergyConsumption.Factory {
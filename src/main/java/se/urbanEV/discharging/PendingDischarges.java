@@ -0,0 +1,32 @@
+package se.urbanEV.discharging;
+
+import com.google.inject.Inject;
+
+/**
+ * Discharging that the handlers defer for performance (batchDriveDischarging, lazyAuxDischarging). Code that samples
+ * the SoC of the whole fleet during the mobsim (e.g. the SoC time profiles) calls {@link #settle(double)} first, so
+ * that it sees the same SoC as with immediate discharging, whatever the order of the mobsim listeners. Single
+ * batteries settle their lazy aux consumption on every read anyway; the fleet SoC histogram kept by the batteries
+ * (incrementalSocHistogram) does not see it until then.
+ */
+public class PendingDischarges {
+	private final DriveDischargingHandler driveDischargingHandler;
+	private final AuxDischargingHandler auxDischargingHandler;
+
+	@Inject
+	public PendingDischarges(DriveDischargingHandler driveDischargingHandler,
+			AuxDischargingHandler auxDischargingHandler) {
+		this.driveDischargingHandler = driveDischargingHandler;
+		this.auxDischargingHandler = auxDischargingHandler;
+	}
+
+	/**
+	 * Must be called from the mobsim thread between sim steps.
+	 *
+	 * @param time current simulation time
+	 */
+	public void settle(double time) {
+		driveDischargingHandler.applyPendingDischarges();
+		auxDischargingHandler.dischargeParkedVehicles(time);
+	}
+}
@@ -0,0 +1,213 @@
+package se.urbanEV.discharging;
+
+import com.google.inject.Inject;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeSimStepEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeSimStepListener;
+import org.matsim.core.utils.io.IOUtils;
+import se.urbanEV.config.UrbanEVConfigGroup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * Hourly air temperatures read from a raster covering the study area.
+ * <p>
+ * The file is an ESRI ASCII grid with one additional header line {@code nhours}, followed by one block of
+ * {@code nrows} x {@code ncols} values per hour (first row = northernmost row, as in ESRI grids):
+ * <pre>
+ * ncols        40
+ * nrows        30
+ * xllcorner    290000
+ * yllcorner    6370000
+ * cellsize     2000
+ * nhours       24
+ * NODATA_value -9999
+ * -4.1 -4.3 ...
+ * </pre>
+ * {@code xllcenter/yllcenter} and {@code NODATA_value} are supported as well (see {@link AsciiGridReader}). Cells
+ * without data take the mean of the valid cells of the same hour. Coordinates must be in the network CRS.
+ * <p>
+ * The aux power model ({@link OhdeSlaskiAuxEnergyConsumption}) is only defined between -20 and 40 oC. Values outside
+ * this range (e.g. in cold winter scenarios) are clamped to it when the raster is read, with a warning, instead of
+ * failing the first time a vehicle parks in such a cell.
+ * <p>
+ * Every link is assigned to the cell containing its coordinate once, at construction; links outside the raster use the
+ * closest border cell. Only cells that contain links are kept (the link zones), so a lookup is an array access by
+ * (link zone, hour). Hours wrap around, so a 24-hour raster is repeated on every simulated day.
+ */
+public class RasterTemperatureService implements TemperatureProfileService, MobsimBeforeSimStepListener {
+	private static final Logger log = Logger.getLogger(RasterTemperatureService.class);
+
+	private static final double SECONDS_PER_HOUR = 3600;
+
+	private final int hours;
+	private final int[] zoneByLinkIndex;
+	private final double[] temperatures;// [zone * hours + hour]
+
+	private volatile double currentTime = 0;
+
+	@Inject
+	public RasterTemperatureService(Network network, Config config, UrbanEVConfigGroup urbanEVCfg) {
+		this(network, ConfigGroup.getInputFileURL(config.getContext(), urbanEVCfg.getTemperatureRasterFile()));
+	}
+
+	public RasterTemperatureService(Network network, URL rasterUrl) {
+		Raster raster = readRaster(rasterUrl);
+		hours = raster.hours;
+
+		int[] zoneByCell = new int[raster.rows * raster.cols];
+		Arrays.fill(zoneByCell, -1);
+		int zoneCount = 0;
+		zoneByLinkIndex = new int[Id.getNumberOfIds(Link.class)];
+		Arrays.fill(zoneByLinkIndex, -1);
+		for (Link link : network.getLinks().values()) {
+			int cell = raster.getCell(link.getCoord());
+			if (zoneByCell[cell] < 0) {
+				zoneByCell[cell] = zoneCount++;
+			}
+			zoneByLinkIndex[link.getId().index()] = zoneByCell[cell];
+		}
+
+		temperatures = new double[zoneCount * hours];
+		for (int cell = 0; cell < zoneByCell.length; cell++) {
+			int zone = zoneByCell[cell];
+			if (zone >= 0) {
+				for (int hour = 0; hour < hours; hour++) {
+					temperatures[zone * hours + hour] = raster.values[hour][cell];
+				}
+			}
+		}
+		log.info("Temperature raster: " + raster.rows + "x" + raster.cols + " cells, " + hours + " hours, "
+				+ network.getLinks().size() + " links mapped to " + zoneCount + " zones");
+	}
+
+	@Override
+	public double getCurrentTemperature(Id<Link> linkId) {
+		return getTemperature(linkId, currentTime);
+	}
+
+	@Override
+	public double getTemperature(Id<Link> linkId, double time) {
+		int zone = linkId.index() < zoneByLinkIndex.length ? zoneByLinkIndex[linkId.index()] : -1;
+		if (zone < 0) {
+			throw new IllegalArgumentException("Link " + linkId + " is not part of the network the temperature "
+					+ "raster was mapped to");
+		}
+		return temperatures[zone * hours + hourIndex(time)];
+	}
+
+	@Override
+	public double getNextTemperatureChangeTime(Id<Link> linkId, double time) {
+		return (Math.floor(time / SECONDS_PER_HOUR) + 1) * SECONDS_PER_HOUR;
+	}
+
+	private int hourIndex(double time) {
+		return Math.floorMod((int)Math.floor(time / SECONDS_PER_HOUR), hours);
+	}
+
+	@Override
+	public void notifyMobsimBeforeSimStep(@SuppressWarnings("rawtypes") MobsimBeforeSimStepEvent e) {
+		currentTime = e.getSimulationTime();
+	}
+
+	private static class Raster {
+		private int cols;
+		private int rows;
+		private double xllCorner;
+		private double yllCorner;
+		private double cellSize;
+		private int hours;
+		private double[][] values;// [hour][row * cols + col]
+
+		private int getCell(Coord coord) {
+			int col = clamp((int)Math.floor((coord.getX() - xllCorner) / cellSize), cols);
+			int rowFromBottom = clamp((int)Math.floor((coord.getY() - yllCorner) / cellSize), rows);
+			return (rows - 1 - rowFromBottom) * cols + col;
+		}
+
+		private static int clamp(int index, int size) {
+			return Math.max(0, Math.min(size - 1, index));
+		}
+	}
+
+	private static Raster readRaster(URL url) {
+		Raster raster = new Raster();
+		double noData;
+		try (AsciiGridReader grid = new AsciiGridReader(IOUtils.getBufferedReader(url), url.toString(), "nhours")) {
+			raster.cols = grid.getCols();
+			raster.rows = grid.getRows();
+			raster.xllCorner = grid.getXllCorner();
+			raster.yllCorner = grid.getYllCorner();
+			raster.cellSize = grid.getCellSize();
+			raster.hours = grid.getBlocks();
+			raster.values = new double[raster.hours][grid.getCellCount()];
+			noData = grid.getNoData();
+			grid.readValues((hour, cell, value) -> raster.values[hour][cell] = value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		for (double[] hourValues : raster.values) {
+			replaceNoData(hourValues, noData, url);
+		}
+		clampToAuxPowerRange(raster.values, url);
+		return raster;
+	}
+
+	private static void clampToAuxPowerRange(double[][] values, URL url) {
+		int minTemp = OhdeSlaskiAuxEnergyConsumption.MIN_TEMP;
+		int maxTemp = OhdeSlaskiAuxEnergyConsumption.MAX_TEMP;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		long clamped = 0;
+		for (double[] hourValues : values) {
+			for (int i = 0; i < hourValues.length; i++) {
+				double value = hourValues[i];
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+				if (value < minTemp || value > maxTemp) {
+					hourValues[i] = Math.max(minTemp, Math.min(maxTemp, value));
+					clamped++;
+				} else if (Double.isNaN(value)) {
+					throw new IllegalArgumentException("Invalid temperature in " + url + ": " + value);
+				}
+			}
+		}
+		if (clamped > 0) {
+			log.warn(clamped + " temperatures in " + url + " (range " + min + " to " + max + " oC) are outside the "
+					+ "range of the aux power model and were clamped to " + minTemp + " to " + maxTemp + " oC");
+		}
+	}
+
+	private static void replaceNoData(double[] values, double noData, URL url) {
+		if (Double.isNaN(noData)) {
+			return;
+		}
+		double sum = 0;
+		int count = 0;
+		for (double value : values) {
+			if (value != noData) {
+				sum += value;
+				count++;
+			}
+		}
+		if (count == 0) {
+			throw new IllegalArgumentException("No valid temperature for at least one hour in " + url);
+		}
+		double mean = sum / count;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == noData) {
+				values[i] = mean;
+			}
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package se.urbanEV.discharging;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.contrib.ev.temperature.TemperatureService;
+
+/**
+ * A {@link TemperatureService} whose temperatures change over simulation time in steps (e.g. hourly values).
+ * <p>
+ * Knowing where the steps are allows temperature-dependent quantities to be integrated over an interval in closed form,
+ * one constant piece at a time, instead of sampling them every aux discharge time step. See
+ * {@link OhdeSlaskiAuxEnergyConsumption#calcEnergyConsumption(double, double, Id)}.
+ */
+public interface TemperatureProfileService extends TemperatureService {
+	/**
+	 * @return air temperature [oC] at the given link and simulation time
+	 */
+	double getTemperature(Id<Link> linkId, double time);
+
+	/**
+	 * @return the earliest time after {@code time} at which the temperature at the given link may change,
+	 * or {@link Double#POSITIVE_INFINITY} if it stays constant
+	 */
+	double getNextTemperatureChangeTime(Id<Link> linkId, double time);
+}
@@ -0,0 +1,200 @@
+package se.urbanEV.discharging;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.contrib.ev.EvUnits;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.misc.Time;
+import se.urbanEV.fleet.Battery;
+import se.urbanEV.fleet.ElectricVehicle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Energy balance of every EV trip (enter traffic to leave traffic), fed by {@link DriveDischargingHandler}.
+ * <p>
+ * Running trips are accumulated in primitive per-vehicle slots. Completed trips are collected in fixed-size chunks
+ * that are handed over to a background thread, which writes them to a (compressed) CSV file. The number of chunks is
+ * bounded: if the writer falls behind, the simulation waits for it. Memory use therefore does not depend on the
+ * number of trips.
+ * <p>
+ * A vehicle's slot is only touched by the thread that discharges this vehicle, so slots need no synchronisation;
+ * completed trips are appended to the current chunk under a lock.
+ */
+class TripEnergyRecorder {
+	private static final Logger log = Logger.getLogger(TripEnergyRecorder.class);
+
+	private static final int CHUNK_SIZE = 4096;
+	private static final int CHUNK_COUNT = 4;
+
+	private static class TripChunk {
+		private final int[] slots = new int[CHUNK_SIZE];
+		private final double[] departureTimes = new double[CHUNK_SIZE];
+		private final double[] arrivalTimes = new double[CHUNK_SIZE];
+		private final double[] startSocs = new double[CHUNK_SIZE];
+		private final double[] endSocs = new double[CHUNK_SIZE];
+		private final double[] distances = new double[CHUNK_SIZE];
+		private final double[] energies = new double[CHUNK_SIZE];
+		private int size = 0;
+	}
+
+	private static final TripChunk END_OF_TRIPS = new TripChunk();
+
+	private final Map<Id<ElectricVehicle>, Integer> slotsByVehicle;
+	private final String[] vehicleIds;
+
+	// running trips
+	private final double[] departureTimes;
+	private final double[] startSocs;// relative
+	private final double[] distances;// [m]
+	private final double[] energies;// [J]
+
+	private final BlockingQueue<TripChunk> freeChunks = new ArrayBlockingQueue<>(CHUNK_COUNT);
+	private final BlockingQueue<TripChunk> fullChunks = new ArrayBlockingQueue<>(CHUNK_COUNT + 1);
+	private TripChunk currentChunk;
+
+	private final Thread writerThread;
+	private volatile Throwable writerError;
+
+	TripEnergyRecorder(Map<Id<ElectricVehicle>, ? extends ElectricVehicle> vehicles, String file) {
+		int vehicleCount = vehicles.size();
+		slotsByVehicle = new HashMap<>(vehicleCount * 4 / 3 + 1);
+		vehicleIds = new String[vehicleCount];
+		for (Id<ElectricVehicle> vehicleId : vehicles.keySet()) {
+			vehicleIds[slotsByVehicle.size()] = vehicleId.toString();
+			slotsByVehicle.put(vehicleId, slotsByVehicle.size());
+		}
+		departureTimes = new double[vehicleCount];
+		startSocs = new double[vehicleCount];
+		distances = new double[vehicleCount];
+		energies = new double[vehicleCount];
+
+		for (int i = 1; i < CHUNK_COUNT; i++) {
+			freeChunks.add(new TripChunk());
+		}
+		currentChunk = new TripChunk();
+
+		CSVPrinter csvPrinter;
+		try {
+			csvPrinter = new CSVPrinter(IOUtils.getBufferedWriter(file), CSVFormat.DEFAULT.withDelimiter(';')
+					.withHeader("vehicleId", "departureTime", "arrivalTime", "startSoc", "endSoc", "distance_km",
+							"energy_kWh", "consumption_kWh_per_km", "meanSpeed_km_h"));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		writerThread = new Thread(() -> writeChunks(csvPrinter), "TripEnergyWriter");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	int getSlot(Id<ElectricVehicle> vehicleId) {
+		return slotsByVehicle.get(vehicleId);
+	}
+
+	void startTrip(int slot, double time, Battery battery) {
+		departureTimes[slot] = time;
+		startSocs[slot] = battery.getSoc() / battery.getCapacity();
+		distances[slot] = 0;
+		energies[slot] = 0;
+	}
+
+	void addLink(int slot, double length, double energy) {
+		distances[slot] += length;
+		energies[slot] += energy;
+	}
+
+	void endTrip(int slot, double time, Battery battery) {
+		double endSoc = battery.getSoc() / battery.getCapacity();
+		TripChunk fullChunk = null;
+		synchronized (this) {
+			TripChunk chunk = currentChunk;
+			int i = chunk.size++;
+			chunk.slots[i] = slot;
+			chunk.departureTimes[i] = departureTimes[slot];
+			chunk.arrivalTimes[i] = time;
+			chunk.startSocs[i] = startSocs[slot];
+			chunk.endSocs[i] = endSoc;
+			chunk.distances[i] = distances[slot];
+			chunk.energies[i] = energies[slot];
+			if (chunk.size == CHUNK_SIZE) {
+				fullChunk = chunk;
+				currentChunk = takeFreeChunk();
+			}
+		}
+		if (fullChunk != null) {
+			putFullChunk(fullChunk);
+		}
+	}
+
+	/**
+	 * Writes the remaining trips and waits for the writer to finish. Trips that have not ended yet are dropped.
+	 */
+	void close() {
+		putFullChunk(currentChunk);
+		putFullChunk(END_OF_TRIPS);
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		if (writerError != null) {
+			throw new RuntimeException("Writing trip energies failed", writerError);
+		}
+	}
+
+	private TripChunk takeFreeChunk() {
+		try {
+			return freeChunks.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void putFullChunk(TripChunk chunk) {
+		if (writerError != null) {
+			throw new RuntimeException("Writing trip energies failed", writerError);
+		}
+		try {
+			fullChunks.put(chunk);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void writeChunks(CSVPrinter csvPrinter) {
+		try (CSVPrinter printer = csvPrinter) {
+			TripChunk chunk;
+			while ((chunk = fullChunks.take()) != END_OF_TRIPS) {
+				for (int i = 0; i < chunk.size; i++) {
+					double distanceKm = chunk.distances[i] / 1000;
+					double energyKWh = EvUnits.J_to_kWh(chunk.energies[i]);
+					double duration = chunk.arrivalTimes[i] - chunk.departureTimes[i];
+					printer.printRecord(vehicleIds[chunk.slots[i]], Time.writeTime(chunk.departureTimes[i]),
+							Time.writeTime(chunk.arrivalTimes[i]), chunk.startSocs[i], chunk.endSocs[i], distanceKm,
+							energyKWh, distanceKm > 0 ? energyKWh / distanceKm : Double.NaN,
+							duration > 0 ? distanceKm / (duration / 3600) : Double.NaN);
+				}
+				chunk.size = 0;
+				freeChunks.offer(chunk);
+			}
+		} catch (Throwable t) {
+			log.error("Writing trip energies failed", t);
+			writerError = t;
+			// unblock the simulation; further trips are discarded
+			fullChunks.clear();
+			for (int i = freeChunks.size(); i < CHUNK_COUNT; i++) {
+				freeChunks.offer(new TripChunk());
+			}
+		}
+	}
+}
@@ -31,6 +31,17 @@ email	:	lennart.adenaw@tum.de
 package se.urbanEV.fleet;
 
 public interface Battery {
+	/**
+	 * Consumption that is accounted for lazily, e.g. the aux consumption of a parked vehicle with lazyAuxDischarging,
+	 * or the drive consumption of the last step of a vehicle that has just left traffic with batchDriveDischarging.
+	 */
+	interface DeferredDischarge {
+		/**
+		 * Applies the consumption up to the current time to the SoC.
+		 */
+		void settle();
+	}
+
 	/**
 	 * @return Battery Capacity [J]
 	 */
@@ -56,4 +67,12 @@ public interface Battery {
 	}
 
 	double getStartSoc(); // in kWh
+
+	/**
+	 * @param deferredDischarge settled before every read or change of the SoC until it is removed; several deferred
+	 *                          discharges are settled in the order in which they were added
+	 */
+	void addDeferredDischarge(DeferredDischarge deferredDischarge);
+
+	void removeDeferredDischarge(DeferredDischarge deferredDischarge);
 }
@@ -32,11 +32,20 @@ package se.urbanEV.fleet;
 
 import com.google.common.base.Preconditions;
 
+import java.util.Arrays;
+
 public class BatteryImpl implements Battery {
+	private static final DeferredDischarge[] NO_DEFERRED_DISCHARGES = new DeferredDischarge[0];
+
 	private final double capacity; // J
 	private double soc; // J
 	private double startSoc; // J
 
+	private FleetSocHistogram fleetSocHistogram; // null unless incremental SoC statistics are enabled
+	private int vehicleTypeIndex;
+
+	private volatile DeferredDischarge[] deferredDischarges = NO_DEFERRED_DISCHARGES;// copied on write
+
 	public BatteryImpl(double capacity, double soc) {
 		this.capacity = capacity;
 		this.soc = soc;
@@ -50,17 +59,59 @@ public class BatteryImpl implements Battery {
 
 	@Override
 	public double getSoc() {
+		settleDeferredDischarges();
 		return soc;
 	}
 
 	@Override
 	public void setSoc(double soc) {
 		Preconditions.checkArgument(soc >= 0 && soc <= capacity, "SoC outside allowed range: %s", soc);
+		settleDeferredDischarges();
+		double oldSoc = this.soc;
 		this.soc = soc;
+		if (fleetSocHistogram != null) {
+			fleetSocHistogram.socChanged(vehicleTypeIndex, oldSoc, soc, capacity);
+		}
 	}
+
+	void setFleetSocHistogram(FleetSocHistogram fleetSocHistogram, int vehicleTypeIndex) {
+		this.fleetSocHistogram = fleetSocHistogram;
+		this.vehicleTypeIndex = vehicleTypeIndex;
+	}
+
 	@Override
 	public double getStartSoc() {
 		return startSoc;
 	}
 
+	private void settleDeferredDischarges() {
+		for (DeferredDischarge deferredDischarge : deferredDischarges) {
+			deferredDischarge.settle();
+		}
+	}
+
+	@Override
+	public synchronized void addDeferredDischarge(DeferredDischarge deferredDischarge) {
+		DeferredDischarge[] current = deferredDischarges;
+		DeferredDischarge[] updated = Arrays.copyOf(current, current.length + 1);
+		updated[current.length] = deferredDischarge;
+		deferredDischarges = updated;
+	}
+
+	@Override
+	public synchronized void removeDeferredDischarge(DeferredDischarge deferredDischarge) {
+		DeferredDischarge[] current = deferredDischarges;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == deferredDischarge) {
+				DeferredDischarge[] updated = current.length == 1 ?
+						NO_DEFERRED_DISCHARGES :
+						new DeferredDischarge[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+				deferredDischarges = updated;
+				return;
+			}
+		}
+	}
+
 }
@@ -86,6 +86,10 @@ public class ElectricFleetModule extends AbstractModule {
 								auxConsumptionFactory, chargingPowerFactory);
 					}
 				}).asEagerSingleton();
+
+				if (urbanEVCfg.isIncrementalSocHistogram()) {
+					bind(FleetSocHistogram.class).asEagerSingleton();
+				}
 			}
 		});
 	}
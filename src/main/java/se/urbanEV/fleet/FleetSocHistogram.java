@@ -0,0 +1,125 @@
+package se.urbanEV.fleet;
+
+import com.google.inject.Inject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fleet SoC histogram and per-vehicle-type SoC sums, kept up to date by the batteries themselves.
+ * <p>
+ * On creation, every {@link BatteryImpl} of the fleet is registered and from then on reports its SoC changes. The
+ * histogram is only touched when a battery moves to another bin, so reading the histogram, the number of empty
+ * batteries or the average SoCs is O(bins + vehicle types) at any time. Batteries may be updated concurrently (e.g.
+ * by parallel drive discharging), hence the atomic counters.
+ * <p>
+ * The SoC sums are kept in fixed point (mJ). Every battery contributes its rounded SoC and changes are added as
+ * differences of rounded values, so a sum is exactly the sum of the rounded SoCs and does not drift or depend on the
+ * order of the updates, however many there are.
+ */
+public class FleetSocHistogram {
+	public static final int BINS = 10;// 0.1 wide bins for soc > 0, plus one bin for empty batteries
+	public static final double BIN_SIZE = 1.0 / BINS;
+	private static final double SOC_UNITS_PER_J = 1000;
+
+	private final AtomicLongArray histogram = new AtomicLongArray(BINS + 1);// [0] = empty batteries
+	private final String[] vehicleTypeNames;
+	private final int[] vehicleTypeCounts;
+	private final LongAdder[] vehicleTypeSocSums;// [mJ]
+	private final int vehicleCount;
+
+	@Inject
+	public FleetSocHistogram(ElectricFleet evFleet) {
+		Map<String, Integer> typeIndices = new LinkedHashMap<>();
+		for (ElectricVehicle ev : evFleet.getElectricVehicles().values()) {
+			typeIndices.putIfAbsent(ev.getVehicleType().getName(), typeIndices.size());
+		}
+		vehicleTypeNames = typeIndices.keySet().toArray(new String[0]);
+		vehicleTypeCounts = new int[vehicleTypeNames.length];
+		vehicleTypeSocSums = new LongAdder[vehicleTypeNames.length];
+		for (int i = 0; i < vehicleTypeSocSums.length; i++) {
+			vehicleTypeSocSums[i] = new LongAdder();
+		}
+		vehicleCount = evFleet.getElectricVehicles().size();
+
+		for (ElectricVehicle ev : evFleet.getElectricVehicles().values()) {
+			if (!(ev.getBattery() instanceof BatteryImpl)) {
+				throw new IllegalStateException("Battery of vehicle " + ev.getId()
+						+ " does not support SoC change notifications: " + ev.getBattery().getClass());
+			}
+			BatteryImpl battery = (BatteryImpl)ev.getBattery();
+			int typeIndex = typeIndices.get(ev.getVehicleType().getName());
+			vehicleTypeCounts[typeIndex]++;
+			vehicleTypeSocSums[typeIndex].add(toSocUnits(battery.getSoc()));
+			histogram.incrementAndGet(getBin(battery.getSoc() / battery.getCapacity()));
+			battery.setFleetSocHistogram(this, typeIndex);
+		}
+	}
+
+	/**
+	 * @return histogram bin of the given relative soc: 0 for an empty battery, 1 + floor(soc / 0.1) otherwise
+	 * (a full battery is counted in the last bin)
+	 */
+	public static int getBin(double relativeSoc) {
+		return relativeSoc == 0 ? 0 : 1 + Math.min((int)(relativeSoc / BIN_SIZE), BINS - 1);
+	}
+
+	void socChanged(int vehicleTypeIndex, double oldSoc, double newSoc, double capacity) {
+		if (oldSoc == newSoc) {
+			return;
+		}
+		vehicleTypeSocSums[vehicleTypeIndex].add(toSocUnits(newSoc) - toSocUnits(oldSoc));
+		int oldBin = getBin(oldSoc / capacity);
+		int newBin = getBin(newSoc / capacity);
+		if (oldBin != newBin) {
+			histogram.decrementAndGet(oldBin);
+			histogram.incrementAndGet(newBin);
+		}
+	}
+
+	private static long toSocUnits(double soc) {
+		return Math.round(soc * SOC_UNITS_PER_J);
+	}
+
+	/**
+	 * @return number of vehicles in the given bin (see {@link #getBin(double)})
+	 */
+	public long getCount(int bin) {
+		return histogram.get(bin);
+	}
+
+	/**
+	 * @return number of vehicles with soc == 0
+	 */
+	public long getEmptyBatteryCount() {
+		return histogram.get(0);
+	}
+
+	/**
+	 * @return vehicle type names, in order of first appearance in the fleet
+	 */
+	public String[] getVehicleTypeNames() {
+		return vehicleTypeNames;
+	}
+
+	/**
+	 * @return average soc [J] of the given vehicle type, NaN if there are no such vehicles
+	 */
+	public double getAverageSoc(int vehicleTypeIndex) {
+		int count = vehicleTypeCounts[vehicleTypeIndex];
+		return count == 0 ? Double.NaN : vehicleTypeSocSums[vehicleTypeIndex].sum() / SOC_UNITS_PER_J / count;
+	}
+
+	/**
+	 * @return average soc [J] of the fleet, NaN if the fleet is empty
+	 */
+	public double getFleetAverageSoc() {
+		long sum = 0;
+		for (LongAdder typeSum : vehicleTypeSocSums) {
+			sum += typeSum.sum();
+		}
+		return vehicleCount == 0 ? Double.NaN : sum / SOC_UNITS_PER_J / vehicleCount;
+	}
+}
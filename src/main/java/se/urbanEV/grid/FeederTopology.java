@@ -0,0 +1,210 @@
+package se.urbanEV.grid;
+
+import com.google.inject.Inject;
+import org.apache.log4j.Logger;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.utils.io.IOUtils;
+import se.urbanEV.config.UrbanEVConfigGroup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Radial feeders read from gridFeedersFile (';'-separated), one row per node:
+ * <pre>
+ * feederId;nodeId;parentId;r_ohm;x_ohm;rating_kVA;vNom_kV
+ * F1;S1;;;;;10           (root: no parent, nominal line-to-line voltage)
+ * F1;N1;S1;0.05;0.02;400; (branch from the parent to the node: impedance and rating)
+ * </pre>
+ * Node ids are the ids used in gridNodesFile, so the charging load of a grid node is applied to the feeder node with
+ * the same id. They must therefore be unique across all feeders; otherwise the load would be counted in each feeder.
+ * <p>
+ * All feeders are stored in flat primitive arrays: the nodes of a feeder are contiguous and in topological order
+ * (root first, every node after its parent), and each node refers to its parent by index. Together with the branch
+ * impedances, this is the sparse (tree) form of the feeder's incidence matrix.
+ */
+public class FeederTopology {
+	private static final Logger log = Logger.getLogger(FeederTopology.class);
+
+	private static final String[] HEADER = { "feederId", "nodeId", "parentId", "r_ohm", "x_ohm", "rating_kVA",
+			"vNom_kV" };
+
+	private final String[] feederIds;
+	private final int[] feederStarts;// [feeder], plus the total node count at the end
+	private final double[] nominalVoltages;// [V], [feeder]
+
+	private final String[] nodeIds;
+	private final int[] parents;// global node index, -1 for roots
+	private final double[] resistances;// [ohm], of the branch from the parent
+	private final double[] reactances;// [ohm]
+	private final double[] ratings;// [VA], <= 0 if unknown
+
+	@Inject
+	public FeederTopology(Config config, UrbanEVConfigGroup urbanEVCfg) {
+		this(ConfigGroup.getInputFileURL(config.getContext(), urbanEVCfg.getGridFeedersFile()));
+	}
+
+	public FeederTopology(URL feedersUrl) {
+		Map<String, List<String[]>> rowsPerFeeder = new LinkedHashMap<>();
+		try (BufferedReader reader = IOUtils.getBufferedReader(feedersUrl)) {
+			String headerLine = reader.readLine();
+			if (headerLine == null || !headerLine.trim().equalsIgnoreCase(String.join(";", HEADER))) {
+				throw new IllegalArgumentException("Unexpected feeders file header (expected " + String.join(";",
+						HEADER) + "): " + headerLine);
+			}
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (!line.isBlank()) {
+					String[] row = line.trim().split(";", -1);
+					rowsPerFeeder.computeIfAbsent(row[0], id -> new ArrayList<>()).add(row);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		int nodeCount = rowsPerFeeder.values().stream().mapToInt(List::size).sum();
+		feederIds = rowsPerFeeder.keySet().toArray(new String[0]);
+		feederStarts = new int[feederIds.length + 1];
+		nominalVoltages = new double[feederIds.length];
+		nodeIds = new String[nodeCount];
+		parents = new int[nodeCount];
+		resistances = new double[nodeCount];
+		reactances = new double[nodeCount];
+		ratings = new double[nodeCount];
+
+		int next = 0;
+		Map<String, String> feederPerNode = new HashMap<>();
+		for (int f = 0; f < feederIds.length; f++) {
+			feederStarts[f] = next;
+			next = addFeeder(f, rowsPerFeeder.get(feederIds[f]), next);
+			for (int node = feederStarts[f]; node < next; node++) {
+				String otherFeederId = feederPerNode.put(nodeIds[node], feederIds[f]);
+				if (otherFeederId != null) {
+					throw new IllegalArgumentException("Node " + nodeIds[node] + " is part of feeders " + otherFeederId
+							+ " and " + feederIds[f] + "; its charging load would be counted in both");
+				}
+			}
+		}
+		feederStarts[feederIds.length] = next;
+		log.info(feederIds.length + " feeders with " + nodeCount + " nodes read from " + feedersUrl);
+	}
+
+	/**
+	 * Adds the nodes of the feeder in breadth-first order from the root.
+	 *
+	 * @return index after the last node of the feeder
+	 */
+	private int addFeeder(int feeder, List<String[]> rows, int start) {
+		String feederId = feederIds[feeder];
+		String[] root = null;
+		Map<String, List<String[]>> children = new HashMap<>();
+		for (String[] row : rows) {
+			if (row[2].isEmpty()) {
+				if (root != null) {
+					throw new IllegalArgumentException("Feeder " + feederId + " has more than one root");
+				}
+				root = row;
+			} else {
+				children.computeIfAbsent(row[2], id -> new ArrayList<>()).add(row);
+			}
+		}
+		if (root == null) {
+			throw new IllegalArgumentException("Feeder " + feederId + " has no root (node without parent)");
+		}
+		nominalVoltages[feeder] = Double.parseDouble(root[6]) * 1000;
+
+		Deque<String[]> queue = new ArrayDeque<>();
+		Map<String, Integer> indices = new HashMap<>();
+		queue.add(root);
+		int next = start;
+		while (!queue.isEmpty()) {
+			String[] row = queue.poll();
+			int node = next++;
+			nodeIds[node] = row[1];
+			if (indices.put(row[1], node) != null) {
+				throw new IllegalArgumentException("Duplicate node " + row[1] + " in feeder " + feederId);
+			}
+			if (row == root) {
+				parents[node] = -1;
+			} else {
+				parents[node] = indices.get(row[2]);
+				resistances[node] = Double.parseDouble(row[3]);
+				reactances[node] = Double.parseDouble(row[4]);
+				ratings[node] = row[5].isEmpty() ? 0 : Double.parseDouble(row[5]) * 1000;
+			}
+			queue.addAll(children.getOrDefault(row[1], List.of()));
+		}
+		if (next - start != rows.size()) {
+			throw new IllegalArgumentException("Feeder " + feederId + " is not connected or not radial: "
+					+ (rows.size() - (next - start)) + " nodes are not reachable from the root");
+		}
+		return next;
+	}
+
+	public int getFeederCount() {
+		return feederIds.length;
+	}
+
+	public String getFeederId(int feeder) {
+		return feederIds[feeder];
+	}
+
+	/**
+	 * @return index of the feeder's root; its nodes are [getFeederStart(f), getFeederStart(f + 1))
+	 */
+	public int getFeederStart(int feeder) {
+		return feederStarts[feeder];
+	}
+
+	/**
+	 * @return nominal line-to-line voltage [V]
+	 */
+	public double getNominalVoltage(int feeder) {
+		return nominalVoltages[feeder];
+	}
+
+	public int getNodeCount() {
+		return nodeIds.length;
+	}
+
+	public String getNodeId(int node) {
+		return nodeIds[node];
+	}
+
+	public int getParent(int node) {
+		return parents[node];
+	}
+
+	public double getResistance(int node) {
+		return resistances[node];
+	}
+
+	public double getReactance(int node) {
+		return reactances[node];
+	}
+
+	/**
+	 * @return rating [VA] of the branch from the parent, <= 0 if unknown
+	 */
+	public double getRating(int node) {
+		return ratings[node];
+	}
+
+	public int getMaxFeederSize() {
+		int max = 0;
+		for (int f = 0; f < feederIds.length; f++) {
+			max = Math.max(max, feederStarts[f + 1] - feederStarts[f]);
+		}
+		return max;
+	}
+}
@@ -0,0 +1,264 @@
+package se.urbanEV.grid;
+
+import com.google.inject.Inject;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.matsim.contrib.ev.EvUnits;
+import org.matsim.core.controler.IterationCounter;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.misc.Time;
+import se.urbanEV.charging.ChargingHandler;
+import se.urbanEV.charging.ChargingLogic;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargingInfrastructure;
+import se.urbanEV.stats.EvOutputWriter;
+import se.urbanEV.stats.QuantileSketch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Charging power per grid node ({@link GridNodeMapping}) at 1-minute resolution, fed by {@link ChargingHandler}
+ * after each charging step.
+ * <p>
+ * The energy of each step is added per node into a ring buffer of the last {@value #RING_MINUTES} minutes (one
+ * primitive array, so the cost per step is one pass over the chargers and one over the nodes). Whenever a minute is
+ * completed, its average power is written to {@value #TIME_SERIES_FILE} (non-zero values only), added to the peak,
+ * energy and load-duration statistics of the node, and passed to the {@link MinuteListener}s. At the end of the
+ * iteration, the statistics are written to {@value #SUMMARY_FILE}.
+ */
+public class GridLoadRecorder implements MobsimBeforeCleanupListener {
+	public static final String TIME_SERIES_FILE = "gridLoad.csv.gz";
+	public static final String SUMMARY_FILE = "gridLoadSummary.csv";
+	public static final int RING_MINUTES = 60;
+
+	private static final double SECS_PER_MINUTE = 60;
+	// share of the time during which the load is at least the reported value
+	private static final double[] LOAD_DURATION_SHARES = { 0.01, 0.05, 0.1, 0.25, 0.5, 0.75, 0.9, 1.0 };
+	private static final double LOAD_DURATION_ACCURACY = 0.01;
+
+	public interface MinuteListener {
+		/**
+		 * Called once all charging steps of the minute have been recorded; the power of this and the preceding
+		 * minutes can be read with {@link #getPower(int, long)}.
+		 */
+		void notifyMinuteCompleted(long minute, GridLoadRecorder recorder);
+
+		/**
+		 * Called at the end of the mobsim, after the last minute has been completed.
+		 */
+		default void notifyRecordingCompleted(GridLoadRecorder recorder) {
+		}
+	}
+
+	private final GridNodeMapping mapping;
+	private final OutputDirectoryHierarchy controlerIO;
+	private final IterationCounter iterationCounter;
+	private final EvOutputWriter outputWriter;
+	private final List<MinuteListener> minuteListeners = new ArrayList<>();
+
+	private final ChargingLogic[] chargerLogics;// assigned chargers only
+	private final int[] chargerNodes;
+	private final int nodeCount;
+
+	private final double[] stepEnergy;// [J], [node], reused in each step
+	private final double[] ring;// [J], [(minute % RING_MINUTES) * nodeCount + node]
+	private long firstOpenMinute = -1;// all earlier minutes are completed
+	private long lastOpenedMinute = -1;// latest minute that has received energy
+
+	private final double[] peakPower;// [W]
+	private final long[] peakMinutes;
+	private final double[] energy;// [J]
+	private final QuantileSketch[] minutePowers;
+	private final CSVPrinter timeSeriesPrinter;
+
+	@Inject
+	public GridLoadRecorder(GridNodeMapping mapping, ChargingInfrastructure chargingInfrastructure,
+			OutputDirectoryHierarchy controlerIO, IterationCounter iterationCounter, EvOutputWriter outputWriter) {
+		this.mapping = mapping;
+		this.controlerIO = controlerIO;
+		this.iterationCounter = iterationCounter;
+		this.outputWriter = outputWriter;
+
+		List<Charger> assignedChargers = new ArrayList<>();
+		for (Charger charger : chargingInfrastructure.getChargers().values()) {
+			if (mapping.getNode(charger.getId()) >= 0) {
+				assignedChargers.add(charger);
+			}
+		}
+		chargerLogics = new ChargingLogic[assignedChargers.size()];
+		chargerNodes = new int[assignedChargers.size()];
+		for (int i = 0; i < chargerLogics.length; i++) {
+			chargerLogics[i] = assignedChargers.get(i).getLogic();
+			chargerNodes[i] = mapping.getNode(assignedChargers.get(i).getId());
+		}
+		nodeCount = mapping.getNodeCount();
+
+		stepEnergy = new double[nodeCount];
+		ring = new double[RING_MINUTES * nodeCount];
+		peakPower = new double[nodeCount];
+		peakMinutes = new long[nodeCount];
+		energy = new double[nodeCount];
+		minutePowers = new QuantileSketch[nodeCount];
+		for (int node = 0; node < nodeCount; node++) {
+			minutePowers[node] = new QuantileSketch(LOAD_DURATION_ACCURACY);
+		}
+
+		String file = controlerIO.getIterationFilename(iterationCounter.getIterationNumber(), TIME_SERIES_FILE);
+		try {
+			timeSeriesPrinter = new CSVPrinter(IOUtils.getBufferedWriter(file),
+					CSVFormat.DEFAULT.withDelimiter(';').withHeader("minute", "time", "nodeId", "power_kW"));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void addMinuteListener(MinuteListener listener) {
+		minuteListeners.add(listener);
+	}
+
+	public GridNodeMapping getMapping() {
+		return mapping;
+	}
+
+	/**
+	 * Adds the power of the last charging step ({@link ChargingLogic#getCurrentPower()}) of all chargers.
+	 *
+	 * @param chargePeriod [s]
+	 * @param now          time of the step; the step covers (now + 1 - chargePeriod, now + 1)
+	 */
+	public void addChargingStep(double chargePeriod, double now) {
+		Arrays.fill(stepEnergy, 0);
+		for (int i = 0; i < chargerLogics.length; i++) {
+			stepEnergy[chargerNodes[i]] += chargerLogics[i].getCurrentPower() * chargePeriod;
+		}
+
+		// steps that span several minutes are split proportionally
+		double stepStart = now + 1 - chargePeriod;
+		double stepEnd = now + 1;
+		long fromMinute = (long)Math.floor(stepStart / SECS_PER_MINUTE);
+		long toMinute = (long)Math.ceil(stepEnd / SECS_PER_MINUTE) - 1;
+		for (long minute = fromMinute; minute <= toMinute; minute++) {
+			double overlap = Math.min(stepEnd, (minute + 1) * SECS_PER_MINUTE) - Math.max(stepStart,
+					minute * SECS_PER_MINUTE);
+			openMinute(minute);
+			int offset = (int)(minute % RING_MINUTES) * nodeCount;
+			double share = overlap / chargePeriod;
+			for (int node = 0; node < nodeCount; node++) {
+				ring[offset + node] += stepEnergy[node] * share;
+			}
+		}
+	}
+
+	private void openMinute(long minute) {
+		if (firstOpenMinute < 0) {
+			firstOpenMinute = minute;
+		}
+		completeMinutesBefore(minute);
+		for (long m = Math.max(lastOpenedMinute + 1, minute - RING_MINUTES + 1); m <= minute; m++) {
+			int offset = (int)(m % RING_MINUTES) * nodeCount;
+			Arrays.fill(ring, offset, offset + nodeCount, 0);
+		}
+		lastOpenedMinute = Math.max(lastOpenedMinute, minute);
+	}
+
+	private void completeMinutesBefore(long minute) {
+		while (firstOpenMinute < minute) {
+			long completed = firstOpenMinute++;
+			if (completed > lastOpenedMinute) {
+				// no step in this minute (e.g. before the first step); its slot still holds old values
+				int offset = (int)(completed % RING_MINUTES) * nodeCount;
+				Arrays.fill(ring, offset, offset + nodeCount, 0);
+				lastOpenedMinute = completed;
+			}
+			completeMinute(completed);
+		}
+	}
+
+	private void completeMinute(long minute) {
+		int offset = (int)(minute % RING_MINUTES) * nodeCount;
+		try {
+			for (int node = 0; node < nodeCount; node++) {
+				double minuteEnergy = ring[offset + node];
+				double power = minuteEnergy / SECS_PER_MINUTE;
+				energy[node] += minuteEnergy;
+				minutePowers[node].add(power);
+				if (power > peakPower[node]) {
+					peakPower[node] = power;
+					peakMinutes[node] = minute;
+				}
+				if (power > 0) {
+					timeSeriesPrinter.printRecord(minute, Time.writeTime(minute * SECS_PER_MINUTE),
+							mapping.getNodeId(node), EvUnits.W_to_kW(power));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		for (MinuteListener listener : minuteListeners) {
+			listener.notifyMinuteCompleted(minute, this);
+		}
+	}
+
+	/**
+	 * @return average power [W] of the node in a completed minute of the last {@value #RING_MINUTES} minutes
+	 */
+	public double getPower(int node, long minute) {
+		if (minute >= firstOpenMinute || minute <= lastOpenedMinute - RING_MINUTES) {
+			throw new IllegalArgumentException("Minute " + minute + " is not a completed minute in the ring buffer");
+		}
+		return ring[(int)(minute % RING_MINUTES) * nodeCount + node] / SECS_PER_MINUTE;
+	}
+
+	@Override
+	public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent e) {
+		if (lastOpenedMinute >= 0) {
+			completeMinutesBefore(lastOpenedMinute + 1);
+		}
+		for (MinuteListener listener : minuteListeners) {
+			listener.notifyRecordingCompleted(this);
+		}
+		try {
+			timeSeriesPrinter.close();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		String file = controlerIO.getIterationFilename(iterationCounter.getIterationNumber(), SUMMARY_FILE);
+		// the recorder is QSim-scoped, so the statistics are not modified after this point
+		outputWriter.submit(file, () -> writeSummary(file));
+	}
+
+	private void writeSummary(String file) throws IOException {
+		String[] header = new String[5 + LOAD_DURATION_SHARES.length];
+		header[0] = "nodeId";
+		header[1] = "chargers";
+		header[2] = "peak_kW";
+		header[3] = "peakTime";
+		header[4] = "energy_kWh";
+		for (int i = 0; i < LOAD_DURATION_SHARES.length; i++) {
+			header[5 + i] = "load_" + Math.round(LOAD_DURATION_SHARES[i] * 100) + "pct_kW";
+		}
+		try (CSVPrinter csvPrinter = new CSVPrinter(Files.newBufferedWriter(Paths.get(file)),
+				CSVFormat.DEFAULT.withDelimiter(';').withHeader(header))) {
+			for (int node = 0; node < nodeCount; node++) {
+				csvPrinter.print(mapping.getNodeId(node));
+				csvPrinter.print(mapping.getChargerCount(node));
+				csvPrinter.print(EvUnits.W_to_kW(peakPower[node]));
+				csvPrinter.print(peakPower[node] > 0 ? Time.writeTime(peakMinutes[node] * SECS_PER_MINUTE) : "");
+				csvPrinter.print(EvUnits.J_to_kWh(energy[node]));
+				for (double share : LOAD_DURATION_SHARES) {
+					csvPrinter.print(EvUnits.W_to_kW(minutePowers[node].getQuantile(1 - share)));
+				}
+				csvPrinter.println();
+			}
+		}
+	}
+}
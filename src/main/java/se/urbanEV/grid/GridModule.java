@@ -0,0 +1,39 @@
+package se.urbanEV.grid;
+
+import com.google.inject.Inject;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.mobsim.qsim.AbstractQSimModule;
+import se.urbanEV.EvModule;
+import se.urbanEV.config.UrbanEVConfigGroup;
+
+/**
+ * Power grid outputs, enabled by gridNodesFile.
+ */
+public class GridModule extends AbstractModule {
+	@Inject
+	private UrbanEVConfigGroup urbanEVCfg;
+
+	@Override
+	public void install() {
+		if (urbanEVCfg.getGridNodesFile() == null) {
+			return;
+		}
+		bind(GridNodeMapping.class).asEagerSingleton();
+		boolean feeders = urbanEVCfg.getGridFeedersFile() != null;
+		if (feeders) {
+			bind(FeederTopology.class).asEagerSingleton();
+		}
+
+		installQSimModule(new AbstractQSimModule() {
+			@Override
+			protected void configureQSim() {
+				bind(GridLoadRecorder.class).asEagerSingleton();
+				addQSimComponentBinding(EvModule.EV_COMPONENT).to(GridLoadRecorder.class);
+				if (feeders) {
+					// registers itself as a minute listener of the GridLoadRecorder
+					bind(LinDistFlowEngine.class).asEagerSingleton();
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,154 @@
+package se.urbanEV.grid;
+
+import com.google.inject.Inject;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigGroup;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.core.utils.io.IOUtils;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargerSpecification;
+import se.urbanEV.infrastructure.ChargingInfrastructureSpecification;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assignment of chargers to power grid nodes (feeders or substations), read from gridNodesFile. Two formats are
+ * supported, recognised by their header:
+ * <pre>
+ * chargerId;nodeId        (explicit assignment; chargers not listed are not assigned)
+ * nodeId;x;y              (every charger is assigned to the nearest node)
+ * </pre>
+ * Nodes are indexed in order of first appearance in the file.
+ */
+public class GridNodeMapping {
+	private static final Logger log = Logger.getLogger(GridNodeMapping.class);
+
+	private final List<String> nodeIds = new ArrayList<>();
+	private final Map<String, Integer> nodeIndices = new HashMap<>();
+	private final int[] chargerNodes;// Id.index() -> node, -1 if not assigned
+	private final int[] nodeChargerCounts;
+
+	@Inject
+	public GridNodeMapping(ChargingInfrastructureSpecification infrastructure, Config config,
+			UrbanEVConfigGroup urbanEVCfg) {
+		this(infrastructure, ConfigGroup.getInputFileURL(config.getContext(), urbanEVCfg.getGridNodesFile()));
+	}
+
+	public GridNodeMapping(ChargingInfrastructureSpecification infrastructure, URL gridNodesUrl) {
+		chargerNodes = new int[Id.getNumberOfIds(Charger.class)];
+		Arrays.fill(chargerNodes, -1);
+
+		List<String[]> rows = new ArrayList<>();
+		String[] header;
+		try (BufferedReader reader = IOUtils.getBufferedReader(gridNodesUrl)) {
+			String headerLine = reader.readLine();
+			if (headerLine == null) {
+				throw new IllegalArgumentException("Empty grid nodes file: " + gridNodesUrl);
+			}
+			header = headerLine.trim().split(";");
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (!line.isBlank()) {
+					rows.add(line.trim().split(";"));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		int assigned = 0;
+		if (header.length == 2 && header[0].equalsIgnoreCase("chargerId") && header[1].equalsIgnoreCase("nodeId")) {
+			for (String[] row : rows) {
+				Id<Charger> chargerId = Id.create(row[0], Charger.class);
+				if (!infrastructure.getChargerSpecifications().containsKey(chargerId)) {
+					log.warn("Unknown charger in grid nodes file: " + chargerId);
+					continue;
+				}
+				chargerNodes[chargerId.index()] = getOrAddNode(row[1]);
+				assigned++;
+			}
+		} else if (header.length == 3 && header[0].equalsIgnoreCase("nodeId") && header[1].equalsIgnoreCase("x")
+				&& header[2].equalsIgnoreCase("y")) {
+			Coord[] nodeCoords = new Coord[rows.size()];
+			for (int i = 0; i < rows.size(); i++) {
+				String[] row = rows.get(i);
+				if (getOrAddNode(row[0]) != i) {
+					throw new IllegalArgumentException("Duplicate grid node: " + row[0]);
+				}
+				nodeCoords[i] = new Coord(Double.parseDouble(row[1]), Double.parseDouble(row[2]));
+			}
+			if (nodeCoords.length == 0) {
+				throw new IllegalArgumentException("No grid nodes in " + gridNodesUrl);
+			}
+			for (ChargerSpecification charger : infrastructure.getChargerSpecifications().values()) {
+				int nearest = 0;
+				double nearestDistance = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < nodeCoords.length; i++) {
+					double distance = CoordUtils.calcEuclideanDistance(charger.getCoord(), nodeCoords[i]);
+					if (distance < nearestDistance) {
+						nearest = i;
+						nearestDistance = distance;
+					}
+				}
+				chargerNodes[charger.getId().index()] = nearest;
+				assigned++;
+			}
+		} else {
+			throw new IllegalArgumentException("Unexpected grid nodes file header (expected chargerId;nodeId or "
+					+ "nodeId;x;y): " + String.join(";", header));
+		}
+
+		nodeChargerCounts = new int[nodeIds.size()];
+		for (int node : chargerNodes) {
+			if (node >= 0) {
+				nodeChargerCounts[node]++;
+			}
+		}
+		log.info(assigned + " of " + infrastructure.getChargerSpecifications().size() + " chargers assigned to "
+				+ nodeIds.size() + " grid nodes");
+	}
+
+	private int getOrAddNode(String nodeId) {
+		return nodeIndices.computeIfAbsent(nodeId, id -> {
+			nodeIds.add(id);
+			return nodeIds.size() - 1;
+		});
+	}
+
+	public int getNodeCount() {
+		return nodeIds.size();
+	}
+
+	public String getNodeId(int node) {
+		return nodeIds.get(node);
+	}
+
+	/**
+	 * @return node index, -1 if there is no such node
+	 */
+	public int getNodeIndex(String nodeId) {
+		return nodeIndices.getOrDefault(nodeId, -1);
+	}
+
+	/**
+	 * @return node index, -1 if the charger is not assigned to any node
+	 */
+	public int getNode(Id<Charger> chargerId) {
+		return chargerId.index() < chargerNodes.length ? chargerNodes[chargerId.index()] : -1;
+	}
+
+	public int getChargerCount(int node) {
+		return nodeChargerCounts[node];
+	}
+}
@@ -0,0 +1,247 @@
+package se.urbanEV.grid;
+
+import com.google.inject.Inject;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.log4j.Logger;
+import org.matsim.contrib.ev.EvUnits;
+import org.matsim.core.controler.IterationCounter;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.misc.Time;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.stats.EvOutputWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Voltage drop and branch loading of the radial feeders ({@link FeederTopology}) under the charging load recorded by
+ * {@link GridLoadRecorder}, from the linearised DistFlow equations (losses neglected):
+ * <pre>
+ * P_ij = sum of the active loads downstream of j     (likewise Q_ij)
+ * U_j  = U_i - 2 (r_ij P_ij + x_ij Q_ij)             (U = squared voltage)
+ * </pre>
+ * The charging power of each grid node is averaged over 15-minute slots while the simulation runs. After the
+ * iteration, every (feeder, slot) pair is solved independently and in parallel: one backward pass accumulates the
+ * branch flows, one forward pass propagates the voltages, so a feeder with n nodes is solved in O(n). The minimum
+ * voltage and maximum branch loading per feeder and slot are written to {@value #FILE} and the worst values per
+ * feeder to {@value #SUMMARY_FILE}.
+ */
+public class LinDistFlowEngine implements GridLoadRecorder.MinuteListener {
+	private static final Logger log = Logger.getLogger(LinDistFlowEngine.class);
+
+	public static final String FILE = "gridImpact.csv.gz";
+	public static final String SUMMARY_FILE = "gridImpactSummary.csv";
+	public static final int SLOT_MINUTES = 15;
+
+	private static final double SECS_PER_MINUTE = 60;
+
+	private final FeederTopology topology;
+	private final int[] loadNodes;// feeder node -> grid node of GridNodeMapping, -1 if none
+	private final int gridNodeCount;
+	private final double reactiveToActive;// Q/P of the charging load
+	private final OutputDirectoryHierarchy controlerIO;
+	private final IterationCounter iterationCounter;
+	private final EvOutputWriter outputWriter;
+
+	private double[] slotPowers = new double[0];// [W], [slot * gridNodeCount + gridNode]
+	private int slotCount;
+
+	@Inject
+	public LinDistFlowEngine(FeederTopology topology, GridLoadRecorder gridLoadRecorder, UrbanEVConfigGroup urbanEVCfg,
+			OutputDirectoryHierarchy controlerIO, IterationCounter iterationCounter, EvOutputWriter outputWriter) {
+		this.topology = topology;
+		this.controlerIO = controlerIO;
+		this.iterationCounter = iterationCounter;
+		this.outputWriter = outputWriter;
+
+		GridNodeMapping mapping = gridLoadRecorder.getMapping();
+		gridNodeCount = mapping.getNodeCount();
+		loadNodes = new int[topology.getNodeCount()];
+		int loaded = 0;
+		for (int node = 0; node < loadNodes.length; node++) {
+			loadNodes[node] = mapping.getNodeIndex(topology.getNodeId(node));
+			if (loadNodes[node] >= 0) {
+				loaded++;
+			}
+		}
+		if (loaded < gridNodeCount) {
+			log.warn((gridNodeCount - loaded) + " of " + gridNodeCount + " grid nodes are not part of any feeder");
+		}
+
+		double powerFactor = urbanEVCfg.getGridLoadPowerFactor();
+		if (!(powerFactor > 0 && powerFactor <= 1)) {
+			throw new IllegalArgumentException("gridLoadPowerFactor must be in (0, 1]: " + powerFactor);
+		}
+		reactiveToActive = Math.sqrt(1 - powerFactor * powerFactor) / powerFactor;
+		gridLoadRecorder.addMinuteListener(this);
+	}
+
+	@Override
+	public void notifyMinuteCompleted(long minute, GridLoadRecorder recorder) {
+		int slot = (int)(minute / SLOT_MINUTES);
+		if (slot >= slotCount) {
+			slotCount = slot + 1;
+			if (slotCount * gridNodeCount > slotPowers.length) {
+				slotPowers = Arrays.copyOf(slotPowers, Math.max(slotCount * gridNodeCount, 2 * slotPowers.length));
+			}
+		}
+		int offset = slot * gridNodeCount;
+		for (int node = 0; node < gridNodeCount; node++) {
+			slotPowers[offset + node] += recorder.getPower(node, minute) / SLOT_MINUTES;
+		}
+	}
+
+	@Override
+	public void notifyRecordingCompleted(GridLoadRecorder recorder) {
+		int iteration = iterationCounter.getIterationNumber();
+		String file = controlerIO.getIterationFilename(iteration, FILE);
+		String summaryFile = controlerIO.getIterationFilename(iteration, SUMMARY_FILE);
+		// this engine is QSim-scoped, so the slot powers are not modified after this point; solving is part of the
+		// output task as nothing else depends on the results
+		outputWriter.submit(file, () -> {
+			Results results = solveAll();
+			write(results, file, summaryFile);
+		});
+	}
+
+	private static class Results {
+		final int slots;
+		final double[] minVoltages;// [pu], [feeder * slots + slot]
+		final int[] minVoltageNodes;
+		final double[] maxLoadings;// [-], NaN if no branch is rated
+		final int[] maxLoadingNodes;
+		final double[] loads;// [W]
+
+		Results(int feeders, int slots) {
+			this.slots = slots;
+			minVoltages = new double[feeders * slots];
+			minVoltageNodes = new int[feeders * slots];
+			maxLoadings = new double[feeders * slots];
+			maxLoadingNodes = new int[feeders * slots];
+			loads = new double[feeders * slots];
+		}
+	}
+
+	private Results solveAll() {
+		int feeders = topology.getFeederCount();
+		Results results = new Results(feeders, slotCount);
+		int maxFeederSize = topology.getMaxFeederSize();
+		ThreadLocal<double[][]> buffers = ThreadLocal.withInitial(
+				() -> new double[][] { new double[maxFeederSize], new double[maxFeederSize] });
+		long start = System.nanoTime();
+		IntStream.range(0, feeders * slotCount).parallel().forEach(i -> {
+			double[][] buffer = buffers.get();
+			solve(i / slotCount, i % slotCount, buffer[0], buffer[1], results, i);
+		});
+		log.info("LinDistFlow: " + feeders + " feeders x " + slotCount + " slots solved in "
+				+ (System.nanoTime() - start) / 1_000_000 + " ms");
+		return results;
+	}
+
+	/**
+	 * @param flows    work array of at least the feeder size; on return: active branch flows [W]
+	 * @param voltages work array of at least the feeder size; on return: squared voltages [V^2]
+	 */
+	private void solve(int feeder, int slot, double[] flows, double[] voltages, Results results, int resultIndex) {
+		int start = topology.getFeederStart(feeder);
+		int end = topology.getFeederStart(feeder + 1);
+		int slotOffset = slot * gridNodeCount;
+
+		// backward pass: flow into each node = its own load plus the flows into its children
+		for (int n = start; n < end; n++) {
+			int loadNode = loadNodes[n];
+			flows[n - start] = loadNode >= 0 ? slotPowers[slotOffset + loadNode] : 0;
+		}
+		for (int n = end - 1; n > start; n--) {
+			flows[topology.getParent(n) - start] += flows[n - start];
+		}
+
+		// forward pass (parents precede their children)
+		double nominalVoltage = topology.getNominalVoltage(feeder);
+		voltages[0] = nominalVoltage * nominalVoltage;
+		double minVoltage = voltages[0];
+		int minVoltageNode = start;
+		double maxLoading = Double.NaN;
+		int maxLoadingNode = -1;
+		for (int n = start + 1; n < end; n++) {
+			double p = flows[n - start];
+			double q = p * reactiveToActive;
+			double u = voltages[topology.getParent(n) - start]
+					- 2 * (topology.getResistance(n) * p + topology.getReactance(n) * q);
+			voltages[n - start] = u;
+			if (u < minVoltage) {
+				minVoltage = u;
+				minVoltageNode = n;
+			}
+			double rating = topology.getRating(n);
+			if (rating > 0) {
+				double loading = Math.sqrt(p * p + q * q) / rating;
+				if (!(loading <= maxLoading)) {// also replaces NaN
+					maxLoading = loading;
+					maxLoadingNode = n;
+				}
+			}
+		}
+
+		results.minVoltages[resultIndex] = Math.sqrt(Math.max(minVoltage, 0)) / nominalVoltage;
+		results.minVoltageNodes[resultIndex] = minVoltageNode;
+		results.maxLoadings[resultIndex] = maxLoading;
+		results.maxLoadingNodes[resultIndex] = maxLoadingNode;
+		results.loads[resultIndex] = flows[0];
+	}
+
+	private void write(Results results, String file, String summaryFile) throws IOException {
+		int feeders = topology.getFeederCount();
+		try (CSVPrinter csvPrinter = new CSVPrinter(IOUtils.getBufferedWriter(file),
+				CSVFormat.DEFAULT.withDelimiter(';')
+						.withHeader("feederId", "slot", "time", "load_kW", "minVoltage_pu", "minVoltageNode",
+								"maxLoading", "maxLoadingBranch"))) {
+			for (int f = 0; f < feeders; f++) {
+				for (int s = 0; s < results.slots; s++) {
+					int i = f * results.slots + s;
+					csvPrinter.printRecord(topology.getFeederId(f), s, Time.writeTime(getSlotStart(s)),
+							EvUnits.W_to_kW(results.loads[i]), results.minVoltages[i],
+							topology.getNodeId(results.minVoltageNodes[i]), results.maxLoadings[i],
+							results.maxLoadingNodes[i] >= 0 ? topology.getNodeId(results.maxLoadingNodes[i]) : "");
+				}
+			}
+		}
+
+		try (CSVPrinter csvPrinter = new CSVPrinter(Files.newBufferedWriter(Paths.get(summaryFile)),
+				CSVFormat.DEFAULT.withDelimiter(';')
+						.withHeader("feederId", "peakLoad_kW", "minVoltage_pu", "minVoltageTime", "maxLoading",
+								"maxLoadingTime"))) {
+			for (int f = 0; f < feeders; f++) {
+				double peakLoad = 0;
+				int minVoltageSlot = -1;
+				int maxLoadingSlot = -1;
+				for (int s = 0; s < results.slots; s++) {
+					int i = f * results.slots + s;
+					peakLoad = Math.max(peakLoad, results.loads[i]);
+					if (minVoltageSlot < 0 || results.minVoltages[i] < results.minVoltages[f * results.slots
+							+ minVoltageSlot]) {
+						minVoltageSlot = s;
+					}
+					if (!Double.isNaN(results.maxLoadings[i]) && (maxLoadingSlot < 0
+							|| results.maxLoadings[i] > results.maxLoadings[f * results.slots + maxLoadingSlot])) {
+						maxLoadingSlot = s;
+					}
+				}
+				csvPrinter.printRecord(topology.getFeederId(f), EvUnits.W_to_kW(peakLoad),
+						minVoltageSlot >= 0 ? results.minVoltages[f * results.slots + minVoltageSlot] : "",
+						minVoltageSlot >= 0 ? Time.writeTime(getSlotStart(minVoltageSlot)) : "",
+						maxLoadingSlot >= 0 ? results.maxLoadings[f * results.slots + maxLoadingSlot] : "",
+						maxLoadingSlot >= 0 ? Time.writeTime(getSlotStart(maxLoadingSlot)) : "");
+			}
+		}
+	}
+
+	private static double getSlotStart(int slot) {
+		return slot * SLOT_MINUTES * SECS_PER_MINUTE;
+	}
+}
@@ -0,0 +1,28 @@
+package se.urbanEV.infrastructure;
+
+import org.matsim.api.core.v01.Id;
+
+/**
+ * Coarse charger category used in the statistics, derived from the charger id (home and work chargers are generated
+ * with "home"/"work" in their ids, all other chargers are public).
+ */
+public enum ChargerCategory {
+	PUBLIC, HOME, WORK;
+
+	public static ChargerCategory of(Id<Charger> chargerId) {
+		String id = chargerId.toString();
+		if (id.contains("work")) {
+			return WORK;
+		} else if (id.contains("home")) {
+			return HOME;
+		}
+		return PUBLIC;
+	}
+
+	/**
+	 * @return lower-case name, as used in output headers
+	 */
+	public String getLabel() {
+		return name().toLowerCase();
+	}
+}
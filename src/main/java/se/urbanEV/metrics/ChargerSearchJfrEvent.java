@@ -0,0 +1,36 @@
+package se.urbanEV.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+/**
+ * One search for a free charger near a charging activity (VehicleChargingHandler.findBestCharger).
+ */
+@Name("se.urbanEV.ChargerSearch")
+@Label("Charger Search")
+@Category(EvJfrEvents.CATEGORY)
+@Description("Search for the nearest free charger of a fitting type within the parking search radius")
+@Registered(false)
+@StackTrace(false)
+public class ChargerSearchJfrEvent extends Event {
+	@Label("Vehicle")
+	public String vehicleId;
+
+	@Label("Chargers Scanned")
+	public int chargersScanned;
+
+	@Label("Candidates")
+	@Description("Free chargers of a fitting type within the parking search radius")
+	public int candidates;
+
+	@Label("Found")
+	public boolean found;
+
+	@Label("Charger")
+	public String chargerId;
+}
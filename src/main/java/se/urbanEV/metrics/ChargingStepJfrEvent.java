@@ -0,0 +1,31 @@
+package se.urbanEV.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+/**
+ * One charging step of all chargers (ChargingHandler, every chargeTimeStep).
+ */
+@Name("se.urbanEV.ChargingStep")
+@Label("Charging Step")
+@Category(EvJfrEvents.CATEGORY)
+@Description("Charging of the plugged vehicles at all chargers for one charge time step")
+@Registered(false)
+@StackTrace(false)
+public class ChargingStepJfrEvent extends Event {
+	@Label("Simulation Time")
+	@Description("[s]")
+	public double simTime;
+
+	@Label("Chargers")
+	public int chargers;
+
+	@Label("Vehicles")
+	@Description("Vehicles plugged at the start of the step")
+	public int vehicles;
+}
@@ -0,0 +1,27 @@
+package se.urbanEV.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+/**
+ * Application of the buffered drive discharging of one sim step (DriveDischargingHandler with batchDriveDischarging).
+ */
+@Name("se.urbanEV.DischargeBatch")
+@Label("Discharge Batch")
+@Category(EvJfrEvents.CATEGORY)
+@Description("Drive discharging of the link traversals buffered during one sim step")
+@Registered(false)
+@StackTrace(false)
+public class DischargeBatchJfrEvent extends Event {
+	@Label("Records")
+	@Description("Link traversals, trip starts and trip ends")
+	public int records;
+
+	@Label("Threads")
+	public int threads;
+}
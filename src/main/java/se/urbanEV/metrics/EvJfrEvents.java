@@ -0,0 +1,27 @@
+package se.urbanEV.metrics;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * The Java Flight Recorder events of the EV hot paths. They are declared {@code @Registered(false)}, so they are only
+ * recorded after {@link #register()} (see the jfrEvents parameter of the urban_ev group); until then, creating and
+ * committing them does nothing.
+ * <p>
+ * The events are in the category "UrbanEV" and have no stack traces. Their fields are set only if
+ * {@code shouldCommit()} returns true, i.e. if the event is registered, enabled in the recording settings and above
+ * the duration threshold.
+ */
+public final class EvJfrEvents {
+	public static final String CATEGORY = "UrbanEV";
+
+	private EvJfrEvents() {
+	}
+
+	public static void register() {
+		FlightRecorder.register(ChargerSearchJfrEvent.class);
+		FlightRecorder.register(SmartChargingDecisionJfrEvent.class);
+		FlightRecorder.register(ChargingStepJfrEvent.class);
+		FlightRecorder.register(DischargeBatchJfrEvent.class);
+		FlightRecorder.register(OutputWriteJfrEvent.class);
+	}
+}
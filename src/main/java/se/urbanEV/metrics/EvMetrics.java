@@ -0,0 +1,250 @@
+package se.urbanEV.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers, counters and histograms of the EV modules, shared by all modules of a run (like
+ * {@link se.urbanEV.stats.ChargingBehaviorScoresCollector}) and reset at every iteration start (see
+ * {@link EvPerformanceReport}).
+ * <p>
+ * Metrics are disabled by default. {@link Timer#start()} then returns without reading the clock, and stopping timers,
+ * incrementing counters and recording values does nothing, so the modules keep their metrics in final fields and
+ * update them unconditionally. All metrics can be updated from any thread (event handlers run on the events thread,
+ * engines and after-sim-step listeners on the mobsim thread, batch discharging on the dedicated pool of
+ * {@link se.urbanEV.discharging.DriveDischargingHandler}, threads "ev-drive-discharging-*"); they are striped sums, so
+ * their totals are summed over all threads.
+ */
+public final class EvMetrics {
+	private static final EvMetrics INSTANCE = new EvMetrics();
+	private static final long NOT_STARTED = Long.MIN_VALUE;
+
+	public static EvMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	private final Map<String, Timer> timers = new LinkedHashMap<>();
+	private final Map<String, Counter> counters = new LinkedHashMap<>();
+	private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+	private volatile boolean enabled = false;
+
+	private EvMetrics() {
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return the timer with this name, created on first use (e.g. "ChargingHandler.step")
+	 */
+	public synchronized Timer timer(String name) {
+		return timers.computeIfAbsent(name, Timer::new);
+	}
+
+	public synchronized Counter counter(String name) {
+		return counters.computeIfAbsent(name, Counter::new);
+	}
+
+	/**
+	 * @param upperBounds inclusive upper bounds of the buckets, ascending; values above the last bound are only
+	 *                    counted in the total (as in the +Inf bucket of Prometheus)
+	 * @throws IllegalArgumentException if a histogram of this name exists with other bounds
+	 */
+	public synchronized Histogram histogram(String name, double... upperBounds) {
+		Histogram histogram = histograms.computeIfAbsent(name, n -> new Histogram(n, upperBounds));
+		if (!Arrays.equals(histogram.upperBounds, upperBounds)) {
+			throw new IllegalArgumentException("Histogram " + name + " exists with other bounds");
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return all timers in the order of their creation
+	 */
+	public synchronized List<Timer> getTimers() {
+		return new ArrayList<>(timers.values());
+	}
+
+	public synchronized List<Counter> getCounters() {
+		return new ArrayList<>(counters.values());
+	}
+
+	public synchronized List<Histogram> getHistograms() {
+		return new ArrayList<>(histograms.values());
+	}
+
+	/**
+	 * Sets all totals to zero, e.g. at the start of an iteration.
+	 */
+	public synchronized void reset() {
+		timers.values().forEach(Timer::reset);
+		counters.values().forEach(Counter::reset);
+		histograms.values().forEach(Histogram::reset);
+	}
+
+	public final class Timer {
+		private final String name;
+		private final LongAdder nanos = new LongAdder();
+		private final LongAdder count = new LongAdder();
+
+		private Timer(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @return the start time, to be passed to {@link #stop(long)}
+		 */
+		public long start() {
+			return enabled ? System.nanoTime() : NOT_STARTED;
+		}
+
+		public void stop(long start) {
+			if (start != NOT_STARTED) {
+				nanos.add(System.nanoTime() - start);
+				count.increment();
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getTotalNanos() {
+			return nanos.sum();
+		}
+
+		public double getTotalSeconds() {
+			return nanos.sum() * 1e-9;
+		}
+
+		private void reset() {
+			nanos.reset();
+			count.reset();
+		}
+	}
+
+	public final class Counter {
+		private final String name;
+		private final LongAdder value = new LongAdder();
+
+		private Counter(String name) {
+			this.name = name;
+		}
+
+		public void increment() {
+			if (enabled) {
+				value.increment();
+			}
+		}
+
+		public void add(long delta) {
+			if (enabled) {
+				value.add(delta);
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getValue() {
+			return value.sum();
+		}
+
+		private void reset() {
+			value.reset();
+		}
+	}
+
+	public final class Histogram {
+		private final String name;
+		private final double[] upperBounds;
+		private final LongAdder[] bucketCounts;
+		private final LongAdder count = new LongAdder();
+		private final DoubleAdder sum = new DoubleAdder();
+
+		private Histogram(String name, double[] upperBounds) {
+			for (int i = 1; i < upperBounds.length; i++) {
+				if (!(upperBounds[i] > upperBounds[i - 1])) {
+					throw new IllegalArgumentException(
+							"Bucket bounds must be ascending: " + Arrays.toString(upperBounds));
+				}
+			}
+			this.name = name;
+			this.upperBounds = upperBounds.clone();
+			bucketCounts = new LongAdder[upperBounds.length];
+			for (int i = 0; i < bucketCounts.length; i++) {
+				bucketCounts[i] = new LongAdder();
+			}
+		}
+
+		public void record(double value) {
+			if (!enabled) {
+				return;
+			}
+			int bucket = Arrays.binarySearch(upperBounds, value);
+			if (bucket < 0) {
+				bucket = -bucket - 1;// first bound above the value
+			}
+			if (bucket < bucketCounts.length) {
+				bucketCounts[bucket].increment();
+			}
+			count.increment();
+			sum.add(value);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public double[] getUpperBounds() {
+			return upperBounds.clone();
+		}
+
+		/**
+		 * @return the number of values in each bucket (not cumulative)
+		 */
+		public long[] getBucketCounts() {
+			long[] counts = new long[bucketCounts.length];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = bucketCounts[i].sum();
+			}
+			return counts;
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public double getSum() {
+			return sum.sum();
+		}
+
+		public double getMean() {
+			long n = count.sum();
+			return n == 0 ? Double.NaN : sum.sum() / n;
+		}
+
+		private void reset() {
+			for (LongAdder bucketCount : bucketCounts) {
+				bucketCount.reset();
+			}
+			count.reset();
+			sum.reset();
+		}
+	}
+}
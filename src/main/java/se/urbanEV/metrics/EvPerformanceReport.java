@@ -0,0 +1,186 @@
+package se.urbanEV.metrics;
+
+import com.google.inject.Inject;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.log4j.Logger;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import se.urbanEV.config.UrbanEVConfigGroup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Resets the {@link EvMetrics} at every iteration start and writes them at the iteration end, one row per value, to
+ * {@value #CSV_FILE} in the output directory (next to scoringComponents.csv):
+ * <ul>
+ * <li>timers: {@code <name>.count} (e.g. the events handled by a handler) and {@code <name>.seconds}</li>
+ * <li>counters: {@code <name>}</li>
+ * <li>histograms: {@code <name>.count}, {@code <name>.sum} and {@code <name>.mean}</li>
+ * <li>{@code iteration.seconds}, {@code allocatedBytes} and {@code allocationRate} [bytes/s]: the bytes allocated by
+ * all threads during the iteration (per-thread counters of {@link com.sun.management.ThreadMXBean}; the allocations
+ * of threads that terminated during the iteration are missing)</li>
+ * </ul>
+ * Output tasks that run in the background may finish in the next iteration and are then counted there.
+ * <p>
+ * If evPerformancePrometheusFile is set, that file is replaced with the same values in the Prometheus text format, with
+ * the metric name as a label and buckets for the histograms.
+ */
+public class EvPerformanceReport implements IterationStartsListener, IterationEndsListener {
+	private static final Logger log = Logger.getLogger(EvPerformanceReport.class);
+
+	public static final String CSV_FILE = "ev_performance.csv";
+
+	@Inject
+	private OutputDirectoryHierarchy controlerIO;
+
+	@Inject
+	private UrbanEVConfigGroup urbanEVCfg;
+
+	private final com.sun.management.ThreadMXBean threadBean;// null if allocations cannot be measured
+	private Map<Long, Long> allocatedBytesAtStart;
+	private long iterationStart;
+
+	public EvPerformanceReport() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()) {
+			threadBean = (com.sun.management.ThreadMXBean)bean;
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			log.warn("Thread allocation counters are not supported by this JVM; allocatedBytes will be missing");
+			threadBean = null;
+		}
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		EvMetrics.getInstance().reset();
+		allocatedBytesAtStart = getAllocatedBytesPerThread();
+		iterationStart = System.nanoTime();
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		double seconds = (System.nanoTime() - iterationStart) * 1e-9;
+		EvMetrics metrics = EvMetrics.getInstance();
+
+		Map<String, Number> values = new LinkedHashMap<>();
+		values.put("iteration.seconds", seconds);
+		for (EvMetrics.Timer timer : metrics.getTimers()) {
+			values.put(timer.getName() + ".count", timer.getCount());
+			values.put(timer.getName() + ".seconds", timer.getTotalSeconds());
+		}
+		for (EvMetrics.Counter counter : metrics.getCounters()) {
+			values.put(counter.getName(), counter.getValue());
+		}
+		for (EvMetrics.Histogram histogram : metrics.getHistograms()) {
+			values.put(histogram.getName() + ".count", histogram.getCount());
+			values.put(histogram.getName() + ".sum", histogram.getSum());
+			values.put(histogram.getName() + ".mean", histogram.getMean());
+		}
+		if (threadBean != null) {
+			long allocatedBytes = 0;
+			for (Map.Entry<Long, Long> thread : getAllocatedBytesPerThread().entrySet()) {
+				allocatedBytes += thread.getValue() - allocatedBytesAtStart.getOrDefault(thread.getKey(), 0L);
+			}
+			values.put("allocatedBytes", allocatedBytes);
+			values.put("allocationRate", allocatedBytes / seconds);
+		}
+
+		writeCsv(event.getIteration(), values);
+		String prometheusFile = urbanEVCfg.getEvPerformancePrometheusFile();
+		if (prometheusFile != null) {
+			writePrometheus(Paths.get(controlerIO.getOutputPath()).resolve(prometheusFile), event.getIteration(),
+					values, metrics);
+		}
+	}
+
+	private Map<Long, Long> getAllocatedBytesPerThread() {
+		Map<Long, Long> allocatedBytes = new HashMap<>();
+		if (threadBean != null) {
+			long[] threadIds = threadBean.getAllThreadIds();
+			long[] bytes = threadBean.getThreadAllocatedBytes(threadIds);
+			for (int i = 0; i < threadIds.length; i++) {
+				if (bytes[i] >= 0) {// -1 if the thread has terminated in between
+					allocatedBytes.put(threadIds[i], bytes[i]);
+				}
+			}
+		}
+		return allocatedBytes;
+	}
+
+	private void writeCsv(int iteration, Map<String, Number> values) {
+		Path file = Paths.get(controlerIO.getOutputPath(), CSV_FILE);
+		boolean newFile = !Files.exists(file);
+		CSVFormat format = CSVFormat.DEFAULT.withDelimiter(';');
+		try (CSVPrinter csvPrinter = new CSVPrinter(
+				Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+				newFile ? format.withHeader("iteration", "metric", "value") : format)) {
+			for (Map.Entry<String, Number> value : values.entrySet()) {
+				csvPrinter.printRecord(iteration, value.getKey(), value.getValue());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Writing " + CSV_FILE + " failed", e);
+		}
+	}
+
+	/**
+	 * Written to a temporary file that then replaces the target, so that scrapers never see a partial file.
+	 */
+	private static void writePrometheus(Path file, int iteration, Map<String, Number> values, EvMetrics metrics) {
+		Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(tmpFile)) {
+				writer.write("# HELP urbanev_iteration MATSim iteration of the EV metrics\n");
+				writer.write("# TYPE urbanev_iteration gauge\n");
+				writer.write("urbanev_iteration " + iteration + "\n");
+				writer.write("# HELP urbanev_metric EV metrics of the last iteration (see " + CSV_FILE + ")\n");
+				writer.write("# TYPE urbanev_metric gauge\n");
+				for (Map.Entry<String, Number> value : values.entrySet()) {
+					writer.write("urbanev_metric{name=\"" + value.getKey() + "\"} " + format(value.getValue()) + "\n");
+				}
+				writer.write("# HELP urbanev_histogram EV histograms of the last iteration\n");
+				writer.write("# TYPE urbanev_histogram histogram\n");
+				for (EvMetrics.Histogram histogram : metrics.getHistograms()) {
+					String name = "name=\"" + histogram.getName() + "\"";
+					double[] upperBounds = histogram.getUpperBounds();
+					long[] bucketCounts = histogram.getBucketCounts();
+					long cumulativeCount = 0;
+					for (int i = 0; i < upperBounds.length; i++) {
+						cumulativeCount += bucketCounts[i];
+						writer.write("urbanev_histogram_bucket{" + name + ",le=\"" + format(upperBounds[i]) + "\"} "
+								+ cumulativeCount + "\n");
+					}
+					writer.write("urbanev_histogram_bucket{" + name + ",le=\"+Inf\"} " + histogram.getCount() + "\n");
+					writer.write("urbanev_histogram_sum{" + name + "} " + format(histogram.getSum()) + "\n");
+					writer.write("urbanev_histogram_count{" + name + "} " + histogram.getCount() + "\n");
+				}
+			}
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Writing " + file + " failed", e);
+		}
+	}
+
+	private static String format(Number value) {
+		if (Double.isInfinite(value.doubleValue())) {
+			return value.doubleValue() > 0 ? "+Inf" : "-Inf";
+		}
+		return value.toString();// also NaN, as expected by Prometheus
+	}
+}
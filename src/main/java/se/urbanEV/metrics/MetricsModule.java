@@ -0,0 +1,23 @@
+package se.urbanEV.metrics;
+
+import com.google.inject.Inject;
+import org.matsim.core.controler.AbstractModule;
+import se.urbanEV.config.UrbanEVConfigGroup;
+
+public class MetricsModule extends AbstractModule {
+	@Inject
+	private UrbanEVConfigGroup urbanEVCfg;
+
+	@Override
+	public void install() {
+		if (urbanEVCfg.isJfrEvents()) {
+			// JVM-wide, the events are recorded from now on
+			EvJfrEvents.register();
+		}
+		if (urbanEVCfg.isEvPerformanceMetrics()) {
+			EvMetrics.getInstance().setEnabled(true);
+			bind(EvPerformanceReport.class).asEagerSingleton();
+			addControlerListenerBinding().to(EvPerformanceReport.class);
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package se.urbanEV.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+/**
+ * One output task of the EV statistics (EvOutputWriter), in the thread that runs it.
+ */
+@Name("se.urbanEV.OutputWrite")
+@Label("EV Output Write")
+@Category(EvJfrEvents.CATEGORY)
+@Description("Writing of an iteration output file of the EV statistics")
+@Registered(false)
+@StackTrace(false)
+public class OutputWriteJfrEvent extends Event {
+	@Label("Output")
+	public String name;
+
+	@Label("Background")
+	@Description("Whether the task ran on an output writer thread instead of the submitting thread")
+	public boolean background;
+}
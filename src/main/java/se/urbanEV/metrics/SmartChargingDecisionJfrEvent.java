@@ -0,0 +1,50 @@
+package se.urbanEV.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+/**
+ * The choice of the charging start time of a home charging session with smart charging, i.e. the ToU optimisation
+ * and whether the session is deferred.
+ */
+@Name("se.urbanEV.SmartChargingDecision")
+@Label("Smart Charging Decision")
+@Category(EvJfrEvents.CATEGORY)
+@Description("Choice of the charging start time of a home charging session within its parking window")
+@Registered(false)
+@StackTrace(false)
+public class SmartChargingDecisionJfrEvent extends Event {
+	@Label("Vehicle")
+	public String vehicleId;
+
+	@Label("Charger")
+	public String chargerId;
+
+	@Label("Aware")
+	@Description("Whether the person reacts to the time-of-use tariff")
+	public boolean aware;
+
+	@Label("Arrival Time")
+	@Description("Simulation time [s]")
+	public double arrivalTime;
+
+	@Label("Departure Time")
+	@Description("Simulation time [s]")
+	public double departureTime;
+
+	@Label("Charging Duration")
+	@Description("Estimated time to charge the missing energy [s]")
+	public double chargingDuration;
+
+	@Label("Start Time")
+	@Description("Chosen charging start, simulation time [s]")
+	public double startTime;
+
+	@Label("Deferred")
+	public boolean deferred;
+}
@@ -0,0 +1,98 @@
+package se.urbanEV.stats;
+
+import com.google.inject.Inject;
+import org.matsim.api.core.v01.Id;
+import org.matsim.contrib.ev.MobsimScopeEventHandler;
+import se.urbanEV.MobsimScopeEventHandling;
+import se.urbanEV.charging.ChargingStartEvent;
+import se.urbanEV.charging.ChargingStartEventHandler;
+import se.urbanEV.charging.UnpluggingEvent;
+import se.urbanEV.charging.UnpluggingEventHandler;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargerCategory;
+import se.urbanEV.infrastructure.ChargingInfrastructure;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Numbers of plugged vehicles (in total, per {@link ChargerCategory} and per charger), updated on every
+ * {@link ChargingStartEvent} and {@link UnpluggingEvent}, so that the occupancy profiles do not need to visit every
+ * charger at each sample. Chargers whose count changed since the last {@link #pollChangedChargers()} are tracked for
+ * the XY output.
+ */
+public class ChargerOccupancyCounters
+		implements ChargingStartEventHandler, UnpluggingEventHandler, MobsimScopeEventHandler {
+	private final Charger[] chargers;
+	private final int[] chargerIndices;// Id.index() -> index in chargers, -1 if not a charger
+	private final ChargerCategory[] categories;
+
+	private final int[] pluggedByCharger;
+	private final int[] pluggedByCategory = new int[ChargerCategory.values().length];
+	private int plugged;
+	private final BitSet changedChargers;
+
+	@Inject
+	public ChargerOccupancyCounters(ChargingInfrastructure chargingInfrastructure, MobsimScopeEventHandling events) {
+		chargers = chargingInfrastructure.getChargers().values().toArray(new Charger[0]);
+		chargerIndices = new int[Id.getNumberOfIds(Charger.class)];
+		Arrays.fill(chargerIndices, -1);
+		categories = new ChargerCategory[chargers.length];
+		for (int i = 0; i < chargers.length; i++) {
+			chargerIndices[chargers[i].getId().index()] = i;
+			categories[i] = ChargerCategory.of(chargers[i].getId());
+		}
+		pluggedByCharger = new int[chargers.length];
+		changedChargers = new BitSet(chargers.length);
+		changedChargers.set(0, chargers.length);// the first poll reports all chargers
+		events.addMobsimScopeHandler(this);
+	}
+
+	@Override
+	public void handleEvent(ChargingStartEvent event) {
+		update(event.getChargerId(), 1);
+	}
+
+	@Override
+	public void handleEvent(UnpluggingEvent event) {
+		update(event.getChargerId(), -1);
+	}
+
+	private synchronized void update(Id<Charger> chargerId, int delta) {
+		int i = chargerIndices[chargerId.index()];
+		pluggedByCharger[i] += delta;
+		pluggedByCategory[categories[i].ordinal()] += delta;
+		plugged += delta;
+		changedChargers.set(i);
+	}
+
+	public synchronized int getPlugged() {
+		return plugged;
+	}
+
+	public synchronized int getPlugged(ChargerCategory category) {
+		return pluggedByCategory[category.ordinal()];
+	}
+
+	public int getChargerCount() {
+		return chargers.length;
+	}
+
+	public Charger getCharger(int index) {
+		return chargers[index];
+	}
+
+	public synchronized int getPluggedAtCharger(int index) {
+		return pluggedByCharger[index];
+	}
+
+	/**
+	 * @return indices (as in {@link #getCharger(int)}) of the chargers with changed counts since the previous call
+	 * (all chargers on the first call); the set is cleared
+	 */
+	public synchronized BitSet pollChangedChargers() {
+		BitSet changed = (BitSet)changedChargers.clone();
+		changedChargers.clear();
+		return changed;
+	}
+}
@@ -6,65 +6,228 @@ import se.urbanEV.charging.ChargingStartEvent;
 import se.urbanEV.charging.ChargingStartEventHandler;
 import se.urbanEV.charging.UnpluggingEvent;
 import se.urbanEV.charging.UnpluggingEventHandler;
+import se.urbanEV.config.UrbanEVConfigGroup;
 import se.urbanEV.infrastructure.Charger;
 import se.urbanEV.infrastructure.ChargingInfrastructure;
+import org.matsim.api.core.v01.Id;
 import org.matsim.contrib.ev.MobsimScopeEventHandler;
-
-import java.util.HashMap;
+import org.matsim.core.controler.IterationCounter;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.utils.io.IOUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+/**
+ * Logs every change of the number of plugged vehicles at any charger during one QSim run.
+ * <p>
+ * Transitions are appended to a single columnar log (charger index, time, count) held in primitive arrays, so no
+ * values are boxed and transitions with equal timestamps are all kept. The per-charger histories are views into
+ * a copy of the log regrouped by charger, built on the first call to {@link #getOccupancyHistories()}.
+ * <p>
+ * With chargerOccupancyCsvOutput, nothing is kept in memory. Instead, each interval of constant occupancy is written
+ * to {@value #OCCUPANCY_CSV_FILE} as soon as it ends, as (chargerId, start, end, plugged, relative) with times in
+ * seconds. The intervals still open at the end of the simulation are written by {@link #closeOccupancyCsv(double)}.
+ */
 public class ChargerOccupancyHistoryCollector
 		implements ChargingStartEventHandler, UnpluggingEventHandler, MobsimScopeEventHandler {
+	public static final String OCCUPANCY_CSV_FILE = "charger_occupancy.csv.gz";
+	public static final String[] OCCUPANCY_CSV_HEADER = { "chargerId", "start", "end", "plugged", "relative" };
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final Charger[] chargers;
+	private final int[] chargerIndices;// Id.index() -> index in chargers
+	private final int[] pluggedVehicles;
+
+	private int[] logChargers = new int[INITIAL_CAPACITY];
+	private double[] logTimes = new double[INITIAL_CAPACITY];
+	private int[] logCounts = new int[INITIAL_CAPACITY];
+	private int logSize;
 
-	private final ChargingInfrastructure chargingInfrastructure;
 	private Map<Charger, OccupancyHistory> occupancyHistories;
 
+	private final BufferedWriter occupancyCsv;// null unless streaming
+	private final double[] intervalStartTimes;
 
 	@Inject
 	public ChargerOccupancyHistoryCollector(ChargingInfrastructure chargingInfrastructure,
-                                            MobsimScopeEventHandling events) {
-		this.chargingInfrastructure = chargingInfrastructure;
-		this.occupancyHistories = new HashMap<>();
-		for (Charger charger : chargingInfrastructure.getChargers().values()) {
-			occupancyHistories.put(charger, new OccupancyHistory());
+                                            MobsimScopeEventHandling events, UrbanEVConfigGroup urbanEVCfg,
+                                            OutputDirectoryHierarchy controlerIO, IterationCounter iterationCounter) {
+		chargers = chargingInfrastructure.getChargers().values().toArray(new Charger[0]);
+		chargerIndices = new int[Id.getNumberOfIds(Charger.class)];
+		for (int i = 0; i < chargers.length; i++) {
+			chargerIndices[chargers[i].getId().index()] = i;
+		}
+		pluggedVehicles = new int[chargers.length];
+
+		if (urbanEVCfg.isChargerOccupancyCsvOutput()) {
+			occupancyCsv = IOUtils.getBufferedWriter(
+					controlerIO.getIterationFilename(iterationCounter.getIterationNumber(), OCCUPANCY_CSV_FILE));
+			intervalStartTimes = new double[chargers.length];
+			writeLine(String.join(";", OCCUPANCY_CSV_HEADER));
+		} else {
+			occupancyCsv = null;
+			intervalStartTimes = null;
 		}
 		events.addMobsimScopeHandler(this);
 	}
 
 	@Override
 	public void handleEvent(UnpluggingEvent event) {
-		Charger charger = chargingInfrastructure.getChargers().get(event.getChargerId());
-		this.occupancyHistories.get(charger)
-				.addEntry(event.getTime(), charger.getLogic().getPluggedVehicles().size());
+		int charger = chargerIndices[event.getChargerId().index()];
+		addEntry(charger, event.getTime(), pluggedVehicles[charger] - 1);
 	}
 
 	@Override
 	public void handleEvent(ChargingStartEvent event) {
-		Charger charger = chargingInfrastructure.getChargers().get(event.getChargerId());
-		this.occupancyHistories.get(charger)
-				.addEntry(event.getTime(), charger.getLogic().getPluggedVehicles().size());
+		int charger = chargerIndices[event.getChargerId().index()];
+		addEntry(charger, event.getTime(), pluggedVehicles[charger] + 1);
 	}
 
-	public Map<Charger, OccupancyHistory> getOccupancyHistories() { return occupancyHistories; }
+	private void addEntry(int charger, double time, int plugCount) {
+		if (occupancyCsv != null) {
+			writeInterval(charger, intervalStartTimes[charger], time);// the interval with the previous count ends
+			intervalStartTimes[charger] = time;
+		} else {
+			appendToLog(charger, time, plugCount);
+		}
+		pluggedVehicles[charger] = plugCount;
+	}
 
-	class OccupancyHistory {
+	private void appendToLog(int charger, double time, int plugCount) {
+		if (logSize == logTimes.length) {
+			int capacity = logSize + (logSize >> 1);
+			logChargers = Arrays.copyOf(logChargers, capacity);
+			logTimes = Arrays.copyOf(logTimes, capacity);
+			logCounts = Arrays.copyOf(logCounts, capacity);
+		}
+		logChargers[logSize] = charger;
+		logTimes[logSize] = time;
+		logCounts[logSize] = plugCount;
+		logSize++;
+		occupancyHistories = null;
+	}
+
+	public boolean isOccupancyCsvOutput() {
+		return occupancyCsv != null;
+	}
+
+	/**
+	 * Writes the last (open) occupancy interval of every charger, ending at the given time, and closes
+	 * {@value #OCCUPANCY_CSV_FILE}.
+	 */
+	public void closeOccupancyCsv(double endTime) {
+		for (int c = 0; c < chargers.length; c++) {
+			writeInterval(c, intervalStartTimes[c], Math.max(endTime, intervalStartTimes[c]));
+		}
+		try {
+			occupancyCsv.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeInterval(int charger, double start, double end) {
+		int plugged = pluggedVehicles[charger];
+		double relative = Math.round(plugged * 1000.0 / chargers[charger].getPlugCount()) / 1000.0;
+		writeLine(chargers[charger].getId() + ";" + formatTime(start) + ";" + formatTime(end) + ";" + plugged + ";"
+				+ relative);
+	}
 
-		private LinkedHashMap<Double, Integer> pluggedVehicleCounts;
+	private static String formatTime(double time) {
+		return time == (long)time ? Long.toString((long)time) : Double.toString(time);
+	}
 
-		OccupancyHistory() {
+	private void writeLine(String line) {
+		try {
+			occupancyCsv.write(line);
+			occupancyCsv.newLine();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 
-			this.pluggedVehicleCounts = new LinkedHashMap<>();
+	/**
+	 * @return occupancy history of every charger (in the order of the charging infrastructure)
+	 */
+	public Map<Charger, OccupancyHistory> getOccupancyHistories() {
+		if (occupancyHistories == null) {
+			occupancyHistories = groupByCharger();
 		}
+		return occupancyHistories;
+	}
 
-		private void addEntry(double time, int plugCount) {
-			pluggedVehicleCounts.put(time, plugCount);
+	// counting sort by charger index, stable, so each charger keeps its transitions in the logged order
+	private Map<Charger, OccupancyHistory> groupByCharger() {
+		int[] offsets = new int[chargers.length + 1];
+		for (int i = 0; i < logSize; i++) {
+			offsets[logChargers[i] + 1]++;
+		}
+		for (int c = 0; c < chargers.length; c++) {
+			offsets[c + 1] += offsets[c];
 		}
 
-		public Map<Double, Integer> getPluggedVehicleCounts() {
-			return pluggedVehicleCounts;
+		double[] times = new double[logSize];
+		int[] counts = new int[logSize];
+		int[] next = Arrays.copyOf(offsets, chargers.length);
+		for (int i = 0; i < logSize; i++) {
+			int pos = next[logChargers[i]]++;
+			times[pos] = logTimes[i];
+			counts[pos] = logCounts[i];
 		}
 
+		Map<Charger, OccupancyHistory> histories = new LinkedHashMap<>();
+		for (int c = 0; c < chargers.length; c++) {
+			histories.put(chargers[c], new OccupancyHistory(times, counts, offsets[c], offsets[c + 1]));
+		}
+		return histories;
 	}
 
+	public static class OccupancyHistory {
+		/**
+		 * @param times transition times, in chronological order
+		 * @param counts number of plugged vehicles after each transition
+		 */
+		public static OccupancyHistory of(double[] times, int[] counts) {
+			if (times.length != counts.length) {
+				throw new IllegalArgumentException("times and counts differ in length");
+			}
+			return new OccupancyHistory(times, counts, 0, times.length);
+		}
+
+		private final double[] times;
+		private final int[] counts;
+		private final int from;
+		private final int to;
+
+		private OccupancyHistory(double[] times, int[] counts, int from, int to) {
+			this.times = times;
+			this.counts = counts;
+			this.from = from;
+			this.to = to;
+		}
+
+		/**
+		 * @return number of transitions
+		 */
+		public int size() {
+			return to - from;
+		}
+
+		public double getTime(int i) {
+			return times[from + i];
+		}
+
+		/**
+		 * @return number of plugged vehicles after the i-th transition
+		 */
+		public int getPluggedVehicleCount(int i) {
+			return counts[from + i];
+		}
+	}
 }
@@ -1,10 +1,14 @@
 package se.urbanEV.stats;
 
 import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargerSpecification;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
 import org.matsim.core.utils.collections.Tuple;
 import org.matsim.core.utils.io.MatsimXmlWriter;
 import org.matsim.core.utils.misc.Time;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -15,27 +19,52 @@ import java.util.Map;
  * Activity Type is set between 0 and 1 and indicates charger occupancy
  *
  * charger_occupancy_absolute.xy.gz can also be imported to via...
+ *
+ * Chargers are taken either from the simulation or, for converting a streamed charger_occupancy.csv.gz, from the
+ * charger specifications (see se.urbanEV.tools.ChargerOccupancyCsvToPlan)
  */
 
 public class ChargerOccupancyPlanWriter extends MatsimXmlWriter {
-	private final Map<Charger, ChargerOccupancyHistoryCollector.OccupancyHistory> occupancyHistories;
+	private final List<Runnable> chargerWriters = new ArrayList<>();
 
 	public ChargerOccupancyPlanWriter(Map<Charger, ChargerOccupancyHistoryCollector.OccupancyHistory> occupancyHistories) {
-		this.occupancyHistories = occupancyHistories;
+		occupancyHistories.forEach((charger, history) -> chargerWriters.add(
+				() -> writeChargerOccupancy(charger.getId(), charger.getCoord(), charger.getPlugCount(), history)));
+	}
+
+	/**
+	 * @param chargers            specifications of the chargers, written in this order
+	 * @param occupancyHistories  histories per charger id; chargers without history are written as unoccupied
+	 */
+	public ChargerOccupancyPlanWriter(Iterable<? extends ChargerSpecification> chargers,
+			Map<Id<Charger>, ChargerOccupancyHistoryCollector.OccupancyHistory> occupancyHistories) {
+		ChargerOccupancyHistoryCollector.OccupancyHistory empty = ChargerOccupancyHistoryCollector.OccupancyHistory.of(
+				new double[0], new int[0]);
+		for (ChargerSpecification charger : chargers) {
+			ChargerOccupancyHistoryCollector.OccupancyHistory history = occupancyHistories.getOrDefault(charger.getId(),
+					empty);
+			chargerWriters.add(
+					() -> writeChargerOccupancy(charger.getId(), charger.getCoord(), charger.getPlugCount(), history));
+		}
 	}
 
 	public void write(String file) {
 		openFile(file);
 		writeDoctype("population", "http://www.matsim.org/files/dtd/population_v6.dtd");
 		writeStartTag("population", Collections.<Tuple<String, String>>emptyList());
-		occupancyHistories.forEach(this::writeChargerOccupancy);
+		chargerWriters.forEach(Runnable::run);
 		writeEndTag("population");
 		close();
 	}
 
 	public void writeChargerOccupancy(Charger charger, ChargerOccupancyHistoryCollector.OccupancyHistory history) {
+		writeChargerOccupancy(charger.getId(), charger.getCoord(), charger.getPlugCount(), history);
+	}
+
+	private void writeChargerOccupancy(Id<Charger> chargerId, Coord coord, int plugCount,
+			ChargerOccupancyHistoryCollector.OccupancyHistory history) {
 
-		List<Tuple<String, String>> person = Arrays.asList(Tuple.of("id", charger.getId().toString()));
+		List<Tuple<String, String>> person = Arrays.asList(Tuple.of("id", chargerId.toString()));
 		writeStartTag("person", person);
 
 		// attributes
@@ -46,7 +75,7 @@ public class ChargerOccupancyPlanWriter extends MatsimXmlWriter {
 				Tuple.of("name", "plug_count"),
 				Tuple.of("class", "java.lang.Integer"));
 		writeStartTag("attribute", attribute);
-		writeContent(Integer.toString(charger.getPlugCount()), false);
+		writeContent(Integer.toString(plugCount), false);
 		writeEndTag("attribute");
 
 		writeEndTag("attributes");
@@ -56,15 +85,14 @@ public class ChargerOccupancyPlanWriter extends MatsimXmlWriter {
 		List<Tuple<String, String>> plan = Arrays.asList();
 		writeStartTag("plan", plan);
 
-		String x = Double.toString(charger.getCoord().getX());
-		String y = Double.toString(charger.getCoord().getY());
-		int plugCount = charger.getPlugCount();
+		String x = Double.toString(coord.getX());
+		String y = Double.toString(coord.getY());
 		int pluggedVehicles = 0;
 		String type = String.format("%.1g", (double)pluggedVehicles/plugCount);
 		String startTime = "00:00:00";
 
-		for (Map.Entry<Double, Integer> entry : history.getPluggedVehicleCounts().entrySet()) {
-			String endTime = Time.writeTime(entry.getKey());
+		for (int i = 0; i < history.size(); i++) {
+			String endTime = Time.writeTime(history.getTime(i));
 
 			List<Tuple<String, String>> act = Arrays.asList(
 					Tuple.of("type", type),
@@ -78,7 +106,7 @@ public class ChargerOccupancyPlanWriter extends MatsimXmlWriter {
 			writeStartTag("leg", leg, true);
 
 			startTime = endTime;
-			pluggedVehicles = entry.getValue();
+			pluggedVehicles = history.getPluggedVehicleCount(i);
 			type = String.format("%.1g", (double)pluggedVehicles/plugCount);
 		}
 
@@ -31,9 +31,6 @@ package se.urbanEV.stats;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
-import se.urbanEV.charging.ChargingLogic;
-import se.urbanEV.infrastructure.Charger;
-import se.urbanEV.infrastructure.ChargingInfrastructure;
 import org.matsim.contrib.util.timeprofile.TimeProfileCharts.ChartType;
 import org.matsim.contrib.util.timeprofile.TimeProfileCollector;
 import org.matsim.contrib.util.timeprofile.TimeProfileCollector.ProfileCalculator;
@@ -42,35 +39,31 @@ import org.matsim.core.controler.MatsimServices;
 import org.matsim.core.mobsim.framework.listeners.MobsimListener;
 
 public class ChargerOccupancyTimeProfileCollectorProvider implements Provider<MobsimListener> {
-	private final ChargingInfrastructure chargingInfrastructure;
+	private final ChargerOccupancyCounters occupancyCounters;
 	private final MatsimServices matsimServices;
+	private final TimeProfileChartPolicy chartPolicy;
 
 	@Inject
-	public ChargerOccupancyTimeProfileCollectorProvider(ChargingInfrastructure chargingInfrastructure,
-			MatsimServices matsimServices) {
-		this.chargingInfrastructure = chargingInfrastructure;
+	public ChargerOccupancyTimeProfileCollectorProvider(ChargerOccupancyCounters occupancyCounters,
+			MatsimServices matsimServices, TimeProfileChartPolicy chartPolicy) {
+		this.occupancyCounters = occupancyCounters;
 		this.matsimServices = matsimServices;
+		this.chartPolicy = chartPolicy;
 	}
 
 	@Override
 	public MobsimListener get() {
-		ProfileCalculator calc = createChargerOccupancyCalculator(chargingInfrastructure);
+		ProfileCalculator calc = createChargerOccupancyCalculator(occupancyCounters);
 		TimeProfileCollector collector = new TimeProfileCollector(calc, 300, "charger_occupancy_time_profiles",
 				matsimServices);
-		collector.setChartTypes(ChartType.Line, ChartType.StackedArea);
+		chartPolicy.setChartTypes(collector, ChartType.Line, ChartType.StackedArea);
 		return collector;
 	}
 
 	public static ProfileCalculator createChargerOccupancyCalculator(
-			final ChargingInfrastructure chargingInfrastructure) {
+			final ChargerOccupancyCounters occupancyCounters) {
 		String[] header = { "plugged" };
-		return TimeProfiles.createProfileCalculator(header, () -> {
-			int plugged = 0;
-			for (Charger c : chargingInfrastructure.getChargers().values()) {
-				ChargingLogic logic = c.getLogic();
-				plugged += logic.getPluggedVehicles().size();
-			}
-			return new Integer[] { plugged };
-		});
+		return TimeProfiles.createProfileCalculator(header,
+				() -> new Integer[] { occupancyCounters.getPlugged() });
 	}
 }
@@ -1,79 +1,104 @@
-/*
-File originally created, published and licensed by contributors of the org.matsim.* project.
-Please consider the original license notice below.
-This is a modified version of the original source code!
-
-Modified 2020 by Lennart Adenaw, Technical University Munich, Chair of Automotive Technology
-email	:	lennart.adenaw@tum.de
-*/
-
-/* ORIGINAL LICENSE
- *  *********************************************************************** *
- * project: org.matsim.*
- *                                                                         *
- * *********************************************************************** *
- *                                                                         *
- * copyright       : (C) 2016 by the members listed in the COPYING,        *
- *                   LICENSE and WARRANTY file.                            *
- * email           : info at matsim dot org                                *
- *                                                                         *
- * *********************************************************************** *
- *                                                                         *
- *   This program is free software; you can redistribute it and/or modify  *
- *   it under the terms of the GNU General Public License as published by  *
- *   the Free Software Foundation; either version 2 of the License, or     *
- *   (at your option) any later version.                                   *
- *   See also COPYING, LICENSE and WARRANTY file                           *
- *                                                                         *
- * *********************************************************************** */
-
 package se.urbanEV.stats;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
-import se.urbanEV.charging.ChargingLogic;
 import se.urbanEV.infrastructure.Charger;
-import se.urbanEV.infrastructure.ChargingInfrastructure;
-import org.matsim.contrib.util.XYDataCollector;
-import org.matsim.contrib.util.XYDataCollector.XYDataCalculator;
-import org.matsim.contrib.util.XYDataCollectors;
 import org.matsim.core.controler.MatsimServices;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
+import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
 import org.matsim.core.mobsim.framework.listeners.MobsimListener;
+import org.matsim.core.utils.io.IOUtils;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Writes charger_occupancy_absolute.xy.gz in the same tab-separated layout as MATSim's XYDataCollector (time, id, x,
+ * y, plugs, plugged), but reads the counts from {@link ChargerOccupancyCounters} and, after the first sample, only
+ * emits rows for chargers whose number of plugged vehicles differs from the previously written value.
+ */
 public class ChargerOccupancyXYDataProvider implements Provider<MobsimListener> {
-	private final ChargingInfrastructure chargingInfrastructure;
+	private static final int INTERVAL = 300;
+	private static final String OUTPUT_FILE = "charger_occupancy_absolute";
+
+	private final ChargerOccupancyCounters occupancyCounters;
 	private final MatsimServices matsimServices;
 
 	@Inject
-	public ChargerOccupancyXYDataProvider(ChargingInfrastructure chargingInfrastructure,
-			MatsimServices matsimServices) {
-		this.chargingInfrastructure = chargingInfrastructure;
+	public ChargerOccupancyXYDataProvider(ChargerOccupancyCounters occupancyCounters, MatsimServices matsimServices) {
+		this.occupancyCounters = occupancyCounters;
 		this.matsimServices = matsimServices;
 	}
 
 	@Override
 	public MobsimListener get() {
-		XYDataCalculator<Charger> calc = createChargerOccupancyCalculator(chargingInfrastructure, false);
-		return new XYDataCollector<>(chargingInfrastructure.getChargers().values(), calc, 300,
-				"charger_occupancy_absolute", matsimServices);
+		return new ChangedChargersXYWriter(occupancyCounters, matsimServices);
 	}
 
-	public static XYDataCalculator<Charger> createChargerOccupancyCalculator(
-			final ChargingInfrastructure chargingInfrastructure, boolean relative) {
-		String[] header = relative ?
-				new String[] { "plugs", "plugged_rel" } :
-				new String[] { "plugs", "plugged" };
+	private static class ChangedChargersXYWriter
+			implements MobsimInitializedListener, MobsimAfterSimStepListener, MobsimBeforeCleanupListener {
+		private final ChargerOccupancyCounters occupancyCounters;
+		private final MatsimServices matsimServices;
+		private final int[] writtenCounts;
+		private BufferedWriter writer;
 
-		return XYDataCollectors.createCalculator(header, charger -> {
-			ChargingLogic logic = charger.getLogic();
-			int plugs = charger.getPlugCount();
-			return new String[] { charger.getPlugCount() + "", //
-					getValue(logic.getPluggedVehicles().size(), plugs, relative)
-			};
-		});
-	}
+		private ChangedChargersXYWriter(ChargerOccupancyCounters occupancyCounters, MatsimServices matsimServices) {
+			this.occupancyCounters = occupancyCounters;
+			this.matsimServices = matsimServices;
+			writtenCounts = new int[occupancyCounters.getChargerCount()];
+			Arrays.fill(writtenCounts, -1);
+		}
+
+		@Override
+		public void notifyMobsimInitialized(MobsimInitializedEvent e) {
+			String file = matsimServices.getControlerIO()
+					.getIterationFilename(matsimServices.getIterationNumber(), OUTPUT_FILE + ".xy.gz");
+			writer = IOUtils.getBufferedWriter(file);
+			writeLine("time", "id", "x", "y", "plugs", "plugged");
+		}
+
+		@Override
+		public void notifyMobsimAfterSimStep(MobsimAfterSimStepEvent e) {
+			int time = (int)e.getSimulationTime();
+			if (time % INTERVAL != 0) {
+				return;
+			}
+			String timeString = time + "";
+			BitSet changed = occupancyCounters.pollChangedChargers();
+			for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+				int plugged = occupancyCounters.getPluggedAtCharger(i);
+				if (plugged != writtenCounts[i]) {
+					writtenCounts[i] = plugged;
+					Charger charger = occupancyCounters.getCharger(i);
+					writeLine(timeString, charger.getId() + "", charger.getCoord().getX() + "",
+							charger.getCoord().getY() + "", charger.getPlugCount() + "", plugged + "");
+				}
+			}
+		}
+
+		@Override
+		public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent e) {
+			try {
+				writer.close();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
 
-	private static String getValue(int count, int plugs, boolean relative) {
-		return relative ? ((double)count / plugs) + "" : count + "";
+		private void writeLine(String... values) {
+			try {
+				writer.write(String.join("\t", values));
+				writer.newLine();
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
 	}
 }
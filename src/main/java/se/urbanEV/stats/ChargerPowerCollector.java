@@ -1,9 +1,16 @@
 package se.urbanEV.stats;
 
 import com.google.inject.Inject;
+import com.google.inject.Provider;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
 import org.apache.log4j.Logger;
 import org.matsim.api.core.v01.Id;
+import org.matsim.contrib.ev.EvUnits;
 import org.matsim.contrib.ev.MobsimScopeEventHandler;
+import org.matsim.core.controler.IterationCounter;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.utils.io.IOUtils;
 import se.urbanEV.MobsimScopeEventHandling;
 import se.urbanEV.charging.ChargingEndEvent;
 import se.urbanEV.charging.ChargingEndEventHandler;
@@ -11,21 +18,42 @@ import se.urbanEV.charging.ChargingStartEvent;
 import se.urbanEV.charging.ChargingStartEventHandler;
 import se.urbanEV.charging.UnpluggingEvent;
 import se.urbanEV.charging.UnpluggingEventHandler;
+import se.urbanEV.config.UrbanEVConfigGroup;
 import se.urbanEV.fleet.ElectricFleet;
 import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargerCategory;
 import se.urbanEV.infrastructure.ChargingInfrastructure;
 import se.urbanEV.scoring.ChargingBehaviourScoringEvent;
 import se.urbanEV.scoring.ChargingBehaviourScoringEventHandler;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
+/**
+ * Collects completed charging sessions (from plugging to unplugging) for chargingStats.csv.
+ * <p>
+ * By default, sessions are kept as {@link ChargingLogEntry}s until the end of the iteration. With
+ * streamingChargingStats, completed sessions are encoded into fixed-size primitive buffers. A full buffer is handed to
+ * the {@link EvOutputWriter}, which appends it to chargingStats.csv, and encoding continues in a free one. There are
+ * only {@value #SESSION_BUFFERS} buffers; if the writer falls behind, event handling waits for one to be written. Memory
+ * use therefore does not grow with the number of sessions. The session totals are kept in running accumulators and
+ * written to chargingStatsSummary.csv at the end of the iteration.
+ * <p>
+ * In both modes, sessions are added to the {@link ChargingSessionSketches} with chargingSessionQuantiles.
+ */
 public class ChargerPowerCollector
         implements ChargingStartEventHandler, ChargingEndEventHandler,
         UnpluggingEventHandler, ChargingBehaviourScoringEventHandler, MobsimScopeEventHandler {
 
     private static final Logger log = Logger.getLogger(ChargerPowerCollector.class);
+    private static final int SESSION_BUFFERS = 4;
+    private static final String SUMMARY_FILE = "chargingStatsSummary.csv";
 
     private final ChargingInfrastructure chargingInfrastructure;
     private final ElectricFleet fleet;
@@ -33,12 +61,77 @@ public class ChargerPowerCollector
     private final HashMap<Id<ElectricVehicle>, ChargingLogEntry> activeChargingProcesses = new HashMap<>();
     private final List<ChargingLogEntry> logList = new ArrayList<>();
 
+    // streaming mode only
+    private final EvOutputWriter outputWriter;
+    private final String streamFile;
+    private final String summaryFile;
+    private final CSVPrinter streamPrinter;// only used by the output writer after construction
+    private final BlockingQueue<SessionBuffer> freeSessionBuffers;
+    private SessionBuffer sessionBuffer;
+    private final Charger[] chargers;
+    private final int[] chargerIndices;// Id.index() -> index in chargers
+    private final ElectricVehicle[] vehicles;
+    private final int[] vehicleIndices;// Id.index() -> index in vehicles
+
+    private final ChargingSessionSketches sessionSketches;// null if chargingSessionQuantiles is off
+
+    // running totals over all completed sessions
+    private long sessionCount;
+    private double transmittedEnergySum_J;
+    private double chargingDurationSum;
+    private double pluggedDurationSum;
+    private double walkingDistanceSum;
+
     @Inject
     public ChargerPowerCollector(ElectricFleet fleet,
                                  ChargingInfrastructure chargingInfrastructure,
-                                 MobsimScopeEventHandling events) {
+                                 MobsimScopeEventHandling events,
+                                 UrbanEVConfigGroup urbanEVCfg,
+                                 OutputDirectoryHierarchy controlerIO,
+                                 IterationCounter iterationCounter,
+                                 EvOutputWriter outputWriter,
+                                 Provider<ChargingSessionSketches> sessionSketchesProvider) {
         this.fleet = fleet;
         this.chargingInfrastructure = chargingInfrastructure;
+        this.sessionSketches = urbanEVCfg.isChargingSessionQuantiles() ? sessionSketchesProvider.get() : null;
+
+        if (urbanEVCfg.isStreamingChargingStats()) {
+            chargers = chargingInfrastructure.getChargers().values().toArray(new Charger[0]);
+            chargerIndices = new int[Id.getNumberOfIds(Charger.class)];
+            for (int i = 0; i < chargers.length; i++) {
+                chargerIndices[chargers[i].getId().index()] = i;
+            }
+            vehicles = fleet.getElectricVehicles().values().toArray(new ElectricVehicle[0]);
+            vehicleIndices = new int[Id.getNumberOfIds(ElectricVehicle.class)];
+            for (int i = 0; i < vehicles.length; i++) {
+                vehicleIndices[vehicles[i].getId().index()] = i;
+            }
+            freeSessionBuffers = new ArrayBlockingQueue<>(SESSION_BUFFERS);
+            for (int i = 1; i < SESSION_BUFFERS; i++) {
+                freeSessionBuffers.add(new SessionBuffer());
+            }
+            sessionBuffer = new SessionBuffer();
+            this.outputWriter = outputWriter;
+            streamFile = controlerIO.getIterationFilename(iterationCounter.getIterationNumber(),
+                    ChargingStatsCsv.getFileName(urbanEVCfg.isCompressedEvOutputs()));
+            summaryFile = controlerIO.getIterationFilename(iterationCounter.getIterationNumber(), SUMMARY_FILE);
+            try {
+                streamPrinter = ChargingStatsCsv.open(streamFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            chargers = null;
+            chargerIndices = null;
+            vehicles = null;
+            vehicleIndices = null;
+            freeSessionBuffers = null;
+            sessionBuffer = null;
+            this.outputWriter = null;
+            streamFile = null;
+            summaryFile = null;
+            streamPrinter = null;
+        }
         events.addMobsimScopeHandler(this);
     }
 
@@ -121,7 +214,16 @@ public class ChargerPowerCollector
         chargingProcess.setChargingRatio(ratio);
 
         if (chargingProcess.complete() && chargingProcess.valid()) {
-            logList.add(chargingProcess);
+            addToTotals(chargingProcess);
+            if (streamPrinter != null) {
+                sessionBuffer.add(chargerIndices[chargingProcess.getCharger().getId().index()],
+                        vehicleIndices[ev.getId().index()], chargingProcess);
+                if (sessionBuffer.isFull()) {
+                    flushSessionBuffer();
+                }
+            } else {
+                logList.add(chargingProcess);
+            }
         } else {
             log.warn("Dropping invalid or incomplete ChargingLogEntry for EV " + ev.getId());
         }
@@ -143,7 +245,170 @@ public class ChargerPowerCollector
         }
     }
 
+    private void addToTotals(ChargingLogEntry chargingProcess) {
+        sessionCount++;
+        transmittedEnergySum_J += chargingProcess.getTransmittedEnergy_J();
+        chargingDurationSum += chargingProcess.getChargingDuration();
+        pluggedDurationSum += chargingProcess.getPluggedDuration();
+        walkingDistanceSum += chargingProcess.getWalkingDistance();
+        if (sessionSketches != null) {
+            sessionSketches.addSession(ChargerCategory.of(chargingProcess.getCharger().getId()),
+                    chargingProcess.getStartTime(), chargingProcess.getChargingDuration(),
+                    chargingProcess.getPluggedDuration(), chargingProcess.getTransmittedEnergy_J(),
+                    chargingProcess.getWalkingDistance());
+        }
+    }
+
+    private void flushSessionBuffer() {
+        SessionBuffer buffer = sessionBuffer;
+        // chunks are written in order, as all tasks are submitted with the name of the file
+        outputWriter.submit(streamFile, () -> {
+            try {
+                buffer.print(streamPrinter, chargers, vehicles);
+                streamPrinter.flush();
+            } finally {
+                buffer.clear();
+                freeSessionBuffers.add(buffer);
+            }
+        });
+        try {
+            sessionBuffer = freeSessionBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for chargingStats to be written", e);
+        }
+    }
+
+    /**
+     * @return all completed sessions; empty in streaming mode
+     */
     public List<ChargingLogEntry> getLogList() {
         return logList;
     }
+
+    public boolean isStreaming() {
+        return streamPrinter != null;
+    }
+
+    /**
+     * Hands the remaining buffered sessions and the closing of chargingStats.csv, as well as the session totals
+     * (chargingStatsSummary.csv), to the output writer (streaming mode only).
+     */
+    public void closeStream() {
+        SessionBuffer buffer = sessionBuffer;
+        sessionBuffer = null;
+        outputWriter.submit(streamFile, () -> {
+            try (CSVPrinter csvPrinter = streamPrinter) {
+                buffer.print(csvPrinter, chargers, vehicles);
+            }
+        });
+        writeSummary();
+        log.info(sessionCount + " charging sessions written; transmitted energy: "
+                + EvUnits.J_to_kWh(transmittedEnergySum_J) + " kWh, mean charging duration: "
+                + getMeanChargingDuration() + " s, mean plugged duration: " + getMeanPluggedDuration() + " s");
+    }
+
+    private void writeSummary() {
+        long sessions = sessionCount;
+        double transmittedEnergy_kWh = EvUnits.J_to_kWh(transmittedEnergySum_J);
+        double meanChargingDuration = getMeanChargingDuration();
+        double meanPluggedDuration = getMeanPluggedDuration();
+        double meanWalkingDistance = getMeanWalkingDistance();
+        outputWriter.submit(summaryFile, () -> {
+            try (CSVPrinter csvPrinter = new CSVPrinter(IOUtils.getBufferedWriter(summaryFile),
+                    CSVFormat.DEFAULT.withDelimiter(';').withHeader("sessions", "transmittedEnergy_kWh",
+                            "meanChargingDuration", "meanPluggedDuration", "meanWalkingDistance"))) {
+                csvPrinter.printRecord(sessions, transmittedEnergy_kWh, meanChargingDuration, meanPluggedDuration,
+                        meanWalkingDistance);
+            }
+        });
+    }
+
+    public long getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * @return energy [J] transmitted in all completed sessions
+     */
+    public double getTransmittedEnergySum() {
+        return transmittedEnergySum_J;
+    }
+
+    public double getMeanChargingDuration() {
+        return sessionCount == 0 ? Double.NaN : chargingDurationSum / sessionCount;
+    }
+
+    public double getMeanPluggedDuration() {
+        return sessionCount == 0 ? Double.NaN : pluggedDurationSum / sessionCount;
+    }
+
+    public double getMeanWalkingDistance() {
+        return sessionCount == 0 ? Double.NaN : walkingDistanceSum / sessionCount;
+    }
+
+    /**
+     * Completed sessions in primitive columns (charger and vehicle as indices), reused after it has been written.
+     */
+    private static class SessionBuffer {
+        private static final int CAPACITY = 4096;
+
+        private static final int START_TIME = 0;
+        private static final int END_TIME = 1;
+        private static final int CHARGING_DURATION = 2;
+        private static final int UNPLUG_TIME = 3;
+        private static final int PLUGGED_DURATION = 4;
+        private static final int CHARGING_RATIO = 5;
+        private static final int START_SOC = 6;
+        private static final int START_SOC_J = 7;
+        private static final int END_SOC = 8;
+        private static final int END_SOC_J = 9;
+        private static final int TRANSMITTED_ENERGY_J = 10;
+        private static final int WALKING_DISTANCE = 11;
+        private static final int FIELDS = 12;
+
+        private final int[] chargers = new int[CAPACITY];
+        private final int[] vehicles = new int[CAPACITY];
+        private final double[] values = new double[CAPACITY * FIELDS];
+        private int size;
+
+        void add(int charger, int vehicle, ChargingLogEntry e) {
+            chargers[size] = charger;
+            vehicles[size] = vehicle;
+            int offset = size * FIELDS;
+            values[offset + START_TIME] = e.getStartTime();
+            values[offset + END_TIME] = e.getEndTime();
+            values[offset + CHARGING_DURATION] = e.getChargingDuration();
+            values[offset + UNPLUG_TIME] = e.getUnplugTime();
+            values[offset + PLUGGED_DURATION] = e.getPluggedDuration();
+            values[offset + CHARGING_RATIO] = e.getChargingRatio();
+            values[offset + START_SOC] = e.getStartSOC();
+            values[offset + START_SOC_J] = e.getStartSOC_J();
+            values[offset + END_SOC] = e.getEndSOC();
+            values[offset + END_SOC_J] = e.getEndSOC_J();
+            values[offset + TRANSMITTED_ENERGY_J] = e.getTransmittedEnergy_J();
+            values[offset + WALKING_DISTANCE] = e.getWalkingDistance();
+            size++;
+        }
+
+        boolean isFull() {
+            return size == CAPACITY;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void print(CSVPrinter csvPrinter, Charger[] chargerArray, ElectricVehicle[] vehicleArray) throws IOException {
+            for (int i = 0; i < size; i++) {
+                int offset = i * FIELDS;
+                ChargingStatsCsv.printRecord(csvPrinter, chargerArray[chargers[i]], vehicleArray[vehicles[i]].getId(),
+                        values[offset + START_TIME], values[offset + END_TIME], values[offset + CHARGING_DURATION],
+                        values[offset + UNPLUG_TIME], values[offset + PLUGGED_DURATION],
+                        values[offset + CHARGING_RATIO], values[offset + START_SOC], values[offset + START_SOC_J],
+                        values[offset + END_SOC], values[offset + END_SOC_J], values[offset + TRANSMITTED_ENERGY_J],
+                        values[offset + WALKING_DISTANCE]);
+            }
+        }
+    }
 }
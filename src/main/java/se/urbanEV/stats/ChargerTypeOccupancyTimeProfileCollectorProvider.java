@@ -2,9 +2,8 @@ package se.urbanEV.stats;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
-import se.urbanEV.charging.ChargingLogic;
-import se.urbanEV.infrastructure.Charger;
-import se.urbanEV.infrastructure.ChargingInfrastructure;
+import se.urbanEV.infrastructure.ChargerCategory;
+import org.jfree.chart.JFreeChart;
 import org.matsim.contrib.util.timeprofile.TimeProfileCharts;
 import org.matsim.contrib.util.timeprofile.TimeProfileCharts.ChartType;
 import org.matsim.contrib.util.timeprofile.TimeProfileCollector;
@@ -16,52 +15,49 @@ import org.matsim.core.mobsim.framework.listeners.MobsimListener;
 import java.awt.*;
 
 public class ChargerTypeOccupancyTimeProfileCollectorProvider implements Provider<MobsimListener> {
-	private final ChargingInfrastructure chargingInfrastructure;
+	private final ChargerOccupancyCounters occupancyCounters;
 	private final MatsimServices matsimServices;
+	private final TimeProfileChartPolicy chartPolicy;
 
 	@Inject
-	public ChargerTypeOccupancyTimeProfileCollectorProvider(ChargingInfrastructure chargingInfrastructure,
-															MatsimServices matsimServices) {
-		this.chargingInfrastructure = chargingInfrastructure;
+	public ChargerTypeOccupancyTimeProfileCollectorProvider(ChargerOccupancyCounters occupancyCounters,
+															MatsimServices matsimServices, TimeProfileChartPolicy chartPolicy) {
+		this.occupancyCounters = occupancyCounters;
 		this.matsimServices = matsimServices;
+		this.chartPolicy = chartPolicy;
 	}
 
 	@Override
 	public MobsimListener get() {
-		ProfileCalculator calc = createChargerOccupancyCalculator(chargingInfrastructure);
+		ProfileCalculator calc = createChargerOccupancyCalculator(occupancyCounters);
 		TimeProfileCollector collector = new TimeProfileCollector(calc, 300, "charger_type_occupancy_time_profiles",
 				matsimServices);
-		collector.setChartTypes(ChartType.Line, ChartType.StackedArea);
-		collector.setChartCustomizer((chart, chartType) -> {
-			TimeProfileCharts.changeSeriesColors(chart,
-					new Color(0, 255, 0), // public
-					new Color(255, 0, 0), // home
-					new Color(0, 0, 255) // work
-			);
-		});
+		chartPolicy.setChartTypes(collector, ChartType.Line, ChartType.StackedArea);
+		collector.setChartCustomizer(ChargerTypeOccupancyTimeProfileCollectorProvider::customizeChart);
 		return collector;
 	}
 
+	public static void customizeChart(JFreeChart chart, ChartType chartType) {
+		TimeProfileCharts.changeSeriesColors(chart,
+				new Color(0, 255, 0), // public
+				new Color(255, 0, 0), // home
+				new Color(0, 0, 255) // work
+		);
+	}
+
 	public static ProfileCalculator createChargerOccupancyCalculator(
-			final ChargingInfrastructure chargingInfrastructure) {
-		String[] header = { "public", "home", "work"};
+			final ChargerOccupancyCounters occupancyCounters) {
+		ChargerCategory[] categories = ChargerCategory.values();// public, home, work
+		String[] header = new String[categories.length];
+		for (int i = 0; i < categories.length; i++) {
+			header[i] = categories[i].getLabel();
+		}
 		return TimeProfiles.createProfileCalculator(header, () -> {
-			int publicPlugged = 0;
-			int homePlugged = 0;
-			int workPlugged = 0;
-			for (Charger c : chargingInfrastructure.getChargers().values()) {
-				ChargingLogic logic = c.getLogic();
-				String chargerId = c.getId().toString();
-				int plugged = logic.getPluggedVehicles().size();
-				if (chargerId.contains("work")) {
-					workPlugged += plugged;
-				} else if (chargerId.contains("home")) {
-					homePlugged += plugged;
-				} else {
-					publicPlugged += plugged;
-				}
+			Integer[] plugged = new Integer[categories.length];
+			for (int i = 0; i < categories.length; i++) {
+				plugged[i] = occupancyCounters.getPlugged(categories[i]);
 			}
-			return new Integer[] { publicPlugged, homePlugged, workPlugged };
+			return plugged;
 		});
 	}
 }
@@ -4,12 +4,19 @@ import se.urbanEV.scoring.ChargingBehaviourScoring;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.population.Person;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A class to collect all the data about the scoring of charging activities
+ * <p>
+ * Scoring functions may be called from several threads, so per component only striped sums and counts (and,
+ * optionally, a fixed-bin distribution) are kept, and the persons that scored are marked in a concurrent bitset
+ * keyed by {@link Id#index()}. All updates are O(1) and lock-free. The per-component holders are created once and
+ * only cleared in place on {@link #reset()}, so threads never see a half-published holder.
  *
  * @author Lennart Adenaw on 09.09.2020
  */
@@ -17,64 +24,207 @@ import java.util.HashMap;
 public class ChargingBehaviorScoresCollector {
 
     private static final ChargingBehaviorScoresCollector OBJ = new ChargingBehaviorScoresCollector();
-    private HashMap<ChargingBehaviourScoring.ScoreComponents, ArrayList<Double>> chargingBehaviorScoringComponents = new HashMap<>();
-    private HashMap<ChargingBehaviourScoring.ScoreComponents, ArrayList<Id<Person>>> scoringPersons = new HashMap<>();
+    private final EnumMap<ChargingBehaviourScoring.ScoreComponents, ComponentScores> componentScores = new EnumMap<>(ChargingBehaviourScoring.ScoreComponents.class);
+
+    private volatile int distributionBins = 0;// 0 = no distributions
+    private volatile double distributionBinWidth;
 
     public static ChargingBehaviorScoresCollector getInstance(){
         return OBJ;
     }
 
     private ChargingBehaviorScoresCollector() {
-        // Initialize charging component storage
-        Arrays.stream(ChargingBehaviourScoring.ScoreComponents.values()).forEach(scoringComponent -> {
-            // Initialize history containers
-            chargingBehaviorScoringComponents.put(scoringComponent, new ArrayList<Double>());
-            scoringPersons.put(scoringComponent, new ArrayList<Id<Person>>());
-        });
+        for (ChargingBehaviourScoring.ScoreComponents scoringComponent : ChargingBehaviourScoring.ScoreComponents.values()) {
+            componentScores.put(scoringComponent, new ComponentScores());
+        }
+    }
+
+    /**
+     * Enables the distributions of component values: {@code bins} bins of width {@code binWidth}, centered on 0;
+     * values outside the range are counted in the first/last bin. Takes effect with the next {@link #reset()}.
+     */
+    public void configureDistributions(int bins, double binWidth) {
+        if (bins < 0 || (bins > 0 && !(binWidth > 0))) {
+            throw new IllegalArgumentException("Invalid distribution: bins=" + bins + ", binWidth=" + binWidth);
+        }
+        this.distributionBins = bins;
+        this.distributionBinWidth = binWidth;
+        reset();
     }
 
     public void addScoringComponentValue(ChargingBehaviourScoring.ScoreComponents component, double value)
     {
-        chargingBehaviorScoringComponents.get(component).add(value);
+        ComponentScores scores = componentScores.get(component);
+        scores.sum.add(value);
+        scores.valueCount.increment();
+        AtomicLongArray distribution = scores.distribution;
+        if (distribution != null) {
+            distribution.incrementAndGet(getDistributionBin(value, distribution.length()));
+        }
     }
 
     public void addScoringPerson(ChargingBehaviourScoring.ScoreComponents component, Id<Person> personId){
-
-        if(!scoringPersons.get(component).contains(personId))
-        {
-            scoringPersons.get(component).add(personId);
+        ComponentScores scores = componentScores.get(component);
+        if (scores.persons.set(personId.index())) {
+            scores.personCount.increment();
         }
     }
 
-    public HashMap<ChargingBehaviourScoring.ScoreComponents, ArrayList<Double>> getChargingBehaviorScoringComponents()
-    {
-        return chargingBehaviorScoringComponents;
-    }
-
-    public HashMap<ChargingBehaviourScoring.ScoreComponents, ArrayList<Id<Person>>> getScoringPersons() {
-        return scoringPersons;
+    private int getDistributionBin(double value, int bins) {
+        int bin = (int)Math.floor(value / distributionBinWidth + bins / 2.0);
+        return Math.max(0, Math.min(bin, bins - 1));
     }
 
     public double getNumberOfScoringPersonsForComponent(ChargingBehaviourScoring.ScoreComponents scoreComponent){
-        return scoringPersons.get(scoreComponent).size();
+        return componentScores.get(scoreComponent).personCount.sum();
     }
 
     public double getComponentSum(ChargingBehaviourScoring.ScoreComponents scoreComponent){
-        return chargingBehaviorScoringComponents.get(scoreComponent).stream().mapToDouble(a -> a).sum();
+        return componentScores.get(scoreComponent).sum.sum();
     }
 
     public double getComponentMean(ChargingBehaviourScoring.ScoreComponents scoreComponent){
-        return chargingBehaviorScoringComponents.get(scoreComponent).stream().mapToDouble(a -> a).sum()/getNumberOfScoringPersonsForComponent(scoreComponent);
+        return getComponentSum(scoreComponent)/getNumberOfScoringPersonsForComponent(scoreComponent);
+    }
+
+    /**
+     * @return number of values added for the component (a person may score several times)
+     */
+    public long getComponentValueCount(ChargingBehaviourScoring.ScoreComponents scoreComponent){
+        return componentScores.get(scoreComponent).valueCount.sum();
+    }
+
+    public int getDistributionBins() {
+        return distributionBins;
+    }
+
+    /**
+     * @return lower bound of the given distribution bin (the first bin also holds all lower values)
+     */
+    public double getDistributionBinLowerBound(int bin) {
+        return (bin - getDistributionBins() / 2.0) * distributionBinWidth;
     }
 
+    /**
+     * @return counts per bin (a copy), or null if distributions are not enabled
+     */
+    public long[] getDistribution(ChargingBehaviourScoring.ScoreComponents scoreComponent){
+        AtomicLongArray distribution = componentScores.get(scoreComponent).distribution;
+        if (distribution == null) {
+            return null;
+        }
+        long[] counts = new long[distribution.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = distribution.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Must not be called while scoring is in progress.
+     */
     public void reset(){
-        chargingBehaviorScoringComponents.keySet().forEach(scoringComponent -> {
-            chargingBehaviorScoringComponents.get(scoringComponent).clear();
-        });
+        for (ComponentScores scores : componentScores.values()) {
+            scores.reset();
+        }
+    }
 
-        scoringPersons.keySet().forEach(scoringComponent -> {
-            scoringPersons.get(scoringComponent).clear();
-        });
+    private class ComponentScores {
+        private final DoubleAdder sum = new DoubleAdder();
+        private final LongAdder valueCount = new LongAdder();
+        private final LongAdder personCount = new LongAdder();
+        private final ConcurrentBitSet persons = new ConcurrentBitSet();
+        private volatile AtomicLongArray distribution = distributionBins > 0 ? new AtomicLongArray(distributionBins) : null;
+
+        private void reset() {
+            sum.reset();
+            valueCount.reset();
+            personCount.reset();
+            persons.clear();
+            AtomicLongArray currentDistribution = distribution;
+            if (currentDistribution != null && currentDistribution.length() == distributionBins) {
+                for (int i = 0; i < currentDistribution.length(); i++) {
+                    currentDistribution.set(i, 0);
+                }
+            } else {
+                // only if the distributions have been (re)configured
+                distribution = distributionBins > 0 ? new AtomicLongArray(distributionBins) : null;
+            }
+        }
     }
 
+    /**
+     * Bitset with lock-free {@link #set(int)} (once the page exists), organised in lazily created pages of 2^16 bits.
+     */
+    private static class ConcurrentBitSet {
+        private static final int PAGE_BITS = 16;
+        private static final int WORDS_PER_PAGE = (1 << PAGE_BITS) / Long.SIZE;
+
+        private volatile AtomicReferenceArray<AtomicLongArray> pages = new AtomicReferenceArray<>(16);
+
+        /**
+         * @return true if the bit was not set before
+         */
+        boolean set(int index) {
+            int pageIndex = index >>> PAGE_BITS;
+            AtomicLongArray page = getOrCreatePage(pageIndex);
+            int word = (index & ((1 << PAGE_BITS) - 1)) >>> 6;
+            long mask = 1L << (index & 63);
+            while (true) {
+                long current = page.get(word);
+                if ((current & mask) != 0) {
+                    return false;
+                }
+                if (page.compareAndSet(word, current, current | mask)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Clears all bits, keeping the pages.
+         */
+        void clear() {
+            AtomicReferenceArray<AtomicLongArray> currentPages = pages;
+            for (int p = 0; p < currentPages.length(); p++) {
+                AtomicLongArray page = currentPages.get(p);
+                if (page != null) {
+                    for (int word = 0; word < page.length(); word++) {
+                        page.set(word, 0);
+                    }
+                }
+            }
+        }
+
+        private AtomicLongArray getOrCreatePage(int pageIndex) {
+            AtomicReferenceArray<AtomicLongArray> currentPages = pages;
+            if (pageIndex < currentPages.length()) {
+                AtomicLongArray page = currentPages.get(pageIndex);
+                if (page != null) {
+                    return page;
+                }
+            }
+            return createPage(pageIndex);
+        }
+
+        // rare (once per page), so a lock is fine here; growing the page table and creating pages under the same
+        // lock ensures that no page is lost when the table is copied
+        private synchronized AtomicLongArray createPage(int pageIndex) {
+            AtomicReferenceArray<AtomicLongArray> currentPages = pages;
+            if (pageIndex >= currentPages.length()) {
+                AtomicReferenceArray<AtomicLongArray> newPages = new AtomicReferenceArray<>(
+                        Math.max(pageIndex + 1, currentPages.length() * 2));
+                for (int i = 0; i < currentPages.length(); i++) {
+                    newPages.set(i, currentPages.get(i));
+                }
+                pages = currentPages = newPages;
+            }
+            AtomicLongArray page = currentPages.get(pageIndex);
+            if (page == null) {
+                page = new AtomicLongArray(WORDS_PER_PAGE);
+                currentPages.set(pageIndex, page);
+            }
+            return page;
+        }
+    }
 }
@@ -0,0 +1,264 @@
+package se.urbanEV.stats;
+
+import com.google.inject.Inject;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.contrib.ev.EvUnits;
+import org.matsim.contrib.ev.MobsimScopeEventHandler;
+import org.matsim.core.controler.IterationCounter;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.io.IOUtils;
+import se.urbanEV.MobsimScopeEventHandling;
+import se.urbanEV.charging.ChargingEndEvent;
+import se.urbanEV.charging.ChargingEndEventHandler;
+import se.urbanEV.charging.ChargingStartEvent;
+import se.urbanEV.charging.ChargingStartEventHandler;
+import se.urbanEV.charging.UnpluggingEvent;
+import se.urbanEV.charging.UnpluggingEventHandler;
+import se.urbanEV.charging.VehicleChargingHandler;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.fleet.ElectricFleet;
+import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargingInfrastructure;
+import se.urbanEV.scoring.ChargingBehaviourScoringEvent;
+import se.urbanEV.scoring.ChargingBehaviourScoringEventHandler;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Charging demand on a grid of square cells (chargingGridCellSize) over the bounding box of the network and the
+ * chargers, per cell and hour of day: energy delivered by the chargers in the cell, peak number of vehicles plugged
+ * at the same time, and failed charging attempts (charging activities marked as " failed" by
+ * {@link VehicleChargingHandler}, located at the activity of the selected plan).
+ * <p>
+ * All measures are kept in primitive arrays indexed by cell * 24 + hour and updated from the charging events. At the
+ * end of the iteration, the non-empty cell hours are written to {@value #FILE}.
+ */
+public class ChargingDemandGrid
+		implements ChargingStartEventHandler, ChargingEndEventHandler, UnpluggingEventHandler,
+		ChargingBehaviourScoringEventHandler, MobsimScopeEventHandler, MobsimBeforeCleanupListener {
+	private static final Logger log = Logger.getLogger(ChargingDemandGrid.class);
+
+	public static final String FILE = "chargingDemandGrid.csv.gz";
+
+	private static final String FAILED_SUFFIX = " failed";
+	private static final int HOURS = 24;
+	private static final int SECS_PER_HOUR = 60 * 60;
+
+	private final ElectricFleet fleet;
+	private final Population population;
+	private final Network network;
+	private final OutputDirectoryHierarchy controlerIO;
+	private final IterationCounter iterationCounter;
+	private final EvOutputWriter outputWriter;
+
+	private final double cellSize;
+	private final double minX;
+	private final double minY;
+	private final int columns;
+	private final int rows;
+
+	private final int[] chargerCells;// Id.index() -> cell, -1 if not a charger
+	private final double[] chargingStartTimes;// EV Id.index() -> start of the current charging, NaN if not charging
+	private final double[] chargingStartSocs;// [J]
+
+	private final int[] pluggedByCell;
+	private final double[] energy;// [J], [cell * 24 + hour]
+	private final int[] peakPlugged;
+	private final int[] failedAttempts;
+	private long lastHour = -1;// absolute hour of the last plugging/unplugging
+	private int unlocatedFailedAttempts;
+
+	@Inject
+	public ChargingDemandGrid(ChargingInfrastructure chargingInfrastructure, ElectricFleet fleet,
+			Population population, Network network, UrbanEVConfigGroup urbanEVCfg, MobsimScopeEventHandling events,
+			OutputDirectoryHierarchy controlerIO, IterationCounter iterationCounter, EvOutputWriter outputWriter) {
+		this.fleet = fleet;
+		this.population = population;
+		this.network = network;
+		this.controlerIO = controlerIO;
+		this.iterationCounter = iterationCounter;
+		this.outputWriter = outputWriter;
+		this.cellSize = urbanEVCfg.getChargingGridCellSize();
+
+		double[] bbox = NetworkUtils.getBoundingBox(network.getNodes().values());// minX, minY, maxX, maxY
+		for (Charger charger : chargingInfrastructure.getChargers().values()) {
+			bbox[0] = Math.min(bbox[0], charger.getCoord().getX());
+			bbox[1] = Math.min(bbox[1], charger.getCoord().getY());
+			bbox[2] = Math.max(bbox[2], charger.getCoord().getX());
+			bbox[3] = Math.max(bbox[3], charger.getCoord().getY());
+		}
+		minX = bbox[0];
+		minY = bbox[1];
+		columns = (int)Math.floor((bbox[2] - minX) / cellSize) + 1;
+		rows = (int)Math.floor((bbox[3] - minY) / cellSize) + 1;
+		int cells = Math.multiplyExact(columns, rows);
+
+		chargerCells = new int[Id.getNumberOfIds(Charger.class)];
+		Arrays.fill(chargerCells, -1);
+		for (Charger charger : chargingInfrastructure.getChargers().values()) {
+			chargerCells[charger.getId().index()] = getCell(charger.getCoord());
+		}
+		chargingStartTimes = new double[Id.getNumberOfIds(ElectricVehicle.class)];
+		Arrays.fill(chargingStartTimes, Double.NaN);
+		chargingStartSocs = new double[chargingStartTimes.length];
+
+		pluggedByCell = new int[cells];
+		energy = new double[Math.multiplyExact(cells, HOURS)];
+		peakPlugged = new int[energy.length];
+		failedAttempts = new int[energy.length];
+		events.addMobsimScopeHandler(this);
+	}
+
+	/**
+	 * @return cell index (row-major), -1 if outside the grid
+	 */
+	private int getCell(Coord coord) {
+		int column = (int)Math.floor((coord.getX() - minX) / cellSize);
+		int row = (int)Math.floor((coord.getY() - minY) / cellSize);
+		if (column < 0 || column >= columns || row < 0 || row >= rows) {
+			return -1;
+		}
+		return row * columns + column;
+	}
+
+	private static int getHourOfDay(double time) {
+		return (int)(time / SECS_PER_HOUR) % HOURS;
+	}
+
+	@Override
+	public void handleEvent(ChargingStartEvent event) {
+		ElectricVehicle ev = fleet.getElectricVehicles().get(event.getVehicleId());
+		if (ev != null) {
+			chargingStartTimes[ev.getId().index()] = event.getTime();
+			chargingStartSocs[ev.getId().index()] = ev.getBattery().getSoc();
+		}
+		updatePlugged(event.getChargerId(), event.getTime(), 1);
+	}
+
+	@Override
+	public void handleEvent(UnpluggingEvent event) {
+		updatePlugged(event.getChargerId(), event.getTime(), -1);
+	}
+
+	private void updatePlugged(Id<Charger> chargerId, double time, int delta) {
+		long hour = (long)(time / SECS_PER_HOUR);
+		if (hour > lastHour) {
+			// vehicles plugged since a previous hour count for the peaks of all hours up to now
+			for (long h = Math.max(lastHour + 1, hour - HOURS + 1); h <= hour; h++) {
+				int hourOfDay = (int)(h % HOURS);
+				for (int cell = 0; cell < pluggedByCell.length; cell++) {
+					if (pluggedByCell[cell] > 0) {
+						raisePeak(cell * HOURS + hourOfDay, pluggedByCell[cell]);
+					}
+				}
+			}
+			lastHour = hour;
+		}
+		int cell = chargerCells[chargerId.index()];
+		pluggedByCell[cell] += delta;
+		raisePeak(cell * HOURS + getHourOfDay(time), pluggedByCell[cell]);
+	}
+
+	private void raisePeak(int cellHour, int plugged) {
+		if (plugged > peakPlugged[cellHour]) {
+			peakPlugged[cellHour] = plugged;
+		}
+	}
+
+	@Override
+	public void handleEvent(ChargingEndEvent event) {
+		ElectricVehicle ev = fleet.getElectricVehicles().get(event.getVehicleId());
+		if (ev == null) {
+			return;
+		}
+		int vehicleIndex = ev.getId().index();
+		double startTime = chargingStartTimes[vehicleIndex];
+		if (Double.isNaN(startTime)) {
+			return;
+		}
+		chargingStartTimes[vehicleIndex] = Double.NaN;
+		double chargedEnergy = ev.getBattery().getSoc() - chargingStartSocs[vehicleIndex];
+		if (chargedEnergy <= 0) {
+			return;
+		}
+
+		// spread the energy over the hours of the charging time, assuming constant power
+		int cell = chargerCells[event.getChargerId().index()];
+		double endTime = event.getTime();
+		if (endTime <= startTime) {
+			energy[cell * HOURS + getHourOfDay(endTime)] += chargedEnergy;
+			return;
+		}
+		double power = chargedEnergy / (endTime - startTime);
+		double time = startTime;
+		while (time < endTime) {
+			double hourEnd = Math.min((Math.floor(time / SECS_PER_HOUR) + 1) * SECS_PER_HOUR, endTime);
+			energy[cell * HOURS + getHourOfDay(time)] += power * (hourEnd - time);
+			time = hourEnd;
+		}
+	}
+
+	@Override
+	public void handleEvent(ChargingBehaviourScoringEvent event) {
+		String activityType = event.getActivityType();
+		if (activityType == null || !activityType.endsWith(FAILED_SUFFIX)) {
+			return;
+		}
+		Person person = population.getPersons().get(event.getPersonId());
+		Activity activity = person != null ? VehicleChargingHandler.getActivity(person, event.getTime()) : null;
+		Coord coord = null;
+		if (activity != null) {
+			coord = activity.getCoord() != null ?
+					activity.getCoord() :
+					network.getLinks().get(activity.getLinkId()).getCoord();
+		}
+		int cell = coord != null ? getCell(coord) : -1;
+		if (cell < 0) {
+			unlocatedFailedAttempts++;
+			return;
+		}
+		failedAttempts[cell * HOURS + getHourOfDay(event.getTime())]++;
+	}
+
+	@Override
+	public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent e) {
+		if (unlocatedFailedAttempts > 0) {
+			log.warn(unlocatedFailedAttempts + " failed charging attempts could not be located on the grid");
+		}
+		String file = controlerIO.getIterationFilename(iterationCounter.getIterationNumber(), FILE);
+		// this grid is QSim-scoped, so the arrays are not modified after this point
+		outputWriter.submit(file, () -> write(file));
+	}
+
+	private void write(String file) throws IOException {
+		try (CSVPrinter csvPrinter = new CSVPrinter(IOUtils.getBufferedWriter(file),
+				CSVFormat.DEFAULT.withDelimiter(';')
+						.withHeader("column", "row", "x", "y", "hour", "energy_kWh", "peakPlugged",
+								"failedAttempts"))) {
+			for (int cellHour = 0; cellHour < energy.length; cellHour++) {
+				if (energy[cellHour] == 0 && peakPlugged[cellHour] == 0 && failedAttempts[cellHour] == 0) {
+					continue;
+				}
+				int cell = cellHour / HOURS;
+				int column = cell % columns;
+				int row = cell / columns;
+				csvPrinter.printRecord(column, row, minX + (column + 0.5) * cellSize, minY + (row + 0.5) * cellSize,
+						cellHour % HOURS, EvUnits.J_to_kWh(energy[cellHour]), peakPlugged[cellHour],
+						failedAttempts[cellHour]);
+			}
+		}
+	}
+}
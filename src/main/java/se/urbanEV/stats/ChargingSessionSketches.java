@@ -0,0 +1,183 @@
+package se.urbanEV.stats;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.matsim.contrib.ev.EvUnits;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import se.urbanEV.infrastructure.ChargerCategory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Quantile sketches ({@link QuantileSketch}) of the completed charging sessions, overall, per charger category and
+ * per hour of day of the session start. Fed by {@link ChargerPowerCollector} (chargingSessionQuantiles).
+ * <p>
+ * At the end of each iteration, the sketches of the iteration are merged into cumulative sketches over all
+ * iterations, and both are appended to {@value #FILE} in the output directory, so the convergence of the
+ * distributions can be followed without keeping the session logs.
+ */
+@Singleton
+public class ChargingSessionSketches implements IterationEndsListener {
+	public static final String FILE = "chargingSessionQuantiles.csv";
+	public static final double RELATIVE_ACCURACY = 0.01;
+
+	private static final double[] QUANTILES = { 0.05, 0.25, 0.5, 0.75, 0.95 };
+	private static final String[] HEADER = { "iteration", "scope", "measure", "groupBy", "group", "count", "mean",
+			"min", "p5", "p25", "p50", "p75", "p95", "max" };
+	private static final int HOURS = 24;
+	private static final int SECS_PER_HOUR = 60 * 60;
+
+	public enum Measure {
+		CHARGING_DURATION("chargingDuration_s"),
+		PLUGGED_DURATION("pluggedDuration_s"),
+		ENERGY("energy_kWh"),
+		WALKING_DISTANCE("walkingDistance_m");
+
+		private final String label;
+
+		Measure(String label) {
+			this.label = label;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	// groups: overall, then categories, then hours
+	private static final int CATEGORY_GROUP_OFFSET = 1;
+	private static final int HOUR_GROUP_OFFSET = CATEGORY_GROUP_OFFSET + ChargerCategory.values().length;
+	private static final int GROUPS = HOUR_GROUP_OFFSET + HOURS;
+
+	private final OutputDirectoryHierarchy controlerIO;
+	private final QuantileSketch[][] iterationSketches = createSketches();// [measure][group]
+	private final QuantileSketch[][] cumulativeSketches = createSketches();
+	private boolean headerWritten = false;
+
+	@Inject
+	public ChargingSessionSketches(OutputDirectoryHierarchy controlerIO) {
+		this.controlerIO = controlerIO;
+	}
+
+	private static QuantileSketch[][] createSketches() {
+		QuantileSketch[][] sketches = new QuantileSketch[Measure.values().length][GROUPS];
+		for (QuantileSketch[] measureSketches : sketches) {
+			for (int g = 0; g < GROUPS; g++) {
+				measureSketches[g] = new QuantileSketch(RELATIVE_ACCURACY);
+			}
+		}
+		return sketches;
+	}
+
+	/**
+	 * @param startTime        [s], determines the hour of day
+	 * @param chargingDuration [s]
+	 * @param pluggedDuration  [s]
+	 * @param energy           transmitted energy [J]
+	 * @param walkingDistance  [m]
+	 */
+	public synchronized void addSession(ChargerCategory category, double startTime, double chargingDuration,
+			double pluggedDuration, double energy, double walkingDistance) {
+		int hour = (int)(startTime / SECS_PER_HOUR) % HOURS;
+		add(Measure.CHARGING_DURATION, category, hour, chargingDuration);
+		add(Measure.PLUGGED_DURATION, category, hour, pluggedDuration);
+		add(Measure.ENERGY, category, hour, EvUnits.J_to_kWh(energy));
+		add(Measure.WALKING_DISTANCE, category, hour, walkingDistance);
+	}
+
+	private void add(Measure measure, ChargerCategory category, int hour, double value) {
+		QuantileSketch[] measureSketches = iterationSketches[measure.ordinal()];
+		measureSketches[0].add(value);
+		measureSketches[CATEGORY_GROUP_OFFSET + category.ordinal()].add(value);
+		measureSketches[HOUR_GROUP_OFFSET + hour].add(value);
+	}
+
+	public synchronized QuantileSketch getCategorySketch(Measure measure, ChargerCategory category,
+			boolean cumulative) {
+		QuantileSketch[][] sketches = cumulative ? cumulativeSketches : iterationSketches;
+		return sketches[measure.ordinal()][CATEGORY_GROUP_OFFSET + category.ordinal()];
+	}
+
+	public synchronized QuantileSketch getHourSketch(Measure measure, int hour, boolean cumulative) {
+		QuantileSketch[][] sketches = cumulative ? cumulativeSketches : iterationSketches;
+		return sketches[measure.ordinal()][HOUR_GROUP_OFFSET + hour];
+	}
+
+	@Override
+	public synchronized void notifyIterationEnds(IterationEndsEvent event) {
+		for (int m = 0; m < iterationSketches.length; m++) {
+			for (int g = 0; g < GROUPS; g++) {
+				cumulativeSketches[m][g].merge(iterationSketches[m][g]);
+			}
+		}
+		try {
+			write(event.getIteration());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		for (QuantileSketch[] measureSketches : iterationSketches) {
+			for (QuantileSketch sketch : measureSketches) {
+				sketch.clear();
+			}
+		}
+	}
+
+	private void write(int iteration) throws IOException {
+		CSVFormat format = CSVFormat.DEFAULT.withDelimiter(';');
+		StandardOpenOption mode = StandardOpenOption.APPEND;
+		if (!headerWritten) {
+			format = format.withHeader(HEADER);
+			mode = StandardOpenOption.TRUNCATE_EXISTING;
+			headerWritten = true;
+		}
+		String file = controlerIO.getOutputFilename(FILE);
+		try (CSVPrinter csvPrinter = new CSVPrinter(Files.newBufferedWriter(Paths.get(file),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode), format)) {
+			for (Measure measure : Measure.values()) {
+				printGroups(csvPrinter, iteration, "iteration", measure, iterationSketches[measure.ordinal()]);
+				printGroups(csvPrinter, iteration, "cumulative", measure, cumulativeSketches[measure.ordinal()]);
+			}
+		}
+	}
+
+	private static void printGroups(CSVPrinter csvPrinter, int iteration, String scope, Measure measure,
+			QuantileSketch[] measureSketches) throws IOException {
+		printSketch(csvPrinter, iteration, scope, measure, "all", "all", measureSketches[0]);
+		for (ChargerCategory category : ChargerCategory.values()) {
+			printSketch(csvPrinter, iteration, scope, measure, "category", category.getLabel(),
+					measureSketches[CATEGORY_GROUP_OFFSET + category.ordinal()]);
+		}
+		for (int hour = 0; hour < HOURS; hour++) {
+			printSketch(csvPrinter, iteration, scope, measure, "hour", hour + "",
+					measureSketches[HOUR_GROUP_OFFSET + hour]);
+		}
+	}
+
+	private static void printSketch(CSVPrinter csvPrinter, int iteration, String scope, Measure measure,
+			String groupBy, String group, QuantileSketch sketch) throws IOException {
+		if (sketch.getCount() == 0) {
+			return;
+		}
+		csvPrinter.print(iteration);
+		csvPrinter.print(scope);
+		csvPrinter.print(measure.getLabel());
+		csvPrinter.print(groupBy);
+		csvPrinter.print(group);
+		csvPrinter.print(sketch.getCount());
+		csvPrinter.print(sketch.getMean());
+		csvPrinter.print(sketch.getMin());
+		for (double quantile : QUANTILES) {
+			csvPrinter.print(sketch.getQuantile(quantile));
+		}
+		csvPrinter.print(sketch.getMax());
+		csvPrinter.println();
+	}
+}
@@ -0,0 +1,107 @@
+package se.urbanEV.stats;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.matsim.api.core.v01.Id;
+import org.matsim.contrib.ev.EvUnits;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.misc.Time;
+import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.infrastructure.Charger;
+
+import java.io.IOException;
+
+/**
+ * Row format of chargingStats.csv, shared by the end-of-iteration output (from {@link ChargingLogEntry}s) and the
+ * streaming output of {@link ChargerPowerCollector}.
+ */
+final class ChargingStatsCsv {
+	private static final String FILE = "chargingStats.csv";
+	private static final String COMPRESSED_FILE = "chargingStats.csv.gz";
+
+	private static final int SECS_PER_DAY = 24*60*60;
+
+	private ChargingStatsCsv() {
+	}
+
+	/**
+	 * @param compressed compressedEvOutputs
+	 */
+	static String getFileName(boolean compressed) {
+		return compressed ? COMPRESSED_FILE : FILE;
+	}
+
+	/**
+	 * @param file gzip-compressed if it ends with .gz
+	 */
+	static CSVPrinter open(String file) throws IOException {
+		return new CSVPrinter(IOUtils.getBufferedWriter(file), CSVFormat.DEFAULT.withDelimiter(';').
+				withHeader(
+						"chargerId",
+						"xCoord",
+						"yCoord",
+						"vehicleId",
+						"startTime_matsim",
+						"startTime_24h",
+						"startTime",
+						"startDay",
+						"endTime_matsim",
+						"endTime_24h",
+						"endTime",
+						"endDay",
+						"chargingDuration",
+						"unplugTime_matsim",
+						"unplugTime_24h",
+						"unplugTime",
+						"unplugDay",
+						"pluggedDuration",
+						"chargingRatio",
+						"startSoc",
+						"startSoc_kWh",
+						"endSoc",
+						"endSoc_kWh",
+						"transmittedEnergy_kWh",
+						"walkingDistance"
+				));
+	}
+
+	static void printRecord(CSVPrinter csvPrinter, ChargingLogEntry e) throws IOException {
+		printRecord(csvPrinter, e.getCharger(), e.getElectricVehicleId(), e.getStartTime(), e.getEndTime(),
+				e.getChargingDuration(), e.getUnplugTime(), e.getPluggedDuration(), e.getChargingRatio(),
+				e.getStartSOC(), e.getStartSOC_J(), e.getEndSOC(), e.getEndSOC_J(), e.getTransmittedEnergy_J(),
+				e.getWalkingDistance());
+	}
+
+	static void printRecord(CSVPrinter csvPrinter, Charger charger, Id<ElectricVehicle> vehicleId, double startTime,
+			double endTime, double chargingDuration, double unplugTime, double pluggedDuration, double chargingRatio,
+			double startSoc, double startSoc_J, double endSoc, double endSoc_J, double transmittedEnergy_J,
+			double walkingDistance) throws IOException {
+		csvPrinter.printRecord(
+				charger.getId().toString(),
+				charger.getCoord().getX(),
+				charger.getCoord().getY(),
+				vehicleId.toString(),
+				Time.writeTime(startTime),
+				Time.writeTime(startTime%SECS_PER_DAY),
+				Double.toString(startTime),
+				Integer.toString((int) startTime/SECS_PER_DAY+1),
+				Time.writeTime(endTime),
+				Time.writeTime(endTime%SECS_PER_DAY),
+				Double.toString(endTime),
+				Integer.toString((int) endTime/SECS_PER_DAY+1),
+				Double.toString(chargingDuration),
+				Time.writeTime(unplugTime),
+				Time.writeTime(unplugTime%SECS_PER_DAY),
+				Double.toString(unplugTime),
+				Integer.toString((int) unplugTime/SECS_PER_DAY+1),
+				Double.toString(pluggedDuration),
+				Double.toString(Math.round(chargingRatio*1000.0)/1000.0),
+				Double.toString(Math.round(startSoc*1000.0)/1000.0),
+				Double.toString(Math.round(EvUnits.J_to_kWh(startSoc_J*1000.0)/1000.0)),
+				Double.toString(Math.round(endSoc*1000.0)/1000.0),
+				Double.toString(Math.round(EvUnits.J_to_kWh(endSoc_J*1000.0)/1000.0)),
+				Double.toString(Math.round(EvUnits.J_to_kWh(transmittedEnergy_J*1000.0)/1000.0)),
+				Double.toString(Math.round(walkingDistance*1000.0)/1000.0)
+		);
+	}
+}
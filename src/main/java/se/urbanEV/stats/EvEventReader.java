@@ -0,0 +1,126 @@
+package se.urbanEV.stats;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.population.Person;
+import se.urbanEV.charging.ChargingEndEvent;
+import se.urbanEV.charging.ChargingStartEvent;
+import se.urbanEV.charging.UnpluggingEvent;
+import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.scoring.ChargingBehaviourScoringEvent;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the charging events written by {@link EvEventSink} back into typed events, e.g. to pass them to an
+ * EventsManager for analysis:
+ * <pre>
+ * try (EvEventReader reader = new EvEventReader(path)) {
+ *     reader.readAll(eventsManager::processEvent);
+ * }
+ * </pre>
+ */
+public class EvEventReader implements Closeable {
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	private final DataInputStream in;
+	private final List<String> strings = new ArrayList<>();
+
+	public EvEventReader(Path file) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file),
+				BUFFER_BYTES), BUFFER_BYTES));
+		if (in.readInt() != EvEventSink.MAGIC) {
+			in.close();
+			throw new IOException("Not an EV events file: " + file);
+		}
+		int version = in.readInt();
+		if (version != EvEventSink.VERSION) {
+			in.close();
+			throw new IOException("Unsupported EV events file version " + version + ": " + file);
+		}
+		strings.add(null);// reference 0
+	}
+
+	/**
+	 * @return the next event, null at the end of the file
+	 */
+	public Event readNext() throws IOException {
+		while (true) {
+			int tag = in.read();
+			switch (tag) {
+				case -1:
+					return null;
+				case EvEventSink.STRING:
+					strings.add(in.readUTF());
+					break;
+				case EvEventSink.CHARGING_START:
+					return new ChargingStartEvent(in.readDouble(), readId(Charger.class),
+							readId(ElectricVehicle.class), readString());
+				case EvEventSink.CHARGING_END:
+					return new ChargingEndEvent(in.readDouble(), readId(Charger.class), readId(ElectricVehicle.class),
+							in.readDouble(), in.readDouble());
+				case EvEventSink.UNPLUGGING:
+					return new UnpluggingEvent(in.readDouble(), readId(Charger.class), readId(ElectricVehicle.class),
+							in.readDouble());
+				case EvEventSink.SCORING:
+					return new ChargingBehaviourScoringEvent(in.readDouble(), readId(Person.class),
+							readNullable(), readNullable(), readString(), in.readDouble(), readNullable(),
+							readNullable(), readString(), in.readBoolean());
+				default:
+					throw new IOException("Unknown record tag " + tag);
+			}
+		}
+	}
+
+	public void readAll(Consumer<? super Event> consumer) throws IOException {
+		for (Event event = readNext(); event != null; event = readNext()) {
+			consumer.accept(event);
+		}
+	}
+
+	private String readString() throws IOException {
+		int reference = readVarInt(in);
+		if (reference >= strings.size()) {
+			throw new IOException("Reference to a string not read yet: " + reference);
+		}
+		return strings.get(reference);
+	}
+
+	private <T> Id<T> readId(Class<T> idClass) throws IOException {
+		String id = readString();
+		return id != null ? Id.create(id, idClass) : null;
+	}
+
+	private Double readNullable() throws IOException {
+		double value = in.readDouble();
+		return Double.isNaN(value) ? null : value;
+	}
+
+	static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,225 @@
+package se.urbanEV.stats;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+import org.matsim.core.controler.listener.BeforeMobsimListener;
+import se.urbanEV.charging.ChargingEndEvent;
+import se.urbanEV.charging.ChargingEndEventHandler;
+import se.urbanEV.charging.ChargingStartEvent;
+import se.urbanEV.charging.ChargingStartEventHandler;
+import se.urbanEV.charging.UnpluggingEvent;
+import se.urbanEV.charging.UnpluggingEventHandler;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.scoring.ChargingBehaviourScoringEvent;
+import se.urbanEV.scoring.ChargingBehaviourScoringEventHandler;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the charging events ({@link ChargingStartEvent}, {@link ChargingEndEvent}, {@link UnpluggingEvent} and
+ * {@link ChargingBehaviourScoringEvent}) of every evEventsBinaryInterval-th and of the last iteration to
+ * {@value #FILE}, to be read with {@link EvEventReader}. Together with excludeEvEventsFromXml, they are no longer
+ * written as string attributes to the events xml file.
+ * <p>
+ * The file is a gzipped stream (big endian) of a header (magic, version) and records, each starting with a tag byte.
+ * Ids and other strings are interned: a string is written once, as a STRING record, and gets the next reference
+ * number (from 1); later records refer to it by this number as an unsigned varint, 0 meaning null. Missing values of
+ * the scoring event are written as NaN.
+ * <pre>
+ * STRING           utf
+ * CHARGING_START   time, charger, vehicle, chargerType
+ * CHARGING_END     time, charger, vehicle, soc, chargingDuration
+ * UNPLUGGING       time, charger, vehicle, pluggedInDuration
+ * SCORING          time, person, soc, walkingDistance, activityType, startSoc, pricingTime, energyChargedKWh,
+ *                  chargerType, costOnly (boolean)
+ * </pre>
+ */
+@Singleton
+public class EvEventSink
+		implements ChargingStartEventHandler, ChargingEndEventHandler, UnpluggingEventHandler,
+		ChargingBehaviourScoringEventHandler, BeforeMobsimListener, AfterMobsimListener {
+	public static final String FILE = "evEvents.bin.gz";
+
+	static final int MAGIC = 0x45564556;// "EVEV"
+	static final int VERSION = 1;
+
+	static final byte STRING = 0;
+	static final byte CHARGING_START = 1;
+	static final byte CHARGING_END = 2;
+	static final byte UNPLUGGING = 3;
+	static final byte SCORING = 4;
+
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	private final OutputDirectoryHierarchy controlerIO;
+	private final int interval;
+	private final int lastIteration;
+
+	private final Map<Object, Integer> references = new HashMap<>();// Ids and strings
+	private DataOutputStream out;// null if not written in the current iteration
+
+	@Inject
+	public EvEventSink(UrbanEVConfigGroup urbanEVCfg, Config config, OutputDirectoryHierarchy controlerIO) {
+		this.controlerIO = controlerIO;
+		this.interval = urbanEVCfg.getEvEventsBinaryInterval();
+		this.lastIteration = config.controler().getLastIteration();
+	}
+
+	@Override
+	public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+		int iteration = event.getIteration();
+		if (iteration != lastIteration && iteration % interval != 0) {
+			return;
+		}
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					new GZIPOutputStream(Files.newOutputStream(Paths.get(controlerIO.getIterationFilename(iteration,
+							FILE))), BUFFER_BYTES), BUFFER_BYTES));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		references.clear();
+	}
+
+	@Override
+	public void notifyAfterMobsim(AfterMobsimEvent event) {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		out = null;
+		references.clear();
+	}
+
+	@Override
+	public void handleEvent(ChargingStartEvent event) {
+		if (out == null) {
+			return;
+		}
+		try {
+			int charger = getReference(event.getChargerId());
+			int vehicle = getReference(event.getVehicleId());
+			int chargerType = getReference(event.getChargerType());
+			out.writeByte(CHARGING_START);
+			out.writeDouble(event.getTime());
+			writeVarInt(out, charger);
+			writeVarInt(out, vehicle);
+			writeVarInt(out, chargerType);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void handleEvent(ChargingEndEvent event) {
+		if (out == null) {
+			return;
+		}
+		try {
+			int charger = getReference(event.getChargerId());
+			int vehicle = getReference(event.getVehicleId());
+			out.writeByte(CHARGING_END);
+			out.writeDouble(event.getTime());
+			writeVarInt(out, charger);
+			writeVarInt(out, vehicle);
+			out.writeDouble(event.getSoc());
+			out.writeDouble(event.getCharging_duration());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void handleEvent(UnpluggingEvent event) {
+		if (out == null) {
+			return;
+		}
+		try {
+			int charger = getReference(event.getChargerId());
+			int vehicle = getReference(event.getVehicleId());
+			out.writeByte(UNPLUGGING);
+			out.writeDouble(event.getTime());
+			writeVarInt(out, charger);
+			writeVarInt(out, vehicle);
+			out.writeDouble(event.getPluggedInDuration());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void handleEvent(ChargingBehaviourScoringEvent event) {
+		if (out == null) {
+			return;
+		}
+		try {
+			int person = getReference(event.getPersonId());
+			int activityType = getReference(event.getActivityType());
+			int chargerType = getReference(event.getChargerType());
+			out.writeByte(SCORING);
+			out.writeDouble(event.getTime());
+			writeVarInt(out, person);
+			out.writeDouble(toPrimitive(event.getSoc()));
+			out.writeDouble(toPrimitive(event.getWalkingDistance()));
+			writeVarInt(out, activityType);
+			out.writeDouble(toPrimitive(event.getStartSoc()));
+			out.writeDouble(toPrimitive(event.getPricingTime()));
+			out.writeDouble(toPrimitive(event.getEnergyChargedKWh()));
+			writeVarInt(out, chargerType);
+			out.writeBoolean(event.isCostOnly());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes a STRING record if the value has not been written yet.
+	 *
+	 * @param value Id or String, may be null
+	 */
+	private int getReference(Object value) throws IOException {
+		if (value == null) {
+			return 0;
+		}
+		Integer reference = references.get(value);
+		if (reference == null) {
+			reference = references.size() + 1;
+			references.put(value, reference);
+			out.writeByte(STRING);
+			out.writeUTF(value.toString());
+		}
+		return reference;
+	}
+
+	private static double toPrimitive(Double value) {
+		return value != null ? value : Double.NaN;
+	}
+
+	static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+}
@@ -0,0 +1,114 @@
+package se.urbanEV.stats;
+
+import com.google.inject.Inject;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.groups.ControlerConfigGroup;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.corelisteners.EventsHandling;
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.events.IterationEndsEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.listener.IterationEndsListener;
+import org.matsim.core.controler.listener.ShutdownListener;
+import org.matsim.core.events.algorithms.EventWriterXML;
+import org.matsim.core.events.handler.BasicEventHandler;
+import se.urbanEV.charging.ChargingEndEvent;
+import se.urbanEV.charging.ChargingStartEvent;
+import se.urbanEV.charging.UnpluggingEvent;
+import se.urbanEV.scoring.ChargingBehaviourScoringEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Events handling of the controler (a core listener) if excludeEvEventsFromXml is set, bound by {@link EvStatsModule}
+ * in place of the default one. Like the default, it resets the events manager before and flushes it after the mobsim,
+ * and writes the events file in the iterations selected by writeEventsInterval and writeEventsUntilIteration of the
+ * controler group, but without the charging events, which are written by {@link EvEventSink} instead. Of the
+ * eventsFileFormats, only xml is supported; other formats are skipped with a warning.
+ */
+public class EvEventsXmlWriter implements EventsHandling, BeforeMobsimListener, AfterMobsimListener,
+		IterationEndsListener, ShutdownListener {
+	private static final Logger log = Logger.getLogger(EvEventsXmlWriter.class);
+
+	private static final Set<String> EXCLUDED_EVENT_TYPES = Set.of(ChargingStartEvent.EVENT_TYPE,
+			ChargingEndEvent.EVENT_TYPE, UnpluggingEvent.EVENT_TYPE, ChargingBehaviourScoringEvent.EVENT_TYPE);
+
+	private final EventsManager eventsManager;
+	private final ControlerConfigGroup controlerCfg;
+	private final OutputDirectoryHierarchy controlerIO;
+
+	private final List<EventWriterXML> writers = new ArrayList<>();
+	private final List<BasicEventHandler> filters = new ArrayList<>();
+
+	@Inject
+	public EvEventsXmlWriter(EventsManager eventsManager, Config config, OutputDirectoryHierarchy controlerIO) {
+		this.eventsManager = eventsManager;
+		this.controlerCfg = config.controler();
+		this.controlerIO = controlerIO;
+	}
+
+	@Override
+	public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+		int iteration = event.getIteration();
+		eventsManager.resetHandlers(iteration);
+		int writeEventsInterval = controlerCfg.getWriteEventsInterval();
+		if ((writeEventsInterval > 0 && iteration % writeEventsInterval == 0)
+				|| iteration <= controlerCfg.getWriteEventsUntilIteration()) {
+			for (ControlerConfigGroup.EventsFileFormat format : controlerCfg.getEventsFileFormats()) {
+				if (format == ControlerConfigGroup.EventsFileFormat.xml) {
+					addFilteredWriter(
+							new EventWriterXML(controlerIO.getIterationFilename(iteration, Controler.DefaultFiles.events)));
+				} else {
+					log.warn("Events file format " + format + " is not written with excludeEvEventsFromXml");
+				}
+			}
+		}
+		eventsManager.initProcessing();
+	}
+
+	private void addFilteredWriter(EventWriterXML writer) {
+		BasicEventHandler filter = new BasicEventHandler() {
+			@Override
+			public void handleEvent(Event e) {
+				if (!EXCLUDED_EVENT_TYPES.contains(e.getEventType())) {
+					writer.handleEvent(e);
+				}
+			}
+		};
+		writers.add(writer);
+		filters.add(filter);
+		eventsManager.addHandler(filter);
+	}
+
+	@Override
+	public void notifyAfterMobsim(AfterMobsimEvent event) {
+		// all events are processed before the other after-mobsim listeners run, as with the default handling
+		eventsManager.finishProcessing();
+	}
+
+	@Override
+	public void notifyIterationEnds(IterationEndsEvent event) {
+		for (int i = 0; i < writers.size(); i++) {
+			eventsManager.removeHandler(filters.get(i));
+			writers.get(i).closeFile();
+		}
+		writers.clear();
+		filters.clear();
+	}
+
+	@Override
+	public void notifyShutdown(ShutdownEvent event) {
+		for (EventWriterXML writer : writers) {
+			writer.closeFile();
+		}
+	}
+}
@@ -31,6 +31,7 @@ email	:	lennart.adenaw@tum.de
 package se.urbanEV.stats;
 
 import com.google.inject.Inject;
+import se.urbanEV.config.UrbanEVConfigGroup;
 import se.urbanEV.discharging.DriveDischargingHandler;
 import se.urbanEV.scoring.ChargingBehaviourScoring;
 import org.apache.commons.csv.CSVFormat;
@@ -43,18 +44,22 @@ import org.matsim.core.controler.IterationCounter;
 import org.matsim.core.controler.OutputDirectoryHierarchy;
 import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
 import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
-import org.matsim.core.utils.misc.Time;
+import org.matsim.core.mobsim.qsim.interfaces.MobsimTimer;
+import org.matsim.core.utils.io.IOUtils;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.OpenOption;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class EvMobsimListener implements MobsimBeforeCleanupListener {
 
-	static private final int SECS_PER_DAY = 24*60*60;
-
 	@Inject
 	DriveDischargingHandler driveDischargingHandler;
 	@Inject
@@ -67,6 +72,12 @@ public class EvMobsimListener implements MobsimBeforeCleanupListener {
 	IterationCounter iterationCounter;
 	@Inject
 	Network network;
+	@Inject
+	MobsimTimer mobsimTimer;
+	@Inject
+	EvOutputWriter outputWriter;
+	@Inject
+	UrbanEVConfigGroup urbanEVCfg;
 
 	@Override
 	public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent event) {
@@ -74,8 +85,9 @@ public class EvMobsimListener implements MobsimBeforeCleanupListener {
 		// Retrieve ChargingBehaviorScoresCollector Singleton
 		ChargingBehaviorScoresCollector chargingBehaviorScoresCollector = ChargingBehaviorScoresCollector.getInstance();
 
-		// Data Output
+		// Data Output (the outputs are snapshotted and handed to the output writer)
 		writeChargingBehaviourScoringStats(chargingBehaviorScoresCollector);
+		writeScoringDistributions(chargingBehaviorScoresCollector);
 		writeChargingStats();
 		writeChargerOccupancyStats();
 		writeLinkEnergyStats();
@@ -85,160 +97,135 @@ public class EvMobsimListener implements MobsimBeforeCleanupListener {
 	}
 
 	private void writeChargingStats(){
-		try{
-			CSVPrinter csvPrinter = new CSVPrinter(Files.newBufferedWriter(Paths.get(controlerIO.getIterationFilename(iterationCounter.getIterationNumber(), "chargingStats.csv"))), CSVFormat.DEFAULT.withDelimiter(';').
-					withHeader(
-							"chargerId",
-							"xCoord",
-							"yCoord",
-							"vehicleId",
-							"startTime_matsim",
-							"startTime_24h",
-							"startTime",
-							"startDay",
-							"endTime_matsim",
-							"endTime_24h",
-							"endTime",
-							"endDay",
-							"chargingDuration",
-							"unplugTime_matsim",
-							"unplugTime_24h",
-							"unplugTime",
-							"unplugDay",
-							"pluggedDuration",
-							"chargingRatio",
-							"startSoc",
-							"startSoc_kWh",
-							"endSoc",
-							"endSoc_kWh",
-							"transmittedEnergy_kWh",
-							"walkingDistance"
-					));
-
-			for (ChargingLogEntry e : chargerPowerCollector.getLogList()) {
-				csvPrinter.printRecord(
-						e.getCharger().getId().toString(),
-						e.getCharger().getCoord().getX(),
-						e.getCharger().getCoord().getY(),
-						e.getElectricVehicleId().toString(),
-						Time.writeTime(e.getStartTime()),
-						Time.writeTime(e.getStartTime()%SECS_PER_DAY),
-						Double.toString(e.getStartTime()),
-						Integer.toString((int) e.getStartTime()/SECS_PER_DAY+1),
-						Time.writeTime(e.getEndTime()),
-						Time.writeTime(e.getEndTime()%SECS_PER_DAY),
-						Double.toString(e.getEndTime()),
-						Integer.toString((int) e.getEndTime()/SECS_PER_DAY+1),
-						Double.toString(e.getChargingDuration()),
-						Time.writeTime(e.getUnplugTime()),
-						Time.writeTime(e.getUnplugTime()%SECS_PER_DAY),
-						Double.toString(e.getUnplugTime()),
-						Integer.toString((int) e.getUnplugTime()/SECS_PER_DAY+1),
-						Double.toString(e.getPluggedDuration()),
-						Double.toString(Math.round(e.getChargingRatio()*1000.0)/1000.0),
-						Double.toString(Math.round(e.getStartSOC()*1000.0)/1000.0),
-						Double.toString(Math.round(EvUnits.J_to_kWh(e.getStartSOC_J()*1000.0)/1000.0)),
-						Double.toString(Math.round(e.getEndSOC()*1000.0)/1000.0),
-						Double.toString(Math.round(EvUnits.J_to_kWh(e.getEndSOC_J()*1000.0)/1000.0)),
-						Double.toString(Math.round(EvUnits.J_to_kWh(e.getTransmittedEnergy_J()*1000.0)/1000.0)),
-						Double.toString(Math.round(e.getWalkingDistance()*1000.0)/1000.0)
-						);
-			}
-
-			csvPrinter.close();
-	}
-		catch (RuntimeException e){
-		e.printStackTrace();
-	}
-		catch (IOException io){
-		io.printStackTrace();
+		if (chargerPowerCollector.isStreaming()) {
+			// sessions have been handed to the output writer in chunks while the simulation was running
+			chargerPowerCollector.closeStream();
+			return;
+		}
+		List<ChargingLogEntry> logList = new ArrayList<>(chargerPowerCollector.getLogList());
+		String file = controlerIO.getIterationFilename(iterationCounter.getIterationNumber(),
+				ChargingStatsCsv.getFileName(urbanEVCfg.isCompressedEvOutputs()));
+		outputWriter.submit(file, () -> writeChargingStats(logList, file));
 	}
+
+	private static void writeChargingStats(List<ChargingLogEntry> logList, String file) throws IOException {
+		try (CSVPrinter csvPrinter = ChargingStatsCsv.open(file)) {
+			for (ChargingLogEntry e : logList) {
+				ChargingStatsCsv.printRecord(csvPrinter, e);
+			}
+		}
 	}
 
 	private void writeLinkEnergyStats(){
-		try {
-			CSVPrinter csvPrinter2 = new CSVPrinter(Files.newBufferedWriter(Paths.get(controlerIO.getIterationFilename(iterationCounter.getIterationNumber(), "evConsumptionPerLink.csv"))), CSVFormat.DEFAULT.withDelimiter(';').withHeader("Link", "TotalConsumptionPerKm", "TotalConsumption"));
-			for (Map.Entry<Id<Link>, Double> e : driveDischargingHandler.getEnergyConsumptionPerLink().entrySet()) {
+		Map<Id<Link>, Double> energyConsumptionPerLink = new HashMap<>(driveDischargingHandler.getEnergyConsumptionPerLink());
+		String file = controlerIO.getIterationFilename(iterationCounter.getIterationNumber(),
+				urbanEVCfg.isCompressedEvOutputs() ? "evConsumptionPerLink.csv.gz" : "evConsumptionPerLink.csv");
+		outputWriter.submit(file, () -> writeLinkEnergyStats(energyConsumptionPerLink, network, file));
+	}
+
+	private static void writeLinkEnergyStats(Map<Id<Link>, Double> energyConsumptionPerLink, Network network,
+			String file) throws IOException {
+		try (CSVPrinter csvPrinter2 = new CSVPrinter(IOUtils.getBufferedWriter(file), CSVFormat.DEFAULT.withDelimiter(';').withHeader("Link", "TotalConsumptionPerKm", "TotalConsumption"))) {
+			for (Map.Entry<Id<Link>, Double> e : energyConsumptionPerLink.entrySet()) {
 				csvPrinter2.printRecord(e.getKey(), (EvUnits.J_to_kWh(e.getValue())) / (network.getLinks()
 						.get(e.getKey())
 						.getLength() / 1000.0), EvUnits.J_to_kWh(e.getValue()));
 			}
-			csvPrinter2.close();
-		}
-		catch (RuntimeException e){
-			e.printStackTrace();
-		}
-		catch (IOException io){
-			io.printStackTrace();
 		}
 	}
 
 	private void writeChargerOccupancyStats(){
-		// write charger occupancy plan file
+		if (chargerOccupancyHistoryCollector.isOccupancyCsvOutput()) {
+			// intervals have been streamed during the simulation, only the open ones are left
+			chargerOccupancyHistoryCollector.closeOccupancyCsv(mobsimTimer.getTimeOfDay());
+			return;
+		}
+		// write charger occupancy plan file (the histories are a snapshot of the occupancy log)
 		ChargerOccupancyPlanWriter chargerOccupancyPlanWriter = new ChargerOccupancyPlanWriter(chargerOccupancyHistoryCollector.getOccupancyHistories());
-		chargerOccupancyPlanWriter.write(Paths.get(controlerIO.getIterationFilename(iterationCounter.getIterationNumber(), "charger_occupancy_plan.xml")).toString());
+		String file = controlerIO.getIterationFilename(iterationCounter.getIterationNumber(), "charger_occupancy_plan.xml");
+		outputWriter.submit(file, () -> chargerOccupancyPlanWriter.write(file));
+	}
+
+	private void writeScoringDistributions(ChargingBehaviorScoresCollector chargingBehaviorScoresCollector){
+		int bins = chargingBehaviorScoresCollector.getDistributionBins();
+		if (bins == 0) {
+			return;
+		}
+		Map<ChargingBehaviourScoring.ScoreComponents, long[]> distributions = new EnumMap<>(ChargingBehaviourScoring.ScoreComponents.class);
+		for (ChargingBehaviourScoring.ScoreComponents component : ChargingBehaviourScoring.ScoreComponents.values()) {
+			distributions.put(component, chargingBehaviorScoresCollector.getDistribution(component));
+		}
+		double[] lowerBounds = new double[bins + 1];
+		for (int b = 0; b <= bins; b++) {
+			lowerBounds[b] = chargingBehaviorScoresCollector.getDistributionBinLowerBound(b);
+		}
+		String file = controlerIO.getIterationFilename(iterationCounter.getIterationNumber(), "scoringDistributions.csv");
+		outputWriter.submit(file, () -> {
+			try (CSVPrinter csvPrinter = new CSVPrinter(Files.newBufferedWriter(Paths.get(file)), CSVFormat.DEFAULT.withDelimiter(';').withHeader("component", "binLowerBound", "binUpperBound", "count"))) {
+				for (Map.Entry<ChargingBehaviourScoring.ScoreComponents, long[]> e : distributions.entrySet()) {
+					for (int b = 0; b < bins; b++) {
+						csvPrinter.printRecord(e.getKey(), lowerBounds[b], lowerBounds[b + 1], e.getValue()[b]);
+					}
+				}
+			}
+		});
 	}
 
 	private void writeChargingBehaviourScoringStats(ChargingBehaviorScoresCollector chargingBehaviorScoresCollector){
 
 		int curIteration = iterationCounter.getIterationNumber();
 
-		// Write Scoring Components
-		try{
-
-			CSVPrinter csvPrinter;
-
-			if(curIteration==0) {
-				csvPrinter = new CSVPrinter(Files.newBufferedWriter(Paths.get(controlerIO.getOutputPath(), "scoringComponents.csv"), StandardOpenOption.CREATE), CSVFormat.DEFAULT.withDelimiter(';').withHeader(
-						"iterationNumber",
-						"sumRangeAnxiety",
-						"rangeAnxietyScoringPersons",
-						"meanRangeAnxiety",
-						"sumEmptyBattery",
-						"emptyBatteryScoringPersons",
-						"meanEmptyBattery",
-						"sumWalkingDistance",
-						"walkingDistanceScoringPersons",
-						"meanWalkingDistance",
-						"sumHomeCharging",
-						"homeChargingScoringPersons",
-						"meanHomeCharging",
-						"sumEnergyBalance",
-						"energyBalanceScoringPersons",
-						"meanEnergyBalance"
-				));
-			} else {
-				csvPrinter = new CSVPrinter(Files.newBufferedWriter(Paths.get(controlerIO.getOutputPath(), "scoringComponents.csv"), StandardOpenOption.APPEND), CSVFormat.DEFAULT.withDelimiter(';'));
-			}
-
+		// Snapshot of the Scoring Components
+		String[] record = {
+				Integer.toString(curIteration),
+				Double.toString(chargingBehaviorScoresCollector.getComponentSum(ChargingBehaviourScoring.ScoreComponents.RANGE_ANXIETY)), 							// sum RANGE_ANXIETY
+				Double.toString(chargingBehaviorScoresCollector.getNumberOfScoringPersonsForComponent(ChargingBehaviourScoring.ScoreComponents.RANGE_ANXIETY)), 	// number of persons scoring RANGE_ANXIETY
+				Double.toString(chargingBehaviorScoresCollector.getComponentMean(ChargingBehaviourScoring.ScoreComponents.RANGE_ANXIETY)), 							// mean RANGE_ANXIETY
+				Double.toString(chargingBehaviorScoresCollector.getComponentSum(ChargingBehaviourScoring.ScoreComponents.EMPTY_BATTERY)), 							// sum EMPTY_BATTERY
+				Double.toString(chargingBehaviorScoresCollector.getNumberOfScoringPersonsForComponent(ChargingBehaviourScoring.ScoreComponents.EMPTY_BATTERY)), 	// number of persons scoring EMPTY_BATTERY
+				Double.toString(chargingBehaviorScoresCollector.getComponentMean(ChargingBehaviourScoring.ScoreComponents.EMPTY_BATTERY)), 							// mean EMPTY_BATTERY
+				Double.toString(chargingBehaviorScoresCollector.getComponentSum(ChargingBehaviourScoring.ScoreComponents.WALKING_DISTANCE)), 						// sum WALKING_DISTANCE
+				Double.toString(chargingBehaviorScoresCollector.getNumberOfScoringPersonsForComponent(ChargingBehaviourScoring.ScoreComponents.WALKING_DISTANCE)), 	// number of persons scoring WALKING_DISTANCE
+				Double.toString(chargingBehaviorScoresCollector.getComponentMean(ChargingBehaviourScoring.ScoreComponents.WALKING_DISTANCE)), 						// mean WALKING_DISTANCE
+				Double.toString(chargingBehaviorScoresCollector.getComponentSum(ChargingBehaviourScoring.ScoreComponents.HOME_CHARGING)), 							// sum HOME_CHARGING
+				Double.toString(chargingBehaviorScoresCollector.getNumberOfScoringPersonsForComponent(ChargingBehaviourScoring.ScoreComponents.HOME_CHARGING)), 	// number of persons scoring HOME_CHARGING
+				Double.toString(chargingBehaviorScoresCollector.getComponentMean(ChargingBehaviourScoring.ScoreComponents.HOME_CHARGING)), 							// mean HOME_CHARGING
+				Double.toString(chargingBehaviorScoresCollector.getComponentSum(ChargingBehaviourScoring.ScoreComponents.ENERGY_BALANCE)), 							// sum ENERGY_BALANCE
+				Double.toString(chargingBehaviorScoresCollector.getNumberOfScoringPersonsForComponent(ChargingBehaviourScoring.ScoreComponents.ENERGY_BALANCE)), 	// number of persons scoring ENERGY_BALANCE
+				Double.toString(chargingBehaviorScoresCollector.getComponentMean(ChargingBehaviourScoring.ScoreComponents.ENERGY_BALANCE)) 							// mean ENERGY_BALANCE
+		};
+
+		// Write Scoring Components (the output writer appends the rows of successive iterations in order)
+		String file = Paths.get(controlerIO.getOutputPath(), "scoringComponents.csv").toString();
+		outputWriter.submit(file, () -> writeChargingBehaviourScoringStats(record, curIteration, file));
+	}
 
-			csvPrinter.printRecord(
-					Integer.toString(curIteration),
-					Double.toString(chargingBehaviorScoresCollector.getComponentSum(ChargingBehaviourScoring.ScoreComponents.RANGE_ANXIETY)), 							// sum RANGE_ANXIETY
-					Double.toString(chargingBehaviorScoresCollector.getNumberOfScoringPersonsForComponent(ChargingBehaviourScoring.ScoreComponents.RANGE_ANXIETY)), 	// number of persons scoring RANGE_ANXIETY
-					Double.toString(chargingBehaviorScoresCollector.getComponentMean(ChargingBehaviourScoring.ScoreComponents.RANGE_ANXIETY)), 							// mean RANGE_ANXIETY
-					Double.toString(chargingBehaviorScoresCollector.getComponentSum(ChargingBehaviourScoring.ScoreComponents.EMPTY_BATTERY)), 							// sum EMPTY_BATTERY
-					Double.toString(chargingBehaviorScoresCollector.getNumberOfScoringPersonsForComponent(ChargingBehaviourScoring.ScoreComponents.EMPTY_BATTERY)), 	// number of persons scoring EMPTY_BATTERY
-					Double.toString(chargingBehaviorScoresCollector.getComponentMean(ChargingBehaviourScoring.ScoreComponents.EMPTY_BATTERY)), 							// mean EMPTY_BATTERY
-					Double.toString(chargingBehaviorScoresCollector.getComponentSum(ChargingBehaviourScoring.ScoreComponents.WALKING_DISTANCE)), 						// sum WALKING_DISTANCE
-					Double.toString(chargingBehaviorScoresCollector.getNumberOfScoringPersonsForComponent(ChargingBehaviourScoring.ScoreComponents.WALKING_DISTANCE)), 	// number of persons scoring WALKING_DISTANCE
-					Double.toString(chargingBehaviorScoresCollector.getComponentMean(ChargingBehaviourScoring.ScoreComponents.WALKING_DISTANCE)), 						// mean WALKING_DISTANCE
-					Double.toString(chargingBehaviorScoresCollector.getComponentSum(ChargingBehaviourScoring.ScoreComponents.HOME_CHARGING)), 							// sum HOME_CHARGING
-					Double.toString(chargingBehaviorScoresCollector.getNumberOfScoringPersonsForComponent(ChargingBehaviourScoring.ScoreComponents.HOME_CHARGING)), 	// number of persons scoring HOME_CHARGING
-					Double.toString(chargingBehaviorScoresCollector.getComponentMean(ChargingBehaviourScoring.ScoreComponents.HOME_CHARGING)), 							// mean HOME_CHARGING
-					Double.toString(chargingBehaviorScoresCollector.getComponentSum(ChargingBehaviourScoring.ScoreComponents.ENERGY_BALANCE)), 							// sum ENERGY_BALANCE
-					Double.toString(chargingBehaviorScoresCollector.getNumberOfScoringPersonsForComponent(ChargingBehaviourScoring.ScoreComponents.ENERGY_BALANCE)), 	// number of persons scoring ENERGY_BALANCE
-					Double.toString(chargingBehaviorScoresCollector.getComponentMean(ChargingBehaviourScoring.ScoreComponents.ENERGY_BALANCE)) 							// mean ENERGY_BALANCE
+	private static void writeChargingBehaviourScoringStats(String[] record, int curIteration, String file) throws IOException {
+		CSVFormat csvFormat = CSVFormat.DEFAULT.withDelimiter(';');
+		OpenOption openOption = StandardOpenOption.APPEND;
+		if (curIteration == 0) {
+			csvFormat = csvFormat.withHeader(
+					"iterationNumber",
+					"sumRangeAnxiety",
+					"rangeAnxietyScoringPersons",
+					"meanRangeAnxiety",
+					"sumEmptyBattery",
+					"emptyBatteryScoringPersons",
+					"meanEmptyBattery",
+					"sumWalkingDistance",
+					"walkingDistanceScoringPersons",
+					"meanWalkingDistance",
+					"sumHomeCharging",
+					"homeChargingScoringPersons",
+					"meanHomeCharging",
+					"sumEnergyBalance",
+					"energyBalanceScoringPersons",
+					"meanEnergyBalance"
 			);
-
-
-			csvPrinter.close();
-		}
-		catch (RuntimeException e){
-			e.printStackTrace();
+			openOption = StandardOpenOption.CREATE;
 		}
-		catch (IOException io){
-			io.printStackTrace();
+		try (CSVPrinter csvPrinter = new CSVPrinter(Files.newBufferedWriter(Paths.get(file), openOption), csvFormat)) {
+			csvPrinter.printRecord((Object[])record);
 		}
 	}
 }
@@ -0,0 +1,172 @@
+package se.urbanEV.stats;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.log4j.Logger;
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.listener.ShutdownListener;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.metrics.EvMetrics;
+import se.urbanEV.metrics.OutputWriteJfrEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the iteration output tasks of the EV statistics on a bounded pool of background threads (outputWriterThreads),
+ * so the next iteration can start as soon as the data has been snapshotted. With 0 threads, tasks run immediately in
+ * the calling thread.
+ * <p>
+ * The queue is bounded; if it is full, the submitting thread writes the file itself, as it does for tasks submitted
+ * after the pool has been shut down (e.g. by shutdown listeners that run after this one). Tasks with the same name run
+ * one after the other, in the order in which they were submitted, so a file can be appended to once per iteration. A
+ * failed task is rethrown on the next {@link #submit(String, OutputTask)} and, at the latest, at shutdown, where all
+ * pending tasks are awaited.
+ */
+@Singleton
+public class EvOutputWriter implements ShutdownListener {
+	private static final Logger log = Logger.getLogger(EvOutputWriter.class);
+	private static final int QUEUE_CAPACITY_PER_THREAD = 4;
+	private static final String THREAD_NAME_PREFIX = "ev-output-writer-";
+	private static final EvMetrics.Timer WRITE_TIMER = EvMetrics.getInstance().timer("EvOutputWriter.write");
+
+	public interface OutputTask {
+		void write() throws IOException;
+	}
+
+	private final ExecutorService executor;// null if synchronous
+	private final List<Future<?>> pendingTasks = new ArrayList<>();
+	private final List<String> pendingTaskNames = new ArrayList<>();
+	private final Map<String, Future<?>> lastTasks = new HashMap<>();// by name
+
+	@Inject
+	public EvOutputWriter(UrbanEVConfigGroup urbanEVCfg) {
+		int threads = urbanEVCfg.getOutputWriterThreads();
+		if (threads == 0) {
+			executor = null;
+			return;
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(threads * QUEUE_CAPACITY_PER_THREAD), r -> {
+			Thread thread = new Thread(r, THREAD_NAME_PREFIX + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * @param name for error messages, e.g. the file name
+	 * @param task must only use data that is not modified afterwards (i.e. snapshots)
+	 */
+	public synchronized void submit(String name, OutputTask task) {
+		if (executor == null || executor.isShutdown()) {
+			run(name, task);
+			return;
+		}
+		checkCompletedTasks();
+		Future<?> previousTask = lastTasks.get(name);
+		Future<?> pendingTask = executor.submit(() -> {
+			awaitPreviousTask(previousTask);
+			run(name, task);
+			return null;
+		});
+		pendingTasks.add(pendingTask);
+		pendingTaskNames.add(name);
+		lastTasks.put(name, pendingTask);
+	}
+
+	private static void awaitPreviousTask(Future<?> previousTask) throws InterruptedException {
+		// submitted earlier, so it has already been taken from the queue (or run by the caller)
+		if (previousTask != null) {
+			try {
+				previousTask.get();
+			} catch (ExecutionException e) {
+				// reported with the previous task
+			}
+		}
+	}
+
+	private static void run(String name, OutputTask task) {
+		OutputWriteJfrEvent jfrEvent = new OutputWriteJfrEvent();
+		jfrEvent.begin();
+		long start = WRITE_TIMER.start();
+		try {
+			task.write();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Writing " + name + " failed", e);
+		}
+		WRITE_TIMER.stop(start);
+		if (jfrEvent.shouldCommit()) {
+			jfrEvent.name = name;
+			jfrEvent.background = Thread.currentThread().getName().startsWith(THREAD_NAME_PREFIX);
+			jfrEvent.commit();
+		}
+	}
+
+	private void checkCompletedTasks() {
+		Iterator<Future<?>> tasks = pendingTasks.iterator();
+		Iterator<String> names = pendingTaskNames.iterator();
+		while (tasks.hasNext()) {
+			Future<?> task = tasks.next();
+			String name = names.next();
+			if (task.isDone()) {
+				lastTasks.remove(name, task);
+				getResult(task, name);
+				tasks.remove();
+				names.remove();
+			}
+		}
+	}
+
+	private static void getResult(Future<?> task, String name) {
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for " + name, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof RuntimeException ? (RuntimeException)cause : new RuntimeException(cause);
+		}
+	}
+
+	@Override
+	public synchronized void notifyShutdown(ShutdownEvent event) {
+		if (executor == null) {
+			return;
+		}
+		log.info("Waiting for " + pendingTasks.size() + " EV output tasks to complete");
+		executor.shutdown();
+		RuntimeException failure = null;
+		for (int i = 0; i < pendingTasks.size(); i++) {
+			try {
+				getResult(pendingTasks.get(i), pendingTaskNames.get(i));
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		pendingTasks.clear();
+		pendingTaskNames.clear();
+		lastTasks.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -32,8 +32,10 @@ package se.urbanEV.stats;
 
 import com.google.inject.Inject;
 import se.urbanEV.EvModule;
+import se.urbanEV.config.UrbanEVConfigGroup;
 import org.matsim.contrib.ev.EvConfigGroup;
 import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.corelisteners.EventsHandling;
 import org.matsim.core.mobsim.qsim.AbstractQSimModule;
 
 /**
@@ -42,13 +44,45 @@ import org.matsim.core.mobsim.qsim.AbstractQSimModule;
 public class EvStatsModule extends AbstractModule {
 	@Inject
 	private EvConfigGroup evCfg;
+	@Inject
+	private UrbanEVConfigGroup urbanEVCfg;
 
 	@Override
 	public void install() {
+		bind(EvOutputWriter.class).asEagerSingleton();
+		addControlerListenerBinding().to(EvOutputWriter.class);
+		bind(MidnightSocHistogram.class).asEagerSingleton();
+		if (evCfg.getTimeProfiles() && urbanEVCfg.isChargingSessionQuantiles()) {
+			bind(ChargingSessionSketches.class).asEagerSingleton();
+			addControlerListenerBinding().to(ChargingSessionSketches.class);
+		}
+		if (urbanEVCfg.getEvEventsBinaryInterval() > 0) {
+			bind(EvEventSink.class).asEagerSingleton();
+			addEventHandlerBinding().to(EvEventSink.class);
+			addControlerListenerBinding().to(EvEventSink.class);
+		}
+		if (urbanEVCfg.isExcludeEvEventsFromXml()) {
+			// replaces the controler's default events handling, which writes all events
+			bind(EventsHandling.class).to(EvEventsXmlWriter.class);
+		}
+
 		installQSimModule(new AbstractQSimModule() {
 			@Override
 			protected void configureQSim() {
+				// used for re-initialising start socs after the last iteration, independent of the time profiles
+				addQSimComponentBinding(EvModule.EV_COMPONENT).to(MidnightSocHistogram.Collector.class);
+
+				if (urbanEVCfg.getSocTrajectoryInterval() > 0) {
+					addQSimComponentBinding(EvModule.EV_COMPONENT).to(SocTrajectoryRecorder.class);
+				}
+				if (urbanEVCfg.getChargingGridCellSize() > 0) {
+					bind(ChargingDemandGrid.class).asEagerSingleton();
+					addQSimComponentBinding(EvModule.EV_COMPONENT).to(ChargingDemandGrid.class);
+				}
+
 				if (evCfg.getTimeProfiles()) {
+					bind(FleetSocSnapshot.class).asEagerSingleton();
+					bind(ChargerOccupancyCounters.class).asEagerSingleton();
 					addQSimComponentBinding(EvModule.EV_COMPONENT).toProvider(
 							SocHistogramTimeProfileCollectorProvider.class);
 					addQSimComponentBinding(EvModule.EV_COMPONENT).toProvider(
@@ -0,0 +1,151 @@
+package se.urbanEV.stats;
+
+import com.google.inject.Inject;
+import org.matsim.core.mobsim.qsim.interfaces.MobsimTimer;
+import se.urbanEV.discharging.PendingDischarges;
+import se.urbanEV.fleet.Battery;
+import se.urbanEV.fleet.ElectricFleet;
+import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.fleet.FleetSocHistogram;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SoC of the whole fleet at the current simulation time, shared by the SoC time profile collectors.
+ * <p>
+ * The first collector that asks for the snapshot at a given time triggers a single pass over the fleet, which fills
+ * the SoC histogram, the per-vehicle-type sums and counts and the SoC of every vehicle (for individual profiles). All
+ * other collectors sampling at the same time read the results.
+ * <p>
+ * If a {@link FleetSocHistogram} is bound (incrementalSocHistogram), the histogram and averages are read from it
+ * and no pass over the fleet is needed at all. Both classes index vehicle types in order of first appearance in the
+ * fleet, so the type indices are interchangeable.
+ * <p>
+ * Deferred discharging ({@link PendingDischarges}) is settled before each snapshot.
+ */
+public class FleetSocSnapshot {
+	private final MobsimTimer mobsimTimer;
+	private final PendingDischarges pendingDischarges;
+
+	@Inject(optional = true)
+	private FleetSocHistogram incrementalHistogram;
+
+	private final ElectricVehicle[] vehicles;
+	private final int[] vehicleTypeIndices;
+	private final String[] vehicleTypeNames;
+
+	private final double[] socs;// [J]
+	private final long[] histogram = new long[FleetSocHistogram.BINS + 1];// [0] = empty batteries
+	private final double[] vehicleTypeSocSums;// [J]
+	private final int[] vehicleTypeCounts;
+	private double fleetSocSum;// [J]
+
+	private double snapshotTime = Double.NaN;
+
+	@Inject
+	public FleetSocSnapshot(ElectricFleet evFleet, MobsimTimer mobsimTimer, PendingDischarges pendingDischarges) {
+		this.mobsimTimer = mobsimTimer;
+		this.pendingDischarges = pendingDischarges;
+		vehicles = evFleet.getElectricVehicles().values().toArray(new ElectricVehicle[0]);
+
+		Map<String, Integer> typeIndices = new LinkedHashMap<>();
+		vehicleTypeIndices = new int[vehicles.length];
+		for (int i = 0; i < vehicles.length; i++) {
+			String typeName = vehicles[i].getVehicleType().getName();
+			Integer typeIndex = typeIndices.get(typeName);
+			if (typeIndex == null) {
+				typeIndex = typeIndices.size();
+				typeIndices.put(typeName, typeIndex);
+			}
+			vehicleTypeIndices[i] = typeIndex;
+		}
+		vehicleTypeNames = typeIndices.keySet().toArray(new String[0]);
+
+		vehicleTypeCounts = new int[vehicleTypeNames.length];
+		for (int typeIndex : vehicleTypeIndices) {
+			vehicleTypeCounts[typeIndex]++;
+		}
+
+		socs = new double[vehicles.length];
+		vehicleTypeSocSums = new double[vehicleTypeNames.length];
+	}
+
+	/**
+	 * Takes a new snapshot, unless one has already been taken at the current simulation time.
+	 */
+	public synchronized void update() {
+		double now = mobsimTimer.getTimeOfDay();
+		if (now == snapshotTime) {
+			return;
+		}
+		snapshotTime = now;
+		pendingDischarges.settle(now);
+		if (incrementalHistogram != null) {
+			return;
+		}
+
+		Arrays.fill(histogram, 0);
+		Arrays.fill(vehicleTypeSocSums, 0);
+		fleetSocSum = 0;
+		for (int i = 0; i < vehicles.length; i++) {
+			Battery battery = vehicles[i].getBattery();
+			double soc = battery.getSoc();
+			socs[i] = soc;
+			histogram[FleetSocHistogram.getBin(soc / battery.getCapacity())]++;
+			vehicleTypeSocSums[vehicleTypeIndices[i]] += soc;
+			fleetSocSum += soc;
+		}
+	}
+
+	public int getVehicleCount() {
+		return vehicles.length;
+	}
+
+	public ElectricVehicle getVehicle(int index) {
+		return vehicles[index];
+	}
+
+	/**
+	 * @return soc [J] of the vehicle with the given index (as in {@link #getVehicle(int)})
+	 */
+	public double getSoc(int index) {
+		return incrementalHistogram != null ? vehicles[index].getBattery().getSoc() : socs[index];
+	}
+
+	/**
+	 * @return number of vehicles in the given bin (see {@link FleetSocHistogram#getBin(double)})
+	 */
+	public long getHistogramCount(int bin) {
+		return incrementalHistogram != null ? incrementalHistogram.getCount(bin) : histogram[bin];
+	}
+
+	/**
+	 * @return vehicle type names, in order of first appearance in the fleet
+	 */
+	public String[] getVehicleTypeNames() {
+		return vehicleTypeNames;
+	}
+
+	/**
+	 * @return average soc [J] of the given vehicle type, NaN if there are no such vehicles
+	 */
+	public double getAverageSoc(int vehicleTypeIndex) {
+		if (incrementalHistogram != null) {
+			return incrementalHistogram.getAverageSoc(vehicleTypeIndex);
+		}
+		int count = vehicleTypeCounts[vehicleTypeIndex];
+		return count == 0 ? Double.NaN : vehicleTypeSocSums[vehicleTypeIndex] / count;
+	}
+
+	/**
+	 * @return average soc [J] of the fleet, NaN if the fleet is empty
+	 */
+	public double getFleetAverageSoc() {
+		if (incrementalHistogram != null) {
+			return incrementalHistogram.getFleetAverageSoc();
+		}
+		return vehicles.length == 0 ? Double.NaN : fleetSocSum / vehicles.length;
+	}
+}
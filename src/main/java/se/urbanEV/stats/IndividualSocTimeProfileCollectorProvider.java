@@ -31,50 +31,62 @@ package se.urbanEV.stats;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
-import se.urbanEV.fleet.ElectricFleet;
-import se.urbanEV.fleet.ElectricVehicle;
 import org.matsim.contrib.ev.EvUnits;
+import org.matsim.contrib.util.timeprofile.TimeProfileCharts.ChartType;
 import org.matsim.contrib.util.timeprofile.TimeProfileCollector;
 import org.matsim.contrib.util.timeprofile.TimeProfileCollector.ProfileCalculator;
 import org.matsim.contrib.util.timeprofile.TimeProfiles;
 import org.matsim.core.controler.MatsimServices;
 import org.matsim.core.mobsim.framework.listeners.MobsimListener;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class IndividualSocTimeProfileCollectorProvider implements Provider<MobsimListener> {
-	private final ElectricFleet evFleet;
+	private final FleetSocSnapshot fleetSocSnapshot;
 	private final MatsimServices matsimServices;
+	private final TimeProfileChartPolicy chartPolicy;
 
 	@Inject
-	public IndividualSocTimeProfileCollectorProvider(ElectricFleet evFleet, MatsimServices matsimServices) {
-		this.evFleet = evFleet;
+	public IndividualSocTimeProfileCollectorProvider(FleetSocSnapshot fleetSocSnapshot,
+			MatsimServices matsimServices, TimeProfileChartPolicy chartPolicy) {
+		this.fleetSocSnapshot = fleetSocSnapshot;
 		this.matsimServices = matsimServices;
+		this.chartPolicy = chartPolicy;
 	}
 
 	@Override
 	public MobsimListener get() {
-		ProfileCalculator calc = createIndividualSocCalculator(evFleet);
-		return new TimeProfileCollector(calc, 300, "individual_soc_time_profiles", matsimServices);
+		ProfileCalculator calc = createIndividualSocCalculator(fleetSocSnapshot);
+		TimeProfileCollector collector = new TimeProfileCollector(calc, 300, "individual_soc_time_profiles", matsimServices);
+		chartPolicy.setChartTypes(collector, ChartType.Line);
+		return collector;
 	}
 
 	private static final int MAX_VEHICLE_COLUMNS = 10;
 
-	public static ProfileCalculator createIndividualSocCalculator(final ElectricFleet evFleet) {
-		int columns = Math.min(evFleet.getElectricVehicles().size(), MAX_VEHICLE_COLUMNS);
-		List<ElectricVehicle> allEvs = new ArrayList<>();
-		allEvs.addAll(evFleet.getElectricVehicles().values());
+	public static ProfileCalculator createIndividualSocCalculator(final FleetSocSnapshot fleetSocSnapshot) {
+		int columns = Math.min(fleetSocSnapshot.getVehicleCount(), MAX_VEHICLE_COLUMNS);
+		List<Integer> allEvs = IntStream.range(0, fleetSocSnapshot.getVehicleCount())
+				.boxed()
+				.collect(Collectors.toList());
 		Collections.shuffle(allEvs);
-		List<ElectricVehicle> selectedEvs = allEvs.stream().limit(columns).collect(Collectors.toList());
+		int[] selectedEvs = allEvs.stream().limit(columns).mapToInt(Integer::intValue).toArray();
 
-		String[] header = selectedEvs.stream().map(ev -> ev.getId() + "").toArray(String[]::new);
+		String[] header = Arrays.stream(selectedEvs)
+				.mapToObj(i -> fleetSocSnapshot.getVehicle(i).getId() + "")
+				.toArray(String[]::new);
 
 		return TimeProfiles.createProfileCalculator(header, () -> {
-			return selectedEvs.stream().map(ev -> EvUnits.J_to_kWh(ev.getBattery().getSoc()))/*in [kWh]*/
-					.toArray(Double[]::new);
+			fleetSocSnapshot.update();
+			Double[] values = new Double[selectedEvs.length];
+			for (int c = 0; c < selectedEvs.length; c++) {
+				values[c] = EvUnits.J_to_kWh(fleetSocSnapshot.getSoc(selectedEvs[c]));/*in [kWh]*/
+			}
+			return values;
 		});
 	}
 
@@ -0,0 +1,154 @@
+package se.urbanEV.stats;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.apache.log4j.Logger;
+import org.matsim.core.config.Config;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
+import se.urbanEV.discharging.PendingDischarges;
+import se.urbanEV.fleet.Battery;
+import se.urbanEV.fleet.ElectricFleet;
+import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.fleet.FleetSocHistogram;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Fleet SoC histogram (bins as in {@link FleetSocHistogram}) accumulated over the midnights in the middle part of the
+ * simulated period (0.3 * endTime < t < 0.8 * endTime) of the current iteration, used to re-initialise the start SoCs
+ * of multi-day runs.
+ * <p>
+ * Filled by {@link Collector} directly from the fleet state, so it does not depend on the SoC time profiles being
+ * written.
+ */
+@Singleton
+public class MidnightSocHistogram {
+	private static final Logger log = Logger.getLogger(MidnightSocHistogram.class);
+	private static final int SECS_PER_DAY = 24 * 60 * 60;
+
+	private final long[] counts = new long[FleetSocHistogram.BINS + 1];
+	private int midnights;
+
+	synchronized void reset() {
+		Arrays.fill(counts, 0);
+		midnights = 0;
+	}
+
+	synchronized void addMidnight(long[] midnightCounts) {
+		for (int b = 0; b < counts.length; b++) {
+			counts[b] += midnightCounts[b];
+		}
+		midnights++;
+	}
+
+	public synchronized int getMidnightCount() {
+		return midnights;
+	}
+
+	/**
+	 * @return counts accumulated over all midnights (a copy)
+	 */
+	public synchronized long[] getCounts() {
+		return counts.clone();
+	}
+
+	/**
+	 * Creates an exact inverse-CDF sampler of the relative SoC, treating each bin (except the empty-battery bin) as
+	 * uniformly distributed over its SoC range and truncating the distribution below {@code minRelativeSoc}.
+	 *
+	 * @return the sampler, or null if there is no mass above {@code minRelativeSoc}
+	 */
+	public synchronized Sampler createSampler(double minRelativeSoc) {
+		int bins = FleetSocHistogram.BINS;
+		double[] lowerBounds = new double[bins];
+		double[] upperBounds = new double[bins];
+		double[] cumulativeMass = new double[bins];
+		double totalMass = 0;
+		for (int b = 1; b <= bins; b++) {
+			double lo = Math.max((b - 1) * FleetSocHistogram.BIN_SIZE, minRelativeSoc);
+			double hi = b * FleetSocHistogram.BIN_SIZE;
+			if (hi > lo) {
+				totalMass += counts[b] * (hi - lo) / FleetSocHistogram.BIN_SIZE;
+			}
+			lowerBounds[b - 1] = lo;
+			upperBounds[b - 1] = Math.max(hi, lo);
+			cumulativeMass[b - 1] = totalMass;
+		}
+		if (!(totalMass > 0)) {
+			log.warn("No midnight SoC mass above " + minRelativeSoc + " (" + midnights + " midnights sampled)");
+			return null;
+		}
+		return new Sampler(lowerBounds, upperBounds, cumulativeMass);
+	}
+
+	public static class Sampler {
+		private final double[] lowerBounds;
+		private final double[] upperBounds;
+		private final double[] cumulativeMass;
+
+		private Sampler(double[] lowerBounds, double[] upperBounds, double[] cumulativeMass) {
+			this.lowerBounds = lowerBounds;
+			this.upperBounds = upperBounds;
+			this.cumulativeMass = cumulativeMass;
+		}
+
+		/**
+		 * @return relative SoC [0, 1]
+		 */
+		public double sample(Random random) {
+			double totalMass = cumulativeMass[cumulativeMass.length - 1];
+			double r = random.nextDouble() * totalMass;
+			int i = 0;
+			while (i < cumulativeMass.length - 1 && cumulativeMass[i] <= r) {
+				i++;// first segment with cumulative mass > r (so never an empty one)
+			}
+			double previousMass = i == 0 ? 0 : cumulativeMass[i - 1];
+			double fraction = (r - previousMass) / (cumulativeMass[i] - previousMass);
+			return lowerBounds[i] + fraction * (upperBounds[i] - lowerBounds[i]);
+		}
+	}
+
+	/**
+	 * QSim listener that adds the fleet SoC histogram at every midnight in (0.3 * endTime, 0.8 * endTime). Like the SoC
+	 * time profiles it replaces, it samples before the sim step of the midnight.
+	 */
+	public static class Collector implements MobsimInitializedListener, MobsimBeforeSimStepListener {
+		private final MidnightSocHistogram histogram;
+		private final ElectricFleet evFleet;
+		private final double endTime;
+		private final PendingDischarges pendingDischarges;
+
+		@Inject
+		public Collector(MidnightSocHistogram histogram, ElectricFleet evFleet, Config config,
+				PendingDischarges pendingDischarges) {
+			this.histogram = histogram;
+			this.evFleet = evFleet;
+			this.pendingDischarges = pendingDischarges;
+			this.endTime = config.qsim().getEndTime().seconds();
+		}
+
+		@Override
+		public void notifyMobsimInitialized(MobsimInitializedEvent e) {
+			histogram.reset();
+		}
+
+		@Override
+		public void notifyMobsimBeforeSimStep(MobsimBeforeSimStepEvent e) {
+			double time = e.getSimulationTime();
+			if (time % SECS_PER_DAY != 0 || time <= 0.3 * endTime || time >= 0.8 * endTime) {
+				return;
+			}
+			pendingDischarges.settle(time);
+			long[] midnightCounts = new long[FleetSocHistogram.BINS + 1];
+			for (ElectricVehicle ev : evFleet.getElectricVehicles().values()) {
+				Battery battery = ev.getBattery();
+				midnightCounts[FleetSocHistogram.getBin(battery.getSoc() / battery.getCapacity())]++;
+			}
+			histogram.addMidnight(midnightCounts);
+		}
+	}
+}
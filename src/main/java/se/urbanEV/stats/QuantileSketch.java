@@ -0,0 +1,144 @@
+package se.urbanEV.stats;
+
+/**
+ * Streaming quantile sketch with a fixed relative accuracy (in the style of DDSketch): positive values are counted
+ * in logarithmic buckets, so every quantile is returned with a relative error of at most {@code relativeAccuracy},
+ * independently of the number of values. Values {@code <= 0} are counted as 0.
+ * <p>
+ * Sketches with the same accuracy can be merged exactly by adding their bucket counts. Not thread-safe.
+ */
+public class QuantileSketch {
+	private static final double MIN_POSITIVE_VALUE = 1e-9;
+
+	private final double relativeAccuracy;
+	private final double gamma;
+	private final double logGamma;
+
+	private long[] bucketCounts = new long[0];
+	private int minBucketIndex;// bucket index of bucketCounts[0]
+	private long zeroCount;
+
+	private long count;
+	private double sum;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public QuantileSketch(double relativeAccuracy) {
+		if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+			throw new IllegalArgumentException("relativeAccuracy must be in (0, 1): " + relativeAccuracy);
+		}
+		this.relativeAccuracy = relativeAccuracy;
+		this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+		this.logGamma = Math.log(gamma);
+	}
+
+	public void add(double value) {
+		if (value > MIN_POSITIVE_VALUE) {
+			int index = (int)Math.ceil(Math.log(value) / logGamma);
+			ensureCapacity(index, index);
+			bucketCounts[index - minBucketIndex]++;
+		} else {
+			value = Math.max(value, 0);
+			zeroCount++;
+		}
+		count++;
+		sum += value;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	public void merge(QuantileSketch other) {
+		if (other.relativeAccuracy != relativeAccuracy) {
+			throw new IllegalArgumentException("Cannot merge sketches with different accuracies");
+		}
+		if (other.count == 0) {
+			return;
+		}
+		if (other.bucketCounts.length > 0) {
+			ensureCapacity(other.minBucketIndex, other.minBucketIndex + other.bucketCounts.length - 1);
+			int shift = other.minBucketIndex - minBucketIndex;
+			for (int i = 0; i < other.bucketCounts.length; i++) {
+				bucketCounts[shift + i] += other.bucketCounts[i];
+			}
+		}
+		zeroCount += other.zeroCount;
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	private void ensureCapacity(int fromIndex, int toIndex) {
+		if (bucketCounts.length == 0) {
+			bucketCounts = new long[toIndex - fromIndex + 1];
+			minBucketIndex = fromIndex;
+			return;
+		}
+		int maxBucketIndex = minBucketIndex + bucketCounts.length - 1;
+		if (fromIndex >= minBucketIndex && toIndex <= maxBucketIndex) {
+			return;
+		}
+		int newMin = Math.min(fromIndex, minBucketIndex);
+		int newMax = Math.max(toIndex, maxBucketIndex);
+		long[] newCounts = new long[newMax - newMin + 1];
+		System.arraycopy(bucketCounts, 0, newCounts, minBucketIndex - newMin, bucketCounts.length);
+		bucketCounts = newCounts;
+		minBucketIndex = newMin;
+	}
+
+	public void clear() {
+		bucketCounts = new long[0];
+		zeroCount = 0;
+		count = 0;
+		sum = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * @param quantile in [0, 1]
+	 * @return the value at the given quantile (within the relative accuracy), NaN if the sketch is empty
+	 */
+	public double getQuantile(double quantile) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		double rank = quantile * (count - 1);
+		long cumulativeCount = zeroCount;
+		if (cumulativeCount > rank) {
+			return 0;
+		}
+		for (int i = 0; i < bucketCounts.length; i++) {
+			cumulativeCount += bucketCounts[i];
+			if (cumulativeCount > rank) {
+				// bucket i covers (gamma^(index-1), gamma^index]; its centre has a relative error <= relativeAccuracy
+				double value = 2 * Math.pow(gamma, minBucketIndex + i) / (gamma + 1);
+				return Math.max(min, Math.min(max, value));
+			}
+		}
+		return max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return exact mean of all values (values {@code <= 0} counted as 0), NaN if the sketch is empty
+	 */
+	public double getMean() {
+		return count == 0 ? Double.NaN : sum / count;
+	}
+
+	public double getMin() {
+		return count == 0 ? Double.NaN : min;
+	}
+
+	public double getMax() {
+		return count == 0 ? Double.NaN : max;
+	}
+
+	public double getRelativeAccuracy() {
+		return relativeAccuracy;
+	}
+}
@@ -31,9 +31,7 @@ package se.urbanEV.stats;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
-import se.urbanEV.fleet.ElectricFleet;
-import se.urbanEV.fleet.ElectricVehicle;
-import org.matsim.contrib.util.histogram.UniformHistogram;
+import org.jfree.chart.JFreeChart;
 import org.matsim.contrib.util.timeprofile.TimeProfileCharts;
 import org.matsim.contrib.util.timeprofile.TimeProfileCharts.ChartType;
 import org.matsim.contrib.util.timeprofile.TimeProfileCollector;
@@ -45,57 +43,51 @@ import org.matsim.core.mobsim.framework.listeners.MobsimListener;
 import java.awt.*;
 
 public class SocHistogramTimeProfileCollectorProvider implements Provider<MobsimListener> {
-    private final ElectricFleet evFleet;
+    private final FleetSocSnapshot fleetSocSnapshot;
     private final MatsimServices matsimServices;
+    private final TimeProfileChartPolicy chartPolicy;
 
     @Inject
-    public SocHistogramTimeProfileCollectorProvider(ElectricFleet evFleet, MatsimServices matsimServices) {
-        this.evFleet = evFleet;
+    public SocHistogramTimeProfileCollectorProvider(FleetSocSnapshot fleetSocSnapshot, MatsimServices matsimServices,
+            TimeProfileChartPolicy chartPolicy) {
+        this.fleetSocSnapshot = fleetSocSnapshot;
         this.matsimServices = matsimServices;
+        this.chartPolicy = chartPolicy;
     }
 
     @Override
     public MobsimListener get() {
-        ProfileCalculator calc = createSocHistogramCalculator(evFleet);
+        ProfileCalculator calc = createSocHistogramCalculator(fleetSocSnapshot);
         TimeProfileCollector collector = new TimeProfileCollector(calc, 300, "soc_histogram_time_profiles",
                 matsimServices);
-        collector.setChartTypes(ChartType.StackedArea);
-        collector.setChartCustomizer((chart, chartType) -> {
-            TimeProfileCharts.changeSeriesColors(chart,
-                    new Color(0, 0, 0), // 0
-                    new Color(245, 0, 0), // 0+
-                    new Color(255, 0, 0), // 0.1+
-                    new Color(255, 63, 0), // 0.2+
-                    new Color(255, 127, 0), // 0.3+
-                    new Color(255, 191, 0), // 0.4+
-                    new Color(255, 255, 0), // 0.5+
-                    new Color(191, 255, 0), // 0.6+
-                    new Color(127, 255, 0), // 0.7+
-                    new Color(63, 255, 0), // 0.8+
-                    new Color(0, 245, 0) // 0.9+
-            );
-        });
+        chartPolicy.setChartTypes(collector, ChartType.StackedArea);
+        collector.setChartCustomizer(SocHistogramTimeProfileCollectorProvider::customizeChart);
         return collector;
     }
 
-    public static ProfileCalculator createSocHistogramCalculator(final ElectricFleet evFleet) {
+    public static void customizeChart(JFreeChart chart, ChartType chartType) {
+        TimeProfileCharts.changeSeriesColors(chart,
+                new Color(0, 0, 0), // 0
+                new Color(245, 0, 0), // 0+
+                new Color(255, 0, 0), // 0.1+
+                new Color(255, 63, 0), // 0.2+
+                new Color(255, 127, 0), // 0.3+
+                new Color(255, 191, 0), // 0.4+
+                new Color(255, 255, 0), // 0.5+
+                new Color(191, 255, 0), // 0.6+
+                new Color(127, 255, 0), // 0.7+
+                new Color(63, 255, 0), // 0.8+
+                new Color(0, 245, 0) // 0.9+
+        );
+    }
+
+    public static ProfileCalculator createSocHistogramCalculator(final FleetSocSnapshot fleetSocSnapshot) {
         String[] header = {"0", "0+", "0.1+", "0.2+", "0.3+", "0.4+", "0.5+", "0.6+", "0.7+", "0.8+", "0.9+"};
         return TimeProfiles.createProfileCalculator(header, () -> {
-            UniformHistogram histogram = new UniformHistogram(0.1, header.length - 1);
-            long emptyBatteries = 0;
-            for (ElectricVehicle ev : evFleet.getElectricVehicles().values()) {
-                double soc = ev.getBattery().getSoc() / ev.getBattery().getCapacity();
-                if (soc == 0) {
-                    emptyBatteries++;
-                } else {
-                    histogram.addValue(soc);
-                }
-            }
-
+            fleetSocSnapshot.update();
             Long[] values = new Long[header.length];
-            values[0] = emptyBatteries;
-            for (int b = 1; b < header.length; b++) {
-                values[b] = histogram.getCount(b - 1);
+            for (int b = 0; b < header.length; b++) {
+                values[b] = fleetSocSnapshot.getHistogramCount(b);
             }
             return values;
         });
@@ -0,0 +1,182 @@
+package se.urbanEV.stats;
+
+import org.matsim.api.core.v01.Id;
+import se.urbanEV.fleet.ElectricVehicle;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the SoC trajectories written by {@link SocTrajectoryRecorder}. The file is memory-mapped, so opening it only
+ * reads the index, and each trajectory is decoded from its own byte range on request.
+ * <p>
+ * Usage:
+ * <pre>
+ * try (SocTrajectoryReader reader = new SocTrajectoryReader("output/ITERS/it.0/0.socTrajectories.bin")) {
+ *     double[] socs = reader.getRelativeSocs(Id.create("ev_1", ElectricVehicle.class));
+ *     double time = reader.getSampleTime(0);
+ * }
+ * </pre>
+ */
+public class SocTrajectoryReader implements Closeable {
+	private final FileChannel channel;
+	private final ByteBuffer meta;
+	private final MappedByteBuffer data;// null if the file is too large for a single mapping
+
+	private final int sampleCount;
+	private final int vehicleCount;
+	private final double firstSampleTime;
+	private final double sampleInterval;
+	private final double socQuantum;
+
+	private final List<Id<ElectricVehicle>> vehicleIds;
+	private final Map<Id<ElectricVehicle>, Integer> vehicleIndices;
+
+	public SocTrajectoryReader(String file) throws IOException {
+		channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SocTrajectoryRecorder.HEADER_BYTES);
+			if (header.getInt() != SocTrajectoryRecorder.MAGIC) {
+				throw new IOException("Not a SoC trajectory file: " + file);
+			}
+			int version = header.getInt();
+			if (version != SocTrajectoryRecorder.VERSION) {
+				throw new IOException("Unsupported SoC trajectory file version " + version + ": " + file);
+			}
+			sampleCount = header.getInt();
+			vehicleCount = header.getInt();
+			firstSampleTime = header.getDouble();
+			sampleInterval = header.getDouble();
+			socQuantum = header.getDouble();
+			long dataOffset = header.getLong();
+
+			long size = channel.size();
+			data = size <= SocTrajectoryRecorder.MAX_MAPPED_BYTES ?
+					channel.map(FileChannel.MapMode.READ_ONLY, 0, size) :
+					null;
+			meta = data != null ? data : channel.map(FileChannel.MapMode.READ_ONLY, 0, dataOffset);
+
+			List<Id<ElectricVehicle>> ids = new ArrayList<>(vehicleCount);
+			vehicleIndices = new HashMap<>();
+			for (int i = 0; i < vehicleCount; i++) {
+				int entry = SocTrajectoryRecorder.HEADER_BYTES + i * SocTrajectoryRecorder.INDEX_ENTRY_BYTES;
+				byte[] id = new byte[meta.getInt(entry + 12)];
+				ByteBuffer idBuffer = meta.duplicate();
+				idBuffer.position((int)meta.getLong(entry + 24));
+				idBuffer.get(id);
+				Id<ElectricVehicle> vehicleId = Id.create(new String(id, StandardCharsets.UTF_8), ElectricVehicle.class);
+				ids.add(vehicleId);
+				vehicleIndices.put(vehicleId, i);
+			}
+			vehicleIds = Collections.unmodifiableList(ids);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public int getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * @return simulation time [s] of the given sample
+	 */
+	public double getSampleTime(int sample) {
+		return firstSampleTime + sample * sampleInterval;
+	}
+
+	/**
+	 * @return ids of all recorded vehicles, in file order
+	 */
+	public List<Id<ElectricVehicle>> getVehicleIds() {
+		return vehicleIds;
+	}
+
+	public boolean contains(Id<ElectricVehicle> vehicleId) {
+		return vehicleIndices.containsKey(vehicleId);
+	}
+
+	/**
+	 * @return battery capacity [J]
+	 */
+	public double getBatteryCapacity(Id<ElectricVehicle> vehicleId) {
+		return meta.getDouble(getIndexEntry(vehicleId) + 16);
+	}
+
+	/**
+	 * @return relative SoC at each sample, quantised to the resolution of the file
+	 */
+	public double[] getRelativeSocs(Id<ElectricVehicle> vehicleId) {
+		int entry = getIndexEntry(vehicleId);
+		long offset = meta.getLong(entry);
+		int length = meta.getInt(entry + 8);
+
+		ByteBuffer buffer = slice(offset, length);
+		double[] socs = new double[sampleCount];
+		int quantisedSoc = 0;
+		for (int s = 0; s < sampleCount; s++) {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			quantisedSoc += SocTrajectoryRecorder.unzigzag(value);
+			socs[s] = quantisedSoc * socQuantum;
+		}
+		return socs;
+	}
+
+	/**
+	 * @return SoC [J] at each sample
+	 */
+	public double[] getSocs(Id<ElectricVehicle> vehicleId) {
+		double capacity = getBatteryCapacity(vehicleId);
+		double[] socs = getRelativeSocs(vehicleId);
+		for (int s = 0; s < socs.length; s++) {
+			socs[s] *= capacity;
+		}
+		return socs;
+	}
+
+	private int getIndexEntry(Id<ElectricVehicle> vehicleId) {
+		Integer index = vehicleIndices.get(vehicleId);
+		if (index == null) {
+			throw new IllegalArgumentException("No SoC trajectory for vehicle " + vehicleId);
+		}
+		return SocTrajectoryRecorder.HEADER_BYTES + index * SocTrajectoryRecorder.INDEX_ENTRY_BYTES;
+	}
+
+	private ByteBuffer slice(long offset, int length) {
+		if (data != null) {
+			ByteBuffer buffer = data.duplicate();
+			buffer.position((int)offset).limit((int)offset + length);
+			return buffer;
+		}
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
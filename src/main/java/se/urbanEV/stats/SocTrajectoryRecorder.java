@@ -0,0 +1,181 @@
+package se.urbanEV.stats;
+
+import com.google.inject.Inject;
+import org.matsim.core.controler.IterationCounter;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.discharging.PendingDischarges;
+import se.urbanEV.fleet.Battery;
+import se.urbanEV.fleet.ElectricFleet;
+import se.urbanEV.fleet.ElectricVehicle;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Records the SoC of every EV at a fixed interval (socTrajectoryInterval) and writes all trajectories into
+ * {@value #FILE}, to be read with {@link SocTrajectoryReader}.
+ * <p>
+ * The relative SoC is quantised to {@value #SOC_QUANTUM} and each vehicle's samples are stored as zigzag varint
+ * deltas in a per-vehicle byte buffer, which takes 1 byte for most samples (the SoC changes slowly between samples).
+ * <p>
+ * File layout (big endian): a header, a fixed-size index entry per vehicle (data offset and length, id offset and
+ * length, battery capacity [J]), the UTF-8 vehicle ids and the trajectory data. The file is written through memory
+ * mapping.
+ */
+public class SocTrajectoryRecorder implements MobsimAfterSimStepListener, MobsimBeforeCleanupListener {
+	public static final String FILE = "socTrajectories.bin";
+
+	static final int MAGIC = 0x45565354;// "EVST"
+	static final int VERSION = 1;
+	// magic, version, sampleCount, vehicleCount, firstSampleTime, sampleInterval, socQuantum, dataOffset
+	static final int HEADER_BYTES = 4 * 4 + 4 * 8;
+	// dataOffset, dataLength, idLength, capacity, idOffset
+	static final int INDEX_ENTRY_BYTES = 8 + 4 + 4 + 8 + 8;
+	static final double SOC_QUANTUM = 1e-4;// relative SoC
+	static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+
+	private static final int INITIAL_BUFFER_BYTES = 64;
+
+	private final ElectricVehicle[] vehicles;
+	private final int sampleInterval;
+	private final OutputDirectoryHierarchy controlerIO;
+	private final IterationCounter iterationCounter;
+	private final EvOutputWriter outputWriter;
+	private final PendingDischarges pendingDischarges;
+
+	private final byte[][] buffers;
+	private final int[] lengths;
+	private final int[] lastQuantisedSocs;
+	private double firstSampleTime = Double.NaN;
+	private int sampleCount;
+
+	@Inject
+	public SocTrajectoryRecorder(ElectricFleet evFleet, UrbanEVConfigGroup urbanEVCfg,
+			OutputDirectoryHierarchy controlerIO, IterationCounter iterationCounter, EvOutputWriter outputWriter,
+			PendingDischarges pendingDischarges) {
+		this.vehicles = evFleet.getElectricVehicles().values().toArray(new ElectricVehicle[0]);
+		this.sampleInterval = urbanEVCfg.getSocTrajectoryInterval();
+		this.controlerIO = controlerIO;
+		this.iterationCounter = iterationCounter;
+		this.outputWriter = outputWriter;
+		this.pendingDischarges = pendingDischarges;
+
+		buffers = new byte[vehicles.length][INITIAL_BUFFER_BYTES];
+		lengths = new int[vehicles.length];
+		lastQuantisedSocs = new int[vehicles.length];
+	}
+
+	@Override
+	public void notifyMobsimAfterSimStep(MobsimAfterSimStepEvent e) {
+		double time = e.getSimulationTime();
+		if (time % sampleInterval != 0) {
+			return;
+		}
+		if (sampleCount == 0) {
+			firstSampleTime = time;
+		}
+		pendingDischarges.settle(time);
+		for (int i = 0; i < vehicles.length; i++) {
+			Battery battery = vehicles[i].getBattery();
+			int quantisedSoc = (int)Math.round(battery.getSoc() / battery.getCapacity() / SOC_QUANTUM);
+			appendVarint(i, zigzag(quantisedSoc - lastQuantisedSocs[i]));
+			lastQuantisedSocs[i] = quantisedSoc;
+		}
+		sampleCount++;
+	}
+
+	private void appendVarint(int vehicle, int value) {
+		byte[] buffer = buffers[vehicle];
+		int length = lengths[vehicle];
+		if (length + 5 > buffer.length) {
+			buffer = buffers[vehicle] = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		while ((value & ~0x7F) != 0) {
+			buffer[length++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[length++] = (byte)value;
+		lengths[vehicle] = length;
+	}
+
+	static int zigzag(int delta) {
+		return (delta << 1) ^ (delta >> 31);
+	}
+
+	static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	@Override
+	public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent e) {
+		String file = controlerIO.getIterationFilename(iterationCounter.getIterationNumber(), FILE);
+		// this recorder is QSim-scoped, so the buffers are not modified after this point
+		outputWriter.submit(file, () -> write(file));
+	}
+
+	private void write(String file) throws IOException {
+		int vehicleCount = vehicles.length;
+		byte[][] ids = new byte[vehicleCount][];
+		long idBytes = 0;
+		for (int i = 0; i < vehicleCount; i++) {
+			ids[i] = vehicles[i].getId().toString().getBytes(StandardCharsets.UTF_8);
+			idBytes += ids[i].length;
+		}
+		long idsOffset = HEADER_BYTES + (long)vehicleCount * INDEX_ENTRY_BYTES;
+		long dataOffset = idsOffset + idBytes;
+		if (dataOffset > MAX_MAPPED_BYTES) {
+			throw new IOException("Too many vehicles for a single trajectory index: " + vehicleCount);
+		}
+
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer meta = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataOffset);
+			meta.putInt(MAGIC)
+					.putInt(VERSION)
+					.putInt(sampleCount)
+					.putInt(vehicleCount)
+					.putDouble(firstSampleTime)
+					.putDouble(sampleInterval)
+					.putDouble(SOC_QUANTUM)
+					.putLong(dataOffset);
+
+			long idOffset = idsOffset;
+			long offset = dataOffset;
+			for (int i = 0; i < vehicleCount; i++) {
+				meta.putLong(offset)
+						.putInt(lengths[i])
+						.putInt(ids[i].length)
+						.putDouble(vehicles[i].getBattery().getCapacity())
+						.putLong(idOffset);
+				idOffset += ids[i].length;
+				offset += lengths[i];
+			}
+			for (byte[] id : ids) {
+				meta.put(id);
+			}
+
+			// the data section may exceed the size of a single mapping
+			long dataEnd = offset;
+			long position = dataOffset;
+			MappedByteBuffer data = null;
+			for (int i = 0; i < vehicleCount; i++) {
+				if (data == null || data.remaining() < lengths[i]) {
+					data = channel.map(FileChannel.MapMode.READ_WRITE, position,
+							Math.min(dataEnd - position, MAX_MAPPED_BYTES));
+				}
+				data.put(buffers[i], 0, lengths[i]);
+				position += lengths[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package se.urbanEV.stats;
+
+import com.google.inject.Inject;
+import org.matsim.contrib.util.timeprofile.TimeProfileCharts.ChartType;
+import org.matsim.contrib.util.timeprofile.TimeProfileCollector;
+import org.matsim.core.config.Config;
+import org.matsim.core.controler.IterationCounter;
+import se.urbanEV.config.UrbanEVConfigGroup;
+
+/**
+ * Decides in which iterations the time profile collectors render their charts (timeProfileChartInterval and the last
+ * iteration). In all other iterations, only the profile data is written.
+ */
+public class TimeProfileChartPolicy {
+	private final IterationCounter iterationCounter;
+	private final int chartInterval;
+	private final int lastIteration;
+
+	@Inject
+	public TimeProfileChartPolicy(UrbanEVConfigGroup urbanEVCfg, Config config, IterationCounter iterationCounter) {
+		this.iterationCounter = iterationCounter;
+		this.chartInterval = urbanEVCfg.getTimeProfileChartInterval();
+		this.lastIteration = config.controler().getLastIteration();
+	}
+
+	public boolean isChartIteration() {
+		int iteration = iterationCounter.getIterationNumber();
+		return iteration == lastIteration || (chartInterval > 0 && iteration % chartInterval == 0);
+	}
+
+	/**
+	 * Sets the given chart types if charts are rendered in the current iteration, and no chart types otherwise.
+	 */
+	public void setChartTypes(TimeProfileCollector collector, ChartType... chartTypes) {
+		if (isChartIteration()) {
+			collector.setChartTypes(chartTypes);
+		} else {
+			collector.setChartTypes();
+		}
+	}
+}
@@ -31,61 +31,48 @@ package se.urbanEV.stats;
 
 import com.google.inject.Inject;
 import com.google.inject.Provider;
-import se.urbanEV.fleet.ElectricFleet;
 import org.matsim.contrib.ev.EvUnits;
+import org.matsim.contrib.util.timeprofile.TimeProfileCharts.ChartType;
 import org.matsim.contrib.util.timeprofile.TimeProfileCollector;
 import org.matsim.contrib.util.timeprofile.TimeProfileCollector.ProfileCalculator;
 import org.matsim.contrib.util.timeprofile.TimeProfiles;
 import org.matsim.core.controler.MatsimServices;
 import org.matsim.core.mobsim.framework.listeners.MobsimListener;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Arrays;
 
 public class VehicleTypeAggregatedSocTimeProfileCollectorProvider implements Provider<MobsimListener> {
-	private final ElectricFleet evFleet;
+	private final FleetSocSnapshot fleetSocSnapshot;
 	private final MatsimServices matsimServices;
+	private final TimeProfileChartPolicy chartPolicy;
 
 	@Inject
-	public VehicleTypeAggregatedSocTimeProfileCollectorProvider(ElectricFleet evFleet, MatsimServices matsimServices) {
-		this.evFleet = evFleet;
+	public VehicleTypeAggregatedSocTimeProfileCollectorProvider(FleetSocSnapshot fleetSocSnapshot,
+			MatsimServices matsimServices, TimeProfileChartPolicy chartPolicy) {
+		this.fleetSocSnapshot = fleetSocSnapshot;
 		this.matsimServices = matsimServices;
+		this.chartPolicy = chartPolicy;
 	}
 
 	@Override
 	public MobsimListener get() {
-		ProfileCalculator calc = createIndividualSocCalculator(evFleet);
-		return new TimeProfileCollector(calc, 300, "average_soc_time_profiles", matsimServices);
+		ProfileCalculator calc = createIndividualSocCalculator(fleetSocSnapshot);
+		TimeProfileCollector collector = new TimeProfileCollector(calc, 300, "average_soc_time_profiles", matsimServices);
+		chartPolicy.setChartTypes(collector, ChartType.Line);
+		return collector;
 	}
 
-	public static ProfileCalculator createIndividualSocCalculator(final ElectricFleet evFleet) {
-
-		Set<String> vehicleTypes = evFleet.getElectricVehicles()
-				.values()
-				.stream()
-				.map(electricVehicle -> electricVehicle.getVehicleType().getName())
-				.collect(Collectors.toCollection(LinkedHashSet::new));
-		vehicleTypes.add("Fleet Average");
-		String[] header = vehicleTypes.stream().toArray(String[]::new);
+	public static ProfileCalculator createIndividualSocCalculator(final FleetSocSnapshot fleetSocSnapshot) {
+		String[] vehicleTypes = fleetSocSnapshot.getVehicleTypeNames();
+		String[] header = Arrays.copyOf(vehicleTypes, vehicleTypes.length + 1);
+		header[vehicleTypes.length] = "Fleet Average";
 		return TimeProfiles.createProfileCalculator(header, () -> {
+			fleetSocSnapshot.update();
 			Double[] result = new Double[header.length];
-			for (int i = 0; i < header.length - 1; i++) {
-				String type = header[i];
-				result[i] = evFleet.getElectricVehicles()
-						.values()
-						.stream()
-						.filter(electricVehicle -> electricVehicle.getVehicleType().getName().equals(type))
-						.mapToDouble(ev -> EvUnits.J_to_kWh(ev.getBattery().getSoc()))
-						.average()
-						.orElse(Double.NaN);
+			for (int i = 0; i < vehicleTypes.length; i++) {
+				result[i] = EvUnits.J_to_kWh(fleetSocSnapshot.getAverageSoc(i));
 			}
-			result[header.length - 1] = evFleet.getElectricVehicles()
-					.values()
-					.stream()
-					.mapToDouble(ev -> EvUnits.J_to_kWh(ev.getBattery().getSoc()))
-					.average()
-					.getAsDouble();
+			result[vehicleTypes.length] = EvUnits.J_to_kWh(fleetSocSnapshot.getFleetAverageSoc());
 			return result;
 		});
 	}
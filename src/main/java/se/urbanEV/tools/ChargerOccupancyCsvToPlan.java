@@ -0,0 +1,77 @@
+package se.urbanEV.tools;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Id;
+import org.matsim.core.utils.io.IOUtils;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargerReader;
+import se.urbanEV.infrastructure.ChargingInfrastructureSpecification;
+import se.urbanEV.infrastructure.ChargingInfrastructureSpecificationImpl;
+import se.urbanEV.stats.ChargerOccupancyHistoryCollector;
+import se.urbanEV.stats.ChargerOccupancyHistoryCollector.OccupancyHistory;
+import se.urbanEV.stats.ChargerOccupancyPlanWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts a streamed {@value ChargerOccupancyHistoryCollector#OCCUPANCY_CSV_FILE} into the Via-readable
+ * charger_occupancy_plan.xml, i.e. the file that is written directly when chargerOccupancyCsvOutput is off.
+ * <p>
+ * The csv rows of a charger are consecutive intervals of constant occupancy; the end of each interval (except the
+ * last one) is a transition to the occupancy of the next interval. Coordinates and plug counts are taken from the
+ * chargers file used in the simulation.
+ * <p>
+ * Usage: {@code ChargerOccupancyCsvToPlan <charger_occupancy.csv.gz> <chargers.xml> <charger_occupancy_plan.xml>}
+ */
+public class ChargerOccupancyCsvToPlan {
+	private static final Logger log = Logger.getLogger(ChargerOccupancyCsvToPlan.class);
+
+	public static void main(String[] args) {
+		if (args.length != 3) {
+			throw new IllegalArgumentException(
+					"Usage: ChargerOccupancyCsvToPlan <charger_occupancy.csv.gz> <chargers.xml> <output.xml>");
+		}
+		ChargingInfrastructureSpecification chargers = new ChargingInfrastructureSpecificationImpl();
+		new ChargerReader(chargers).readFile(args[1]);
+
+		Map<Id<Charger>, OccupancyHistory> histories = readOccupancyCsv(args[0]);
+		new ChargerOccupancyPlanWriter(chargers.getChargerSpecifications().values(), histories).write(args[2]);
+		log.info("Occupancy of " + histories.size() + " chargers written to " + args[2]);
+	}
+
+	public static Map<Id<Charger>, OccupancyHistory> readOccupancyCsv(String file) {
+		Map<Id<Charger>, List<String[]>> rowsPerCharger = new LinkedHashMap<>();
+		try (BufferedReader reader = IOUtils.getBufferedReader(file)) {
+			String header = reader.readLine();
+			String expectedHeader = String.join(";", ChargerOccupancyHistoryCollector.OCCUPANCY_CSV_HEADER);
+			if (header == null || !header.equals(expectedHeader)) {
+				throw new IllegalArgumentException("Not a charger occupancy csv (unexpected header): " + file);
+			}
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				String[] row = line.split(";");
+				rowsPerCharger.computeIfAbsent(Id.create(row[0], Charger.class), id -> new ArrayList<>()).add(row);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		Map<Id<Charger>, OccupancyHistory> histories = new LinkedHashMap<>();
+		rowsPerCharger.forEach((chargerId, rows) -> {
+			int transitions = rows.size() - 1;
+			double[] times = new double[transitions];
+			int[] counts = new int[transitions];
+			for (int i = 0; i < transitions; i++) {
+				times[i] = Double.parseDouble(rows.get(i)[2]);// end of interval i
+				counts[i] = Integer.parseInt(rows.get(i + 1)[3]);// plugged in interval i + 1
+			}
+			histories.put(chargerId, OccupancyHistory.of(times, counts));
+		});
+		return histories;
+	}
+}
@@ -0,0 +1,162 @@
+package se.urbanEV.tools;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.io.IOUtils;
+import se.urbanEV.discharging.AsciiGridReader;
+import se.urbanEV.discharging.LTHDriveEnergyConsumption;
+import se.urbanEV.discharging.LinkSlopesReader;
+import se.urbanEV.discharging.LinkSlopesWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Computes link slope profiles for {@link LTHDriveEnergyConsumption} from a digital elevation model.
+ * <p>
+ * Every link is split into segments of (roughly) the given length. The elevation is sampled (bilinearly) at the
+ * segment ends along the straight line between the link's nodes and the slope of a segment is its elevation
+ * difference divided by its share of the link length. Links are processed in parallel. Links whose slopes are all zero
+ * (flat, or outside the elevation model) are omitted, as zero slope is the default anyway.
+ * <p>
+ * The elevation model must be an ESRI ASCII grid in the network CRS. The result is written as a binary side-file
+ * (see {@link LinkSlopesReader}) that is attached to the network at startup via the {@code linkSlopesFile} parameter
+ * of the urban_ev config group.
+ * <p>
+ * Usage: {@code LinkSlopePreprocessor <network.xml(.gz)> <dem.asc(.gz)> <output.slopes(.gz)> [segmentLength=100]}
+ */
+public class LinkSlopePreprocessor {
+	private static final Logger log = Logger.getLogger(LinkSlopePreprocessor.class);
+
+	public static void main(String[] args) {
+		if (args.length < 3 || args.length > 4) {
+			throw new IllegalArgumentException(
+					"Usage: LinkSlopePreprocessor <network> <dem.asc> <output.slopes.gz> [segmentLength=100]");
+		}
+		double segmentLength = args.length == 4 ? Double.parseDouble(args[3]) : 100;
+
+		Network network = NetworkUtils.readNetwork(args[0]);
+		ElevationGrid dem = ElevationGrid.read(args[1]);
+		Map<Id<Link>, double[]> slopes = new LinkSlopePreprocessor(dem, segmentLength).calcSlopes(network);
+		new LinkSlopesWriter(slopes).write(args[2]);
+		log.info("Slopes of " + slopes.size() + " out of " + network.getLinks().size() + " links written to "
+				+ args[2]);
+	}
+
+	private final ElevationGrid dem;
+	private final double segmentLength;
+
+	public LinkSlopePreprocessor(ElevationGrid dem, double segmentLength) {
+		if (!(segmentLength > 0)) {
+			throw new IllegalArgumentException("segmentLength must be positive: " + segmentLength);
+		}
+		this.dem = dem;
+		this.segmentLength = segmentLength;
+	}
+
+	/**
+	 * @return slopes [-] per link (in network iteration order), only for links with at least one non-zero slope
+	 */
+	public Map<Id<Link>, double[]> calcSlopes(Network network) {
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+		double[][] slopes = new double[links.size()][];
+		IntStream.range(0, links.size()).parallel().forEach(i -> slopes[i] = calcSlopes(links.get(i)));
+
+		Map<Id<Link>, double[]> slopesPerLink = new LinkedHashMap<>();
+		for (int i = 0; i < slopes.length; i++) {
+			if (slopes[i] != null) {
+				slopesPerLink.put(links.get(i).getId(), slopes[i]);
+			}
+		}
+		return slopesPerLink;
+	}
+
+	private double[] calcSlopes(Link link) {
+		if (!(link.getLength() > 0)) {
+			return null;
+		}
+		int segments = Math.max(1, (int)Math.round(link.getLength() / segmentLength));
+		Coord from = link.getFromNode().getCoord();
+		Coord to = link.getToNode().getCoord();
+
+		double[] slopes = new double[segments];
+		boolean nonZero = false;
+		double previousElevation = dem.getElevation(from.getX(), from.getY());
+		for (int s = 1; s <= segments; s++) {
+			double f = (double)s / segments;
+			double elevation = dem.getElevation(from.getX() + f * (to.getX() - from.getX()),
+					from.getY() + f * (to.getY() - from.getY()));
+			if (!Double.isNaN(elevation) && !Double.isNaN(previousElevation)) {
+				slopes[s - 1] = (elevation - previousElevation) * segments / link.getLength();
+				nonZero |= slopes[s - 1] != 0;
+			}
+			previousElevation = elevation;
+		}
+		return nonZero ? slopes : null;
+	}
+
+	/**
+	 * ESRI ASCII grid of elevations [m]. Values are interpreted at cell centres; NODATA cells and points outside the
+	 * grid yield NaN.
+	 */
+	public static class ElevationGrid {
+		private final int cols;
+		private final int rows;
+		private final double xMinCenter;
+		private final double yMaxCenter;
+		private final double cellSize;
+		private final float[] elevations;// row-major, first row = north
+
+		private ElevationGrid(int cols, int rows, double xMinCenter, double yMaxCenter, double cellSize,
+				float[] elevations) {
+			this.cols = cols;
+			this.rows = rows;
+			this.xMinCenter = xMinCenter;
+			this.yMaxCenter = yMaxCenter;
+			this.cellSize = cellSize;
+			this.elevations = elevations;
+		}
+
+		public double getElevation(double x, double y) {
+			double col = (x - xMinCenter) / cellSize;
+			double row = (yMaxCenter - y) / cellSize;
+			if (col < -0.5 || row < -0.5 || col > cols - 0.5 || row > rows - 0.5) {
+				return Double.NaN;
+			}
+			col = Math.max(0, Math.min(cols - 1, col));
+			row = Math.max(0, Math.min(rows - 1, row));
+			int c0 = (int)col;
+			int r0 = (int)row;
+			int c1 = Math.min(c0 + 1, cols - 1);
+			int r1 = Math.min(r0 + 1, rows - 1);
+			double fc = col - c0;
+			double fr = row - r0;
+			double top = (1 - fc) * elevations[r0 * cols + c0] + fc * elevations[r0 * cols + c1];
+			double bottom = (1 - fc) * elevations[r1 * cols + c0] + fc * elevations[r1 * cols + c1];
+			return (1 - fr) * top + fr * bottom;// NaN if any of the cells is NODATA
+		}
+
+		public static ElevationGrid read(String file) {
+			try (AsciiGridReader grid = new AsciiGridReader(IOUtils.getBufferedReader(file), file, null)) {
+				float[] elevations = new float[grid.getCellCount()];
+				double noData = grid.getNoData();
+				grid.readValues((block, cell, value) -> elevations[cell] = value == noData ? Float.NaN : (float)value);
+
+				double cellSize = grid.getCellSize();
+				return new ElevationGrid(grid.getCols(), grid.getRows(), grid.getXllCorner() + cellSize / 2,
+						grid.getYllCorner() + cellSize / 2 + (grid.getRows() - 1) * cellSize, cellSize, elevations);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package se.urbanEV.tools;
+
+import org.matsim.contrib.ev.EvConfigGroup;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import se.got.GotEVMain;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.metrics.EvMetrics;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Headless macro benchmark: runs a scenario (e.g. one written by {@link SyntheticScenarioGenerator}) for the given
+ * number of iterations with the same setup as {@link GotEVMain} and records the wall time of the iteration phases and
+ * the peak heap of each iteration (see {@link MacroBenchmarkListener}).
+ * <p>
+ * The rows are written to {@value MacroBenchmarkListener#REPORT_FILE} in the output directory (and the EV handler
+ * timers to {@value MacroBenchmarkListener#TIMERS_FILE}). If a report file is given, the rows are also appended to it
+ * with the given label (e.g. the commit and the scenario share), so the runs of a scaling curve, and the curves of
+ * several commits, end up in one table.
+ * <p>
+ * Usage: {@code MacroBenchmark <config.xml> <iterations> [<report.csv> <label>]}
+ */
+public class MacroBenchmark {
+	public static void main(String[] args) {
+		if (args.length != 2 && args.length != 4) {
+			throw new IllegalArgumentException("Usage: MacroBenchmark <config.xml> <iterations> [<report.csv> <label>]");
+		}
+		int iterations = Integer.parseInt(args[1]);
+		if (iterations < 1) {
+			throw new IllegalArgumentException("At least one iteration is required: " + iterations);
+		}
+		Path sharedReportFile = args.length == 4 ? Paths.get(args[2]) : null;
+		String label = args.length == 4 ? args[3] : Paths.get(args[0]).getFileName().toString();
+
+		Config config = ConfigUtils.loadConfig(args[0], new EvConfigGroup(), new UrbanEVConfigGroup());
+		config.controler().setFirstIteration(0);
+		config.controler().setLastIteration(iterations - 1);
+		config.controler()
+				.setOverwriteFileSetting(OutputDirectoryHierarchy.OverwriteFileSetting.deleteDirectoryIfExists);
+
+		EvMetrics.getInstance().setEnabled(true);
+		Controler controler = GotEVMain.createControler(config);
+		MacroBenchmarkListener listener = new MacroBenchmarkListener(controler.getScenario(), sharedReportFile, label);
+		controler.addOverridingModule(new AbstractModule() {
+			@Override
+			public void install() {
+				addControlerListenerBinding().toInstance(listener);
+			}
+		});
+		controler.run();
+	}
+}
@@ -0,0 +1,194 @@
+package se.urbanEV.tools;
+
+import com.google.inject.Inject;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.events.IterationStartsEvent;
+import org.matsim.core.controler.events.ScoringEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.listener.IterationStartsListener;
+import org.matsim.core.controler.listener.ScoringListener;
+import org.matsim.core.controler.listener.ShutdownListener;
+import se.urbanEV.fleet.ElectricFleetSpecification;
+import se.urbanEV.infrastructure.ChargingInfrastructureSpecification;
+import se.urbanEV.metrics.EvMetrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Wall time of the iteration phases of a {@link MacroBenchmark} run, taken when this listener is notified:
+ * <ul>
+ * <li>replanning: iteration start to before mobsim (replanning, prepareForMobsim)</li>
+ * <li>mobsim: before to after mobsim, including the EV handlers and the EV output written at mobsim cleanup</li>
+ * <li>evHandlers: time spent in the EV handlers and engines of the mobsim (their {@link EvMetrics} timers, see
+ * {@link #EV_HANDLER_TIMER_OWNERS}), summed over threads; a part of the mobsim time unless events are handled in
+ * parallel. Other timers, e.g. of the background output writer, are only reported in {@value #TIMERS_FILE}</li>
+ * <li>scoring: after mobsim to scoring</li>
+ * <li>output: scoring to the start of the next iteration (iteration end listeners, i.e. MATSim and EV statistics),
+ * or to shutdown for the last iteration</li>
+ * </ul>
+ * The other listeners of the same controler event run before or after this one in no defined order, so a boundary may
+ * be shifted by their run time. The order is the same in every run, so runs of the same setup remain comparable.
+ * <p>
+ * The peak heap of an iteration is the sum of the peak usages of the heap memory pools since the iteration start, i.e.
+ * an upper bound of the actual peak (the pools may peak at different times).
+ */
+class MacroBenchmarkListener
+		implements IterationStartsListener, BeforeMobsimListener, AfterMobsimListener, ScoringListener,
+		ShutdownListener {
+	private static final Logger log = Logger.getLogger(MacroBenchmarkListener.class);
+
+	static final String REPORT_FILE = "macroBenchmark.csv";
+	static final String TIMERS_FILE = "macroBenchmarkTimers.csv";
+
+	private static final String[] REPORT_HEADER = { "label", "iteration", "persons", "evs", "chargers", "replanning_s",
+			"mobsim_s", "evHandlers_s", "scoring_s", "output_s", "iteration_s", "peakHeap_MB" };
+	private static final String[] TIMERS_HEADER = { "label", "iteration", "timer", "count", "seconds" };
+
+	// classes whose timers ("<class>.<part>") are summed to evHandlers
+	static final Set<String> EV_HANDLER_TIMER_OWNERS = Set.of("ChargingHandler", "SmartChargingEngine",
+			"VehicleChargingHandler", "DriveDischargingHandler", "AuxDischargingHandler");
+
+	@Inject
+	private OutputDirectoryHierarchy controlerIO;
+
+	@Inject
+	private ElectricFleetSpecification fleetSpecification;
+
+	@Inject
+	private ChargingInfrastructureSpecification chargingInfrastructureSpecification;
+
+	private final Scenario scenario;
+	private final Path sharedReportFile;// null if not given
+	private final String label;
+
+	private int iteration = -1;// -1 = no open iteration
+	private long iterationStart;
+	private long beforeMobsim;
+	private long afterMobsim;
+	private long scoring;
+	private double evHandlerSeconds;
+	private List<Object[]> timerRows = Collections.emptyList();
+
+	MacroBenchmarkListener(Scenario scenario, Path sharedReportFile, String label) {
+		this.scenario = scenario;
+		this.sharedReportFile = sharedReportFile;
+		this.label = label;
+	}
+
+	@Override
+	public void notifyIterationStarts(IterationStartsEvent event) {
+		long now = System.nanoTime();
+		finishIteration(now);
+		iteration = event.getIteration();
+		iterationStart = now;
+		EvMetrics.getInstance().reset();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	@Override
+	public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+		beforeMobsim = System.nanoTime();
+	}
+
+	@Override
+	public void notifyAfterMobsim(AfterMobsimEvent event) {
+		afterMobsim = System.nanoTime();
+		// the EV handlers only work during the mobsim
+		timerRows = new ArrayList<>();
+		evHandlerSeconds = 0;
+		for (EvMetrics.Timer timer : EvMetrics.getInstance().getTimers()) {
+			if (isEvHandlerTimer(timer.getName())) {
+				evHandlerSeconds += timer.getTotalSeconds();
+			}
+			timerRows.add(new Object[] { label, iteration, timer.getName(), timer.getCount(),
+					timer.getTotalSeconds() });
+		}
+	}
+
+	private static boolean isEvHandlerTimer(String name) {
+		int dot = name.indexOf('.');
+		return dot > 0 && EV_HANDLER_TIMER_OWNERS.contains(name.substring(0, dot));
+	}
+
+	@Override
+	public void notifyScoring(ScoringEvent event) {
+		scoring = System.nanoTime();
+	}
+
+	@Override
+	public void notifyShutdown(ShutdownEvent event) {
+		finishIteration(System.nanoTime());
+	}
+
+	private void finishIteration(long iterationEnd) {
+		if (iteration < 0) {
+			return;
+		}
+		long peakHeap = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peakHeap += pool.getPeakUsage().getUsed();
+			}
+		}
+
+		Object[] row = { label, iteration, scenario.getPopulation().getPersons().size(),
+				fleetSpecification.getVehicleSpecifications().size(),
+				chargingInfrastructureSpecification.getChargerSpecifications().size(),
+				seconds(beforeMobsim - iterationStart), seconds(afterMobsim - beforeMobsim), evHandlerSeconds,
+				seconds(scoring - afterMobsim), seconds(iterationEnd - scoring), seconds(iterationEnd - iterationStart),
+				peakHeap / (1024 * 1024) };
+		log.info("Macro benchmark: " + Arrays.toString(REPORT_HEADER) + " = " + Arrays.toString(row));
+
+		appendRows(Paths.get(controlerIO.getOutputPath(), REPORT_FILE), REPORT_HEADER,
+				Collections.singletonList(row));
+		if (sharedReportFile != null) {
+			appendRows(sharedReportFile, REPORT_HEADER, Collections.singletonList(row));
+		}
+		appendRows(Paths.get(controlerIO.getOutputPath(), TIMERS_FILE), TIMERS_HEADER, timerRows);
+		timerRows = Collections.emptyList();
+		iteration = -1;
+	}
+
+	private static double seconds(long nanos) {
+		return nanos * 1e-9;
+	}
+
+	private static void appendRows(Path file, String[] header, List<Object[]> rows) {
+		boolean newFile = !Files.exists(file);
+		CSVFormat format = CSVFormat.DEFAULT.withDelimiter(';');
+		try (CSVPrinter csvPrinter = new CSVPrinter(
+				Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND),
+				newFile ? format.withHeader(header) : format)) {
+			for (Object[] row : rows) {
+				csvPrinter.printRecord(row);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Writing " + file + " failed", e);
+		}
+	}
+}
@@ -0,0 +1,306 @@
+package se.urbanEV.tools;
+
+import org.apache.log4j.Logger;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.Population;
+import org.matsim.api.core.v01.population.PopulationFactory;
+import org.matsim.api.core.v01.population.PopulationWriter;
+import org.matsim.contrib.ev.EvConfigGroup;
+import org.matsim.contrib.util.distance.DistanceUtils;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.ConfigWriter;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.PopulationUtils;
+import se.urbanEV.charging.VehicleChargingHandler;
+import se.urbanEV.config.UrbanEVConfigGroup;
+import se.urbanEV.fleet.ElectricFleetReader;
+import se.urbanEV.fleet.ElectricFleetSpecification;
+import se.urbanEV.fleet.ElectricFleetSpecificationImpl;
+import se.urbanEV.fleet.ElectricFleetWriter;
+import se.urbanEV.fleet.ElectricVehicle;
+import se.urbanEV.fleet.ElectricVehicleSpecification;
+import se.urbanEV.fleet.ElectricVehicleType;
+import se.urbanEV.fleet.ElectricVehicleTypesReader;
+import se.urbanEV.fleet.ImmutableElectricVehicleSpecification;
+import se.urbanEV.infrastructure.Charger;
+import se.urbanEV.infrastructure.ChargerReader;
+import se.urbanEV.infrastructure.ChargerSpecification;
+import se.urbanEV.infrastructure.ChargerWriter;
+import se.urbanEV.infrastructure.ChargingInfrastructureSpecification;
+import se.urbanEV.infrastructure.ChargingInfrastructureSpecificationImpl;
+import se.urbanEV.infrastructure.ImmutableChargerSpecification;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Writes a synthetic scenario of any size on the Gothenburg network of scenarios/sweden, for scaling benchmarks (see
+ * {@link MacroBenchmark}). The size is given as a share of the full EV population, where a share of 0.01 has as many
+ * EVs as the 1pct sample (1pct/evehicles1pct.xml).
+ * <ul>
+ * <li>plans.xml.gz: multi-day car plans. On weekdays, workers go home - work (- other) - home, everybody else, and
+ * everybody on weekends, home - other - home. Homes are drawn from the network nodes, work and other places at a
+ * log-normal distance from home. Some of the overnight home, work and other activities are charging activities
+ * ("home charging" etc.). Home and work chargers are assigned by the homeChargerPercentage/workChargerPercentage
+ * defaults of the urban_ev group (person attributes homeChargerPower, workChargerPower).</li>
+ * <li>evehicles.xml: one EV per person, with the same id, drawn from the 1pct sample (vehicle type from
+ * vehicletypes.xml, battery capacity, initial SoC).</li>
+ * <li>chargers.xml: public chargers at the given density per km² of the area covered by the network (default: the
+ * density of chargers.xml), placed near randomly chosen work and other activities, with the plugs of randomly chosen
+ * chargers from chargers.xml.</li>
+ * <li>config.xml: config1pct.xml with the above inputs and the flow/storage capacity factors scaled to the share.</li>
+ * </ul>
+ * <p>
+ * Usage: {@code SyntheticScenarioGenerator <scenarioDir> <share> <outputDir> [chargersPerKm2 [days=7]]}
+ */
+public class SyntheticScenarioGenerator {
+	private static final Logger log = Logger.getLogger(SyntheticScenarioGenerator.class);
+
+	private static final double TEMPLATE_SHARE = 0.01;// of 1pct/evehicles1pct.xml
+	private static final double AREA_CELL_SIZE = 1000;// [m]
+
+	private static final double WORKER_SHARE = 0.65;
+	private static final double AFTER_WORK_OTHER_PROBABILITY = 0.3;
+	private static final double MEDIAN_WORK_DISTANCE = 8000;// [m]
+	private static final double MEDIAN_OTHER_DISTANCE = 3000;// [m]
+	private static final double DISTANCE_SIGMA = 0.8;// of log(distance)
+	private static final double BEELINE_SPEED = 8;// [m/s], for the planned travel times
+
+	private static final double HOME_CHARGING_PROBABILITY = 0.3;// per overnight stay, if there is a home charger
+	private static final double WORK_CHARGING_PROBABILITY = 0.5;// per work day, if there is a work charger
+	private static final double OTHER_CHARGING_PROBABILITY = 0.1;
+
+	private static final double CHARGER_OFFSET_SIGMA = 200;// [m]
+	private static final double HOUR = 3600;
+
+	public static void main(String[] args) {
+		if (args.length < 3 || args.length > 5) {
+			throw new IllegalArgumentException(
+					"Usage: SyntheticScenarioGenerator <scenarioDir> <share> <outputDir> [chargersPerKm2 [days=7]]");
+		}
+		Path scenarioDir = Paths.get(args[0]).toAbsolutePath();
+		double share = Double.parseDouble(args[1]);
+		Path outputDir = Paths.get(args[2]).toAbsolutePath();
+		Double chargersPerKm2 = args.length >= 4 ? Double.valueOf(args[3]) : null;
+		int days = args.length == 5 ? Integer.parseInt(args[4]) : 7;
+		if (!(share > 0) || days < 1 || (chargersPerKm2 != null && chargersPerKm2 < 0)) {
+			throw new IllegalArgumentException("Invalid share, chargersPerKm2 or days: " + String.join(" ", args));
+		}
+
+		try {
+			Files.createDirectories(outputDir);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		new SyntheticScenarioGenerator(scenarioDir).generate(share, chargersPerKm2, days, outputDir);
+	}
+
+	private final Path scenarioDir;
+	private final Config config;
+	private final UrbanEVConfigGroup urbanEVCfg;
+	private final Network network;
+	private final Node[] nodes;
+	private final List<ElectricVehicleSpecification> vehicleTemplates;
+	private final List<ChargerSpecification> chargerTemplates;
+	private final Random random;
+
+	public SyntheticScenarioGenerator(Path scenarioDir) {
+		this.scenarioDir = scenarioDir;
+		config = ConfigUtils.loadConfig(scenarioDir.resolve("config1pct.xml").toString(), new EvConfigGroup(),
+				new UrbanEVConfigGroup());
+		urbanEVCfg = (UrbanEVConfigGroup)config.getModules().get(UrbanEVConfigGroup.GROUP_NAME);
+		network = NetworkUtils.readNetwork(scenarioDir.resolve("got_network.xml.gz").toString());
+		nodes = network.getNodes().values().toArray(new Node[0]);
+
+		Map<Id<ElectricVehicleType>, ElectricVehicleType> types = new HashMap<>();
+		new ElectricVehicleTypesReader(types).readFile(scenarioDir.resolve("vehicletypes.xml").toString());
+		ElectricFleetSpecification fleet = new ElectricFleetSpecificationImpl();
+		new ElectricFleetReader(fleet, types).readFile(scenarioDir.resolve("1pct/evehicles1pct.xml").toString());
+		vehicleTemplates = new ArrayList<>(fleet.getVehicleSpecifications().values());
+
+		ChargingInfrastructureSpecification chargers = new ChargingInfrastructureSpecificationImpl();
+		new ChargerReader(chargers).readFile(scenarioDir.resolve("chargers.xml").toString());
+		chargerTemplates = new ArrayList<>(chargers.getChargerSpecifications().values());
+
+		random = new Random(config.global().getRandomSeed());
+	}
+
+	/**
+	 * @param chargersPerKm2 null for the density of chargers.xml
+	 */
+	public void generate(double share, Double chargersPerKm2, int days, Path outputDir) {
+		int personCount = (int)Math.round(vehicleTemplates.size() * share / TEMPLATE_SHARE);
+		double area = calcNetworkArea();// [km²]
+		double density = chargersPerKm2 != null ? chargersPerKm2 : chargerTemplates.size() / area;
+
+		Population population = PopulationUtils.createPopulation(ConfigUtils.createConfig());
+		ElectricFleetSpecification fleet = new ElectricFleetSpecificationImpl();
+		List<Coord> chargerSites = new ArrayList<>();// work and other activities
+		for (int i = 0; i < personCount; i++) {
+			Person person = createPerson(population.getFactory(), Id.createPersonId("synth_" + i), days,
+					chargerSites);
+			population.addPerson(person);
+
+			ElectricVehicleSpecification template = vehicleTemplates.get(random.nextInt(vehicleTemplates.size()));
+			fleet.addVehicleSpecification(ImmutableElectricVehicleSpecification.newBuilder(template)
+					.id(Id.create(person.getId(), ElectricVehicle.class))
+					.build());
+		}
+
+		int chargerCount = (int)Math.round(density * area);
+		List<ChargerSpecification> chargers = new ArrayList<>(chargerCount);
+		for (int i = 0; i < chargerCount && !chargerSites.isEmpty(); i++) {
+			Coord site = chargerSites.get(random.nextInt(chargerSites.size()));
+			ChargerSpecification template = chargerTemplates.get(random.nextInt(chargerTemplates.size()));
+			chargers.add(ImmutableChargerSpecification.newBuilder(template)
+					.id(Id.create("public_synth_" + i, Charger.class))
+					.coord(new Coord(site.getX() + random.nextGaussian() * CHARGER_OFFSET_SIGMA,
+							site.getY() + random.nextGaussian() * CHARGER_OFFSET_SIGMA))
+					.build());
+		}
+
+		new PopulationWriter(population).write(outputDir.resolve("plans.xml.gz").toString());
+		new ElectricFleetWriter(fleet.getVehicleSpecifications().values().stream()).write(
+				outputDir.resolve("evehicles.xml").toString());
+		new ChargerWriter(chargers.stream()).write(outputDir.resolve("chargers.xml").toString());
+		writeConfig(share, days, outputDir);
+
+		log.info(String.format("Synthetic scenario (share %.3f, %d days) written to %s: %d persons/EVs, %d public "
+				+ "chargers (%.2f per km² of %.0f km²)", share, days, outputDir, personCount, chargers.size(), density,
+				area));
+	}
+
+	/**
+	 * @return the area [km²] of the grid cells that contain at least one network node
+	 */
+	private double calcNetworkArea() {
+		Set<Long> cells = new HashSet<>();
+		for (Node node : nodes) {
+			long cellX = (long)Math.floor(node.getCoord().getX() / AREA_CELL_SIZE);
+			long cellY = (long)Math.floor(node.getCoord().getY() / AREA_CELL_SIZE);
+			cells.add((cellX << 32) ^ (cellY & 0xffffffffL));
+		}
+		return cells.size() * AREA_CELL_SIZE * AREA_CELL_SIZE / 1e6;
+	}
+
+	private Person createPerson(PopulationFactory factory, Id<Person> personId, int days, List<Coord> chargerSites) {
+		Person person = factory.createPerson(personId);
+		boolean worker = random.nextDouble() < WORKER_SHARE;
+		boolean homeCharger = random.nextDouble() * 100 < urbanEVCfg.getHomeChargerPercentage();
+		boolean workCharger = worker && random.nextDouble() * 100 < urbanEVCfg.getWorkChargerPercentage();
+		if (homeCharger) {
+			person.getAttributes().putAttribute("homeChargerPower", urbanEVCfg.getDefaultHomeChargerPower());
+		}
+		if (workCharger) {
+			person.getAttributes().putAttribute("workChargerPower", urbanEVCfg.getDefaultWorkChargerPower());
+		}
+
+		Coord home = nodes[random.nextInt(nodes.length)].getCoord();
+		Coord work = worker ? nearbyNodeCoord(home, MEDIAN_WORK_DISTANCE) : null;
+
+		Plan plan = factory.createPlan();
+		Activity homeAct = factory.createActivityFromCoord("home", home);
+		plan.addActivity(homeAct);
+		for (int day = 0; day < days; day++) {
+			double dayStart = day * 24 * HOUR;
+			boolean workDay = worker && day % 7 < 5;
+			Coord previous = home;
+			double time;
+			if (workDay) {
+				time = dayStart + normalTime(7.5 * HOUR, 0.75 * HOUR);
+				homeAct.setEndTime(time);
+				time += travelTime(home, work) + normalTime(8.5 * HOUR, HOUR);
+				Activity workAct = addActivity(factory, plan, "work", work, time,
+						workCharger && random.nextDouble() < WORK_CHARGING_PROBABILITY);
+				chargerSites.add(work);
+				previous = workAct.getCoord();
+			} else {
+				time = dayStart + normalTime(10 * HOUR, 2 * HOUR);
+				homeAct.setEndTime(time);
+			}
+			if (!workDay || random.nextDouble() < AFTER_WORK_OTHER_PROBABILITY) {
+				Coord other = nearbyNodeCoord(home, MEDIAN_OTHER_DISTANCE);
+				time += travelTime(previous, other) + normalTime(1.5 * HOUR, 0.75 * HOUR);
+				addActivity(factory, plan, "other", other, time, random.nextDouble() < OTHER_CHARGING_PROBABILITY);
+				chargerSites.add(other);
+			}
+			plan.addLeg(factory.createLeg("car"));
+			homeAct = factory.createActivityFromCoord(
+					homeCharger && random.nextDouble() < HOME_CHARGING_PROBABILITY ? chargingType("home") : "home",
+					home);
+			plan.addActivity(homeAct);// its end time is set on the next day, the last one stays open
+		}
+		person.addPlan(plan);
+		person.setSelectedPlan(plan);
+		return person;
+	}
+
+	private Activity addActivity(PopulationFactory factory, Plan plan, String type, Coord coord, double endTime,
+			boolean charging) {
+		plan.addLeg(factory.createLeg("car"));
+		Activity activity = factory.createActivityFromCoord(charging ? chargingType(type) : type, coord);
+		activity.setEndTime(endTime);
+		plan.addActivity(activity);
+		return activity;
+	}
+
+	private static String chargingType(String type) {
+		return type + VehicleChargingHandler.CHARGING_IDENTIFIER;
+	}
+
+	/**
+	 * @return the coord of the network node nearest to a point at a log-normal distance in a random direction
+	 */
+	private Coord nearbyNodeCoord(Coord origin, double medianDistance) {
+		double distance = medianDistance * Math.exp(DISTANCE_SIGMA * random.nextGaussian());
+		double angle = random.nextDouble() * 2 * Math.PI;
+		Coord target = new Coord(origin.getX() + distance * Math.cos(angle),
+				origin.getY() + distance * Math.sin(angle));
+		return NetworkUtils.getNearestNode(network, target).getCoord();
+	}
+
+	private static double travelTime(Coord from, Coord to) {
+		return DistanceUtils.calculateDistance(from, to) / BEELINE_SPEED;
+	}
+
+	private double normalTime(double mean, double sigma) {
+		return Math.max(0.25 * mean, mean + sigma * random.nextGaussian());
+	}
+
+	private void writeConfig(double share, int days, Path outputDir) {
+		config.qsim().setFlowCapFactor(Math.min(1, config.qsim().getFlowCapFactor() * share / TEMPLATE_SHARE));
+		config.qsim().setStorageCapFactor(Math.min(1, config.qsim().getStorageCapFactor() * share / TEMPLATE_SHARE));
+		config.qsim().setEndTime(days * 24 * HOUR + 4 * HOUR);
+
+		config.network().setInputFile(relativize(outputDir, scenarioDir.resolve("got_network.xml.gz")));
+		config.plans().setInputFile("plans.xml.gz");
+		EvConfigGroup evCfg = (EvConfigGroup)config.getModules().get(EvConfigGroup.GROUP_NAME);
+		evCfg.setVehiclesFile("evehicles.xml");
+		evCfg.setChargersFile("chargers.xml");
+		urbanEVCfg.setVehicleTypesFile(relativize(outputDir, scenarioDir.resolve("vehicletypes.xml")));
+		config.controler().setOutputDirectory(outputDir.resolve("output").toString());
+
+		new ConfigWriter(config).write(outputDir.resolve("config.xml").toString());
+	}
+
+	private static String relativize(Path dir, Path file) {
+		return dir.relativize(file).toString().replace('\\', '/');
+	}
+}
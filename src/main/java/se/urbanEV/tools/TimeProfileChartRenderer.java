@@ -0,0 +1,126 @@
+package se.urbanEV.tools;
+
+import org.apache.log4j.Logger;
+import org.jfree.chart.JFreeChart;
+import org.matsim.contrib.util.chart.ChartSaveUtils;
+import org.matsim.contrib.util.timeprofile.TimeProfileCharts;
+import org.matsim.contrib.util.timeprofile.TimeProfileCharts.ChartType;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.core.utils.misc.Time;
+import se.urbanEV.stats.ChargerTypeOccupancyTimeProfileCollectorProvider;
+import se.urbanEV.stats.SocHistogramTimeProfileCollectorProvider;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Renders the charts of time profiles that were written without charts (see timeProfileChartInterval). Each
+ * {@code <iteration>.<name>.txt} file is rendered with the chart types and colours the collector would have used,
+ * and the png files are placed next to it.
+ * <p>
+ * Usage: {@code TimeProfileChartRenderer <profile.txt | directory>...}; directories are searched recursively for
+ * {@code *_time_profiles.txt} files.
+ */
+public class TimeProfileChartRenderer {
+	private static final Logger log = Logger.getLogger(TimeProfileChartRenderer.class);
+
+	private static final String PROFILE_SUFFIX = "_time_profiles.txt";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			throw new IllegalArgumentException("Usage: TimeProfileChartRenderer <profile.txt | directory>...");
+		}
+		for (String arg : args) {
+			Path path = Paths.get(arg);
+			if (Files.isDirectory(path)) {
+				List<Path> files;
+				try (Stream<Path> stream = Files.walk(path)) {
+					files = stream.filter(p -> p.getFileName().toString().endsWith(PROFILE_SUFFIX))
+							.sorted()
+							.collect(Collectors.toList());
+				}
+				for (Path file : files) {
+					render(file);
+				}
+			} else {
+				render(path);
+			}
+		}
+	}
+
+	public static void render(Path profileFile) {
+		String fileName = profileFile.getFileName().toString();
+		String profileName = fileName.replaceFirst("^\\d+\\.", "").replaceFirst("\\.txt$", "");
+		String base = profileFile.toString().replaceFirst("\\.txt$", "");
+
+		List<String> header = new ArrayList<>();
+		List<Double> times = new ArrayList<>();
+		List<Object[]> profile = new ArrayList<>();
+		try (BufferedReader reader = IOUtils.getBufferedReader(profileFile.toString())) {
+			String headerLine = reader.readLine();
+			if (headerLine == null) {
+				log.warn("Empty time profile file: " + profileFile);
+				return;
+			}
+			String[] columns = headerLine.split("\t");
+			header.addAll(Arrays.asList(columns).subList(1, columns.length));// first column is "time"
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				String[] row = line.split("\t");
+				times.add(Time.parseTime(row[0]));
+				Object[] values = new Object[header.size()];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = Double.parseDouble(row[i + 1]);
+				}
+				profile.add(values);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		String[] series = header.toArray(new String[0]);
+		BiConsumer<JFreeChart, ChartType> customizer = getChartCustomizer(profileName);
+		for (ChartType chartType : getChartTypes(profileName)) {
+			JFreeChart chart = TimeProfileCharts.chartProfile(series, times, profile, chartType);
+			customizer.accept(chart, chartType);
+			ChartSaveUtils.saveAsPNG(chart, base + "_" + chartType.name(), 1500, 1000);
+		}
+		log.info("Rendered charts of " + profileFile);
+	}
+
+	/**
+	 * The chart types set by the respective collector providers.
+	 */
+	private static ChartType[] getChartTypes(String profileName) {
+		switch (profileName) {
+			case "soc_histogram_time_profiles":
+				return new ChartType[] { ChartType.StackedArea };
+			case "charger_occupancy_time_profiles":
+			case "charger_type_occupancy_time_profiles":
+				return new ChartType[] { ChartType.Line, ChartType.StackedArea };
+			default:
+				return new ChartType[] { ChartType.Line };
+		}
+	}
+
+	private static BiConsumer<JFreeChart, ChartType> getChartCustomizer(String profileName) {
+		switch (profileName) {
+			case "soc_histogram_time_profiles":
+				return SocHistogramTimeProfileCollectorProvider::customizeChart;
+			case "charger_type_occupancy_time_profiles":
+				return ChargerTypeOccupancyTimeProfileCollectorProvider::customizeChart;
+			default:
+				return (chart, chartType) -> {
+				};
+		}
+	}
+}